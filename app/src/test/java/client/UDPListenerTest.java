@@ -0,0 +1,136 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import broadcaster.TimerChannel;
+import broadcaster.TimerPacket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class UDPListenerTest {
+    private static final int EXAM_A = 0x7E57_0A01;
+    private static final int EXAM_B = 0x7E57_0B02;
+
+    private final TimerChannel timerA = TimerChannel.forExam(EXAM_A);
+    private final TimerChannel timerB = TimerChannel.forExam(EXAM_B);
+    private NetworkInterface loopback;
+    private DatagramChannel sender;
+    private DatagramChannel listenerA;
+    private DatagramChannel listenerB;
+
+    @BeforeEach
+    void open() throws IOException {
+        loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        // As TimerBroadcaster sends, but on loopback so the test stays on this host
+        sender = DatagramChannel.open(StandardProtocolFamily.INET);
+        sender.setOption(StandardSocketOptions.IP_MULTICAST_IF, loopback);
+        sender.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        listenerA = UDPListener.join(timerA, loopback);
+        listenerB = UDPListener.join(timerB, loopback);
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        sender.close();
+        listenerA.close();
+        listenerB.close();
+    }
+
+    @Test
+    void eachExamsGroupsAreSeparate() throws Exception {
+        assertNotEquals(timerA.group(), timerB.group());
+        send(timerB, EXAM_B, 1);
+        send(timerA, EXAM_A, 1);
+
+        List<TimerPacket> heardByA = receiveAll(listenerA);
+        assertEquals(1, heardByA.size());
+        assertEquals(EXAM_A, heardByA.get(0).examId);
+        List<TimerPacket> heardByB = receiveAll(listenerB);
+        assertEquals(1, heardByB.size());
+        assertEquals(EXAM_B, heardByB.get(0).examId);
+    }
+
+    @Test
+    void otherExamsPacketsOnTheSameGroupAreIgnored() throws Exception {
+        send(timerA, EXAM_B, 5); // e.g. two exams sharing a group after an exam id clash
+        send(timerA, EXAM_A, 1);
+
+        UDPListener.PacketFilter filter = new UDPListener.PacketFilter(EXAM_A);
+        List<TimerPacket> heard = receiveAll(listenerA);
+        assertEquals(2, heard.size());
+        assertFalse(filter.accept(heard.get(0)));
+        assertTrue(filter.accept(heard.get(1)));
+    }
+
+    @Test
+    void replayedAndLatePacketsAreDropped() throws Exception {
+        for (long sequence : new long[] {1, 2, 3, 2, 3, 1, 4}) {
+            send(timerA, EXAM_A, sequence);
+        }
+        UDPListener.PacketFilter filter = new UDPListener.PacketFilter(EXAM_A);
+        List<Long> taken = new ArrayList<>();
+        for (TimerPacket packet : receiveAll(listenerA)) {
+            if (filter.accept(packet)) {
+                taken.add(packet.sequence);
+            }
+        }
+        assertEquals(List.of(1L, 2L, 3L, 4L), taken);
+    }
+
+    @Test
+    void listenerForAnyExamFollowsTheFirstOneHeard() {
+        UDPListener.PacketFilter filter = new UDPListener.PacketFilter(0);
+        assertTrue(filter.accept(packet(EXAM_B, 7)));
+        assertFalse(filter.accept(packet(EXAM_A, 8)));
+        assertTrue(filter.accept(packet(EXAM_B, 8)));
+    }
+
+    private static TimerPacket packet(int examId, long sequence) {
+        TimerPacket packet = new TimerPacket();
+        packet.type = TimerPacket.DEADLINE;
+        packet.examId = examId;
+        packet.sequence = sequence;
+        packet.sentMillis = System.currentTimeMillis();
+        packet.deadlineMillis = packet.sentMillis + 60_000;
+        return packet;
+    }
+
+    private void send(TimerChannel to, int examId, long sequence) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(TimerPacket.SIZE);
+        packet(examId, sequence).encode(buf);
+        sender.send(buf, new InetSocketAddress(to.group(), to.port()));
+    }
+
+    // Every timer packet that arrives until the channel has been quiet for a while
+    private static List<TimerPacket> receiveAll(DatagramChannel channel) throws Exception {
+        channel.configureBlocking(false);
+        List<TimerPacket> packets = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(TimerPacket.SIZE + 1);
+        long quietUntil = System.nanoTime() + 500_000_000L;
+        while (System.nanoTime() < quietUntil) {
+            buf.clear();
+            if (channel.receive(buf) == null) {
+                Thread.sleep(5);
+                continue;
+            }
+            TimerPacket packet = new TimerPacket();
+            assertTrue(packet.decode(buf.flip()));
+            packets.add(packet);
+            quietUntil = System.nanoTime() + 200_000_000L;
+        }
+        return packets;
+    }
+}
@@ -0,0 +1,115 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+class AdmissionTest {
+    private static final long BUSY_RETRY_MS = 100;
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final LatencyHistogram checkTime = new Metrics("test").histogram("check", "Password checks");
+
+    private Admission admission(int rate, int burst, int maxHandshakes) {
+        return new Admission(rate, burst, maxHandshakes, BUSY_RETRY_MS, 2, checkTime, now::get);
+    }
+
+    private void advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    // Admit as many as will be, returning how many; each admitted handshake is finished at once
+    private static int admitAll(Admission admission) {
+        int admitted = 0;
+        while (admission.admit() == 0) {
+            admission.handshakeDone();
+            admitted++;
+        }
+        return admitted;
+    }
+
+    @Test
+    void burstThenTheAcceptRate() {
+        Admission admission = admission(10, 5, 1000);
+        assertEquals(5, admitAll(admission), "the burst");
+
+        advance(100); // one connection's worth at 10 a second
+        assertEquals(1, admitAll(admission));
+        advance(50);
+        assertEquals(0, admitAll(admission));
+        advance(50);
+        assertEquals(1, admitAll(admission));
+
+        advance(350); // tokens aren't lost between ticks of the clock
+        assertEquals(3, admitAll(admission));
+    }
+
+    @Test
+    void quietSpellOnlyRefillsTheBurst() {
+        Admission admission = admission(10, 5, 1000);
+        admitAll(admission);
+        advance(60_000);
+        assertEquals(5, admitAll(admission));
+    }
+
+    @Test
+    void noRateMeansNoBucket() {
+        Admission admission = admission(0, 1, 1000);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(0, admission.admit());
+        }
+        assertEquals(500, admission.handshakesInFlight());
+    }
+
+    @Test
+    void handshakeCapIsReleasedWhenAHandshakeEnds() {
+        Admission admission = admission(0, 1, 2);
+        assertEquals(0, admission.admit());
+        assertEquals(0, admission.admit());
+        assertTrue(admission.admit() > 0, "a third login at once");
+        assertEquals(2, admission.handshakesInFlight(), "a refused connection mustn't hold a slot");
+
+        // e.g. the second failed its password check, or disconnected mid-login
+        admission.handshakeDone();
+        assertEquals(1, admission.handshakesInFlight());
+        assertEquals(0, admission.admit());
+        assertTrue(admission.admit() > 0);
+    }
+
+    @Test
+    void retryAfterIsTheTimeToClearTheLoginsInProgress() {
+        Admission admission = admission(0, 1, 100_000);
+        assertEquals(BUSY_RETRY_MS, admission.retryAfterMillis(), "no checks timed yet");
+
+        for (int i = 0; i < 10; i++) {
+            checkTime.record(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        for (int i = 0; i < 20; i++) {
+            admission.admit();
+        }
+        // 20 logins at 50 ms each, two verifier threads
+        assertEquals(500, admission.retryAfterMillis());
+
+        for (int i = 0; i < 18; i++) {
+            admission.handshakeDone();
+        }
+        assertEquals(BUSY_RETRY_MS, admission.retryAfterMillis(), "never below the configured minimum");
+
+        for (int i = 0; i < 10_000; i++) {
+            admission.admit();
+        }
+        assertEquals(30_000, admission.retryAfterMillis(), "capped");
+    }
+
+    @Test
+    void refusedByTheBucketSaysWhenToRetry() {
+        Admission admission = admission(10, 1, 1000);
+        assertEquals(0, admission.admit());
+        assertEquals(BUSY_RETRY_MS, admission.admit());
+    }
+}
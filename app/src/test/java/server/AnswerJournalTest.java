@@ -0,0 +1,178 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnswerJournalTest {
+    private static final int[] ANSWER_KEY = {1, 2, 3, 4};
+    private static final long QUESTION_SET = 0x5EEDL;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void nextExamWithTheSameCodeStartsEmpty() throws IOException {
+        try (AnswerJournal journal = AnswerJournal.open(dir, QUESTION_SET, new ResultStore(ANSWER_KEY), false)) {
+            journal.append("alice", 0, 1);
+            journal.append("bob", 3, 2);
+        }
+
+        ResultStore next = new ResultStore(ANSWER_KEY);
+        try (AnswerJournal journal = AnswerJournal.open(dir, QUESTION_SET, next, false)) {
+            assertEquals(0, next.studentCount());
+            journal.append("carol", 1, 2);
+        }
+
+        ResultStore third = new ResultStore(ANSWER_KEY);
+        AnswerJournal.open(dir, QUESTION_SET, third, false).close();
+        assertEquals(0, third.studentCount());
+    }
+
+    @Test
+    void closedJournalIsReplayedWhenAskedFor() throws IOException {
+        try (AnswerJournal journal = AnswerJournal.open(dir, QUESTION_SET, new ResultStore(ANSWER_KEY), false)) {
+            journal.append("alice", 0, 1);
+            journal.append("alice", 2, 4);
+        }
+
+        ResultStore recovered = new ResultStore(ANSWER_KEY);
+        AnswerJournal.open(dir, QUESTION_SET, recovered, true).close();
+        assertArrayEquals(new int[] {1, 0, 4, 0}, recovered.answersOf("alice"));
+    }
+
+    @Test
+    void optionsAbove127ReadBackTheSameFromSegmentsAndSnapshot() throws IOException {
+        try (AnswerJournal journal = AnswerJournal.open(dir, QUESTION_SET, new ResultStore(ANSWER_KEY), false)) {
+            journal.append("alice", 1, 200);
+        }
+
+        // Replays the segment, then compacts it into a snapshot
+        ResultStore fromSegment = new ResultStore(ANSWER_KEY);
+        AnswerJournal.open(dir, QUESTION_SET, fromSegment, true).close();
+        assertArrayEquals(new int[] {0, 200, 0, 0}, fromSegment.answersOf("alice"));
+
+        ResultStore fromSnapshot = new ResultStore(ANSWER_KEY);
+        AnswerJournal.open(dir, QUESTION_SET, fromSnapshot, true).close();
+        assertArrayEquals(new int[] {0, 200, 0, 0}, fromSnapshot.answersOf("alice"));
+    }
+
+    @Test
+    void crashRecoveryReadsSnapshotAndNewerSegments() throws Exception {
+        try (AnswerJournal journal = AnswerJournal.open(dir, QUESTION_SET, new ResultStore(ANSWER_KEY), false)) {
+            journal.append("alice", 0, 1);
+            journal.append("bob", 1, 3);
+        }
+        crash();
+        // Recovery folds the first segment into a snapshot; these answers go to a new segment after it
+        try (AnswerJournal journal = AnswerJournal.open(dir, QUESTION_SET, new ResultStore(ANSWER_KEY), false)) {
+            journal.append("alice", 0, 2); // replaces her first answer
+            journal.append("carol", 3, 4);
+        }
+        crash();
+        assertTrue(Files.exists(dir.resolve("answers.snapshot")));
+        assertFalse(segments().isEmpty());
+
+        ResultStore recovered = new ResultStore(ANSWER_KEY);
+        AnswerJournal.open(dir, QUESTION_SET, recovered, false).close();
+        assertEquals(3, recovered.studentCount());
+        assertArrayEquals(new int[] {2, 0, 0, 0}, recovered.answersOf("alice"));
+        assertArrayEquals(new int[] {0, 3, 0, 0}, recovered.answersOf("bob"));
+        assertArrayEquals(new int[] {0, 0, 0, 4}, recovered.answersOf("carol"));
+        assertEquals(1, recovered.scoreOf("carol"));
+    }
+
+    @Test
+    void tornFinalBlockIsCutOff() throws Exception {
+        writeTwoBlocks();
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.truncate(size - 3);
+        }
+
+        ResultStore recovered = new ResultStore(ANSWER_KEY);
+        AnswerJournal.open(dir, QUESTION_SET, recovered, false).close();
+        assertArrayEquals(new int[] {1, 0, 0, 0}, recovered.answersOf("alice"));
+        assertNull(recovered.answersOf("bob"));
+    }
+
+    @Test
+    void finalBlockFailingItsChecksumIsCutOff() throws Exception {
+        writeTwoBlocks();
+        Path segment = segments().get(0);
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            ch.read(last, ch.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0x40)).rewind();
+            ch.write(last, ch.size() - 1);
+        }
+
+        ResultStore recovered = new ResultStore(ANSWER_KEY);
+        AnswerJournal.open(dir, QUESTION_SET, recovered, false).close();
+        assertArrayEquals(new int[] {1, 0, 0, 0}, recovered.answersOf("alice"));
+        assertNull(recovered.answersOf("bob"));
+    }
+
+    @Test
+    void idleJournalSleepsAndWritesNothing() throws Exception {
+        try (AnswerJournal journal = AnswerJournal.open(dir, QUESTION_SET, new ResultStore(ANSWER_KEY), false)) {
+            Thread flusher = flusher();
+            Path segment = segments().get(0);
+            long size = Files.size(segment);
+            for (int i = 0; i < 10; i++) {
+                Thread.sleep(10);
+                // Parked without a timeout; one that polled would mostly be seen in TIMED_WAITING
+                assertEquals(Thread.State.WAITING, flusher.getState());
+            }
+            assertEquals(size, Files.size(segment), "idle journal wrote a block");
+
+            journal.append("alice", 0, 1);
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (Files.size(segment) == size && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertTrue(Files.size(segment) > size, "answer never written");
+            Thread.sleep(20);
+            assertEquals(Thread.State.WAITING, flusher.getState(), "flusher didn't go back to sleep");
+        }
+    }
+
+    private static Thread flusher() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("answer-journal") && t.isAlive())
+                .findFirst().orElseThrow();
+    }
+
+    // Two blocks in one segment, then a crash: alice's answer in the first, bob's in the second
+    private void writeTwoBlocks() throws Exception {
+        try (AnswerJournal journal = AnswerJournal.open(dir, QUESTION_SET, new ResultStore(ANSWER_KEY), false)) {
+            journal.append("alice", 0, 1);
+            Thread.sleep(100); // well past the flush interval, so the next answer is a block of its own
+            journal.append("bob", 1, 2);
+        }
+        crash();
+        assertEquals(1, segments().size());
+    }
+
+    // Leave the journal as a crash would have: everything written, but not marked closed
+    private void crash() throws IOException {
+        Files.delete(dir.resolve("closed"));
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".journal")).sorted().toList();
+        }
+    }
+}
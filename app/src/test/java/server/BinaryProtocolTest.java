@@ -0,0 +1,102 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class BinaryProtocolTest {
+    private final RecordingConnection connection = new RecordingConnection();
+    private final ClientHandler handler = new ClientHandler(connection);
+    // As the engines keep it: unread bytes stay for the next read
+    private final ByteBuffer input = ByteBuffer.allocate(64 * 1024);
+
+    private void receive(ByteBuffer bytes) throws IOException {
+        input.put(bytes.duplicate()).flip();
+        try {
+            handler.onInput(input);
+        } finally {
+            input.compact();
+        }
+    }
+
+    private void receive(byte... bytes) throws IOException {
+        receive(ByteBuffer.wrap(bytes));
+    }
+
+    // Frames sent to the client after the hello reply
+    private ByteBuffer repliesAfterHello() {
+        ByteBuffer received = connection.received();
+        received.position(ExamProtocol.HELLO_LENGTH);
+        return received;
+    }
+
+    @Test
+    void helloIsAnsweredWithTheVersionBothSpeak() throws IOException {
+        receive(ExamProtocol.hello((byte) 99));
+        assertEquals(ExamProtocol.hello(ExamProtocol.VERSION), connection.received());
+
+        RecordingConnection older = new RecordingConnection();
+        ByteBuffer hello = ExamProtocol.hello((byte) 3);
+        new ClientHandler(older).onInput(hello);
+        assertEquals(ExamProtocol.hello((byte) 3), older.received());
+    }
+
+    @Test
+    void frameSplitAcrossReadsIsHandledOnceComplete() throws IOException {
+        receive(ExamProtocol.hello(ExamProtocol.VERSION));
+        ByteBuffer login = ExamProtocol.auth("alice", "secret", "NO-SUCH-EXAM");
+        while (login.remaining() > 1) {
+            receive(login.get());
+            assertFalse(repliesAfterHello().hasRemaining(), "answered before the frame was complete");
+        }
+        receive(login.get());
+
+        ByteBuffer reply = repliesAfterHello();
+        int length = ExamProtocol.getLength(reply);
+        assertEquals(length, reply.remaining());
+        assertEquals(ExamProtocol.FINISHED, reply.get());
+        assertTrue(ExamProtocol.getString(reply).contains("NO-SUCH-EXAM"));
+        assertTrue(connection.closed);
+    }
+
+    @Test
+    void oversizedFrameIsRejectedFromItsLength() throws IOException {
+        receive(ExamProtocol.hello(ExamProtocol.VERSION));
+        ByteBuffer prefix = ByteBuffer.allocate(4);
+        ExamProtocol.putLength(prefix, WireProtocol.MAX_INBOUND_MESSAGE + 1);
+        assertThrows(StreamCorruptedException.class, () -> receive(prefix.flip()));
+    }
+
+    @Test
+    void largestFrameIsReadWhole() throws IOException {
+        receive(ExamProtocol.hello(ExamProtocol.VERSION));
+        // An AUTH frame of exactly the largest length: long, but nothing wrong with it
+        String name = "x".repeat(WireProtocol.MAX_INBOUND_MESSAGE - 1 - 2 - 2 - 2 - 1);
+        ByteBuffer login = ExamProtocol.auth(name, "", "Q");
+        receive(login);
+        assertTrue(repliesAfterHello().hasRemaining());
+    }
+
+    @Test
+    void answerOutsideTheExamIsRejected() throws IOException {
+        receive(ExamProtocol.hello(ExamProtocol.VERSION));
+        assertThrows(StreamCorruptedException.class, () -> receive(ExamProtocol.answer(0, 1)));
+    }
+
+    @Test
+    void unknownMessageTypeIsRejected() throws IOException {
+        receive(ExamProtocol.hello(ExamProtocol.VERSION));
+        assertThrows(StreamCorruptedException.class, () -> receive((byte) 1, (byte) 99));
+    }
+
+    @Test
+    void truncatedMessageIsRejected() throws IOException {
+        receive(ExamProtocol.hello(ExamProtocol.VERSION));
+        // ANSWER with its option missing
+        assertThrows(StreamCorruptedException.class, () -> receive((byte) 3, ExamProtocol.ANSWER, (byte) 0, (byte) 0));
+    }
+}
@@ -0,0 +1,89 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ExamBundleTest {
+    private static final List<Question> QUESTIONS = List.of(
+            new Question("Capital of France?", new String[] {"Paris", "Rome", "Madrid"}, 1),
+            new Question("2 + 2", new String[] {"3", "4", "5", "22"}, 2),
+            new Question("Which is the largest? ½, ⅓ or ¼", new String[] {"½", "⅓", "¼"}, 1));
+
+    // A frame's contents after its length, checking it is of the given type
+    private static ByteBuffer payload(ByteBuffer frame, byte type) throws IOException {
+        ByteBuffer data = frame.duplicate();
+        assertEquals(ExamProtocol.getLength(data), data.remaining());
+        assertEquals(type, data.get());
+        return data.slice();
+    }
+
+    private static byte[] key(ExamBundle bundle) throws IOException {
+        ByteBuffer start = payload(bundle.startFrame(), ExamProtocol.START);
+        assertEquals(ExamProtocol.BUNDLE_KEY_LENGTH, start.remaining());
+        byte[] key = new byte[start.remaining()];
+        start.get(key);
+        return key;
+    }
+
+    @Test
+    void opensWithTheKeyStartReleases() throws IOException {
+        ExamBundle bundle = ExamBundle.seal(new QuestionPayloads(QUESTIONS));
+        Question[] opened = ExamProtocol.openBundle(payload(bundle.frame(), ExamProtocol.BUNDLE), key(bundle));
+
+        assertEquals(QUESTIONS.size(), opened.length);
+        for (int i = 0; i < opened.length; i++) {
+            assertEquals(QUESTIONS.get(i).getQuestionText(), opened[i].getQuestionText());
+            assertArrayEquals(QUESTIONS.get(i).getOptions(), opened[i].getOptions());
+            assertEquals(0, opened[i].getCorrectOption(), "the bundle must not carry the answers");
+        }
+        assertSame(QUESTIONS.get(1), bundle.questions().question(1));
+
+        // Views: reading one doesn't use up the shared frame
+        bundle.frame().position(1);
+        assertEquals(0, bundle.frame().position());
+    }
+
+    @Test
+    void doesNotOpenWithoutTheKey() throws IOException {
+        ExamBundle bundle = ExamBundle.seal(new QuestionPayloads(QUESTIONS));
+        ByteBuffer sealed = payload(bundle.frame(), ExamProtocol.BUNDLE);
+
+        assertThrows(IOException.class, () -> ExamProtocol.openBundle(sealed, new byte[ExamProtocol.BUNDLE_KEY_LENGTH]));
+        assertThrows(IOException.class, () -> ExamProtocol.openBundle(sealed, new byte[0]));
+        byte[] nearly = key(bundle);
+        nearly[nearly.length - 1] ^= 1;
+        assertThrows(IOException.class, () -> ExamProtocol.openBundle(sealed, nearly));
+
+        // Each seal has a key of its own: one exam's START doesn't open another's bundle
+        ExamBundle other = ExamBundle.seal(new QuestionPayloads(QUESTIONS));
+        assertThrows(IOException.class, () -> ExamProtocol.openBundle(sealed, key(other)));
+        assertEquals(QUESTIONS.size(), ExamProtocol.openBundle(sealed, key(bundle)).length);
+    }
+
+    @Test
+    void doesNotOpenIfAnyByteIsChanged() throws IOException {
+        ExamBundle bundle = ExamBundle.seal(new QuestionPayloads(QUESTIONS));
+        ByteBuffer sealed = payload(bundle.frame(), ExamProtocol.BUNDLE);
+        byte[] key = key(bundle);
+
+        // The inflated length, the nonce, the ciphertext and the tag
+        for (int i = 0; i < sealed.remaining(); i++) {
+            ByteBuffer tampered = ByteBuffer.allocate(sealed.remaining()).put(sealed.duplicate()).flip();
+            tampered.put(i, (byte) (tampered.get(i) ^ 0x40));
+            int at = i;
+            assertThrows(IOException.class, () -> ExamProtocol.openBundle(tampered, key), "byte " + at + " changed");
+        }
+        ByteBuffer truncated = sealed.slice(0, sealed.remaining() - 1);
+        assertThrows(IOException.class, () -> ExamProtocol.openBundle(truncated, key));
+    }
+
+    @Test
+    void noQuestionsNoBundle() {
+        assertNull(ExamBundle.seal(new QuestionPayloads(List.of())));
+    }
+}
@@ -0,0 +1,174 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class ExamProtocolTest {
+    private static final Question QUESTION = new Question("Which is the largest? ½, ⅓ or ¼", new String[] {"½", "⅓", "¼"}, 1);
+
+    private static ByteBuffer readFrame(ByteBuffer frame) throws IOException {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.duplicate().get(bytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        ByteBuffer read = ExamProtocol.readFrame(in);
+        assertEquals(0, in.available(), "frame not read to its end");
+        return read;
+    }
+
+    // A frame's length prefix and type byte, as a client sends them before the rest
+    private static byte[] lengthPrefix(int length) {
+        ByteBuffer buf = ByteBuffer.allocate(5);
+        ExamProtocol.putLength(buf, length);
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    @Test
+    void questionRoundTrip() throws IOException {
+        ByteBuffer payload = readFrame(ExamProtocol.question(7, QUESTION));
+        assertEquals(ExamProtocol.QUESTION, payload.get());
+        assertEquals(7, ExamProtocol.questionIndex(payload));
+
+        Question read = ExamProtocol.readQuestion(payload);
+        assertEquals(QUESTION.getQuestionText(), read.getQuestionText());
+        assertArrayEquals(QUESTION.getOptions(), read.getOptions());
+        assertEquals(0, read.getCorrectOption(), "the client must never be told the answer");
+        assertFalse(payload.hasRemaining());
+    }
+
+    @Test
+    void questionWithTheMostOptions() throws IOException {
+        String[] options = new String[ExamProtocol.MAX_OPTIONS];
+        for (int i = 0; i < options.length; i++) {
+            options[i] = "option " + (i + 1);
+        }
+        ByteBuffer payload = readFrame(ExamProtocol.question(65_535, new Question("Pick one", options, 200)));
+        payload.get();
+        assertEquals(65_535, ExamProtocol.questionIndex(payload));
+        assertArrayEquals(options, ExamProtocol.readQuestion(payload).getOptions());
+    }
+
+    @Test
+    void smallFramesRoundTrip() throws IOException {
+        ByteBuffer auth = readFrame(ExamProtocol.auth("alice", "pässword", "MATHS1"));
+        assertEquals(ExamProtocol.AUTH, auth.get());
+        assertEquals("alice", ExamProtocol.getString(auth));
+        assertEquals("pässword", ExamProtocol.getString(auth));
+        assertEquals("MATHS1", ExamProtocol.getString(auth));
+
+        ByteBuffer answer = readFrame(ExamProtocol.answer(300, 200));
+        assertEquals(ExamProtocol.ANSWER, answer.get());
+        assertEquals(300, answer.getShort() & 0xFFFF);
+        assertEquals(200, answer.get() & 0xFF);
+
+        byte[] token = new byte[ExamProtocol.SESSION_TOKEN_LENGTH];
+        Arrays.fill(token, (byte) 0xA5);
+        ByteBuffer resume = readFrame(ExamProtocol.resume(token, 12));
+        assertEquals(ExamProtocol.RESUME, resume.get());
+        byte[] readToken = new byte[token.length];
+        resume.get(readToken);
+        assertArrayEquals(token, readToken);
+        assertEquals(12, resume.getShort());
+
+        ByteBuffer busy = readFrame(ExamProtocol.busy(Long.MAX_VALUE));
+        assertEquals(ExamProtocol.BUSY, busy.get());
+        assertEquals(Integer.MAX_VALUE, busy.getInt());
+
+        ByteBuffer deadline = readFrame(ExamProtocol.deadline(-5));
+        assertEquals(ExamProtocol.DEADLINE, deadline.get());
+        assertEquals(0, deadline.getInt());
+
+        ByteBuffer finished = readFrame(ExamProtocol.finished("Bye"));
+        assertEquals(ExamProtocol.FINISHED, finished.get());
+        assertEquals("Bye", ExamProtocol.getString(finished));
+    }
+
+    @Test
+    void lengthsEitherSideOfEachVarintByte() throws IOException {
+        for (int length : new int[] {1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152}) {
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            ExamProtocol.putLength(buf, length);
+            assertEquals(ExamProtocol.lengthSize(length), buf.position());
+            buf.flip();
+            assertEquals(length, ExamProtocol.getLength(buf));
+            assertFalse(buf.hasRemaining());
+        }
+        // Frames around the one- and two-byte boundaries read back whole
+        for (int textLength : new int[] {100, 120, 16_350, 16_380}) {
+            String text = "x".repeat(textLength);
+            ByteBuffer payload = readFrame(ExamProtocol.finished(text));
+            assertEquals(ExamProtocol.FINISHED, payload.get());
+            assertEquals(text, ExamProtocol.getString(payload));
+        }
+    }
+
+    @Test
+    void incompleteLengthLeavesTheBufferAlone() throws StreamCorruptedException {
+        ByteBuffer buf = ByteBuffer.wrap(new byte[] {(byte) 0x80, (byte) 0x80});
+        assertEquals(-1, ExamProtocol.getLength(buf));
+        assertEquals(0, buf.position());
+        assertEquals(-1, ExamProtocol.getLength(ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    void oversizedFramesAreRejected() {
+        byte[] tooLong = lengthPrefix(ExamProtocol.MAX_FRAME_LENGTH + 1);
+        // Refused from the length alone, before any of the payload is read or allocated
+        assertThrows(StreamCorruptedException.class,
+                () -> ExamProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(tooLong))));
+
+        byte[] empty = lengthPrefix(0);
+        assertThrows(StreamCorruptedException.class,
+                () -> ExamProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(empty))));
+
+        byte[] fiveByteLength = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+        assertThrows(StreamCorruptedException.class,
+                () -> ExamProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(fiveByteLength))));
+        assertThrows(StreamCorruptedException.class, () -> ExamProtocol.getLength(ByteBuffer.wrap(fiveByteLength)));
+    }
+
+    @Test
+    void bundleRoundTrip() throws Exception {
+        Question second = new Question("2 + 2", new String[] {"3", "4", "5", "22"}, 2);
+        ByteBuffer first = ExamProtocol.question(0, QUESTION);
+        ByteBuffer next = ExamProtocol.question(1, second);
+        ByteBuffer frames = ByteBuffer.allocate(first.remaining() + next.remaining()).put(first).put(next).flip();
+        byte[] key = new byte[ExamProtocol.BUNDLE_KEY_LENGTH];
+        byte[] nonce = new byte[ExamProtocol.BUNDLE_NONCE_LENGTH];
+        key[0] = 1;
+
+        ByteBuffer payload = readFrame(ExamProtocol.bundle(frames, key, nonce));
+        assertEquals(ExamProtocol.BUNDLE, payload.get());
+        Question[] bundle = ExamProtocol.openBundle(payload.duplicate(), key);
+        assertEquals(2, bundle.length);
+        assertArrayEquals(second.getOptions(), bundle[1].getOptions());
+
+        // A BUNDLED frame shows a bundle question with its options reordered
+        ByteBuffer bundled = readFrame(ExamProtocol.bundled(5, 1, new byte[] {3, 0, 2, 1}, 4));
+        assertEquals(ExamProtocol.BUNDLED, bundled.get());
+        assertEquals(5, ExamProtocol.questionIndex(bundled));
+        assertArrayEquals(new String[] {"22", "3", "5", "4"}, ExamProtocol.readBundled(bundled, bundle).getOptions());
+
+        ByteBuffer badOption = readFrame(ExamProtocol.bundled(5, 1, new byte[] {4}, 1));
+        badOption.get();
+        assertThrows(StreamCorruptedException.class, () -> ExamProtocol.readBundled(badOption, bundle));
+        ByteBuffer badOrdinal = readFrame(ExamProtocol.bundled(5, 2, new byte[] {0}, 1));
+        badOrdinal.get();
+        assertThrows(StreamCorruptedException.class, () -> ExamProtocol.readBundled(badOrdinal, bundle));
+
+        byte[] wrongKey = key.clone();
+        wrongKey[0] = 2;
+        assertThrows(IOException.class, () -> ExamProtocol.openBundle(payload.duplicate(), wrongKey));
+        ByteBuffer tampered = payload.duplicate();
+        int last = tampered.limit() - 1;
+        tampered.put(last, (byte) (tampered.get(last) ^ 1));
+        assertThrows(IOException.class, () -> ExamProtocol.openBundle(tampered, key));
+    }
+}
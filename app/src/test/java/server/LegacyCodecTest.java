@@ -0,0 +1,128 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LegacyCodecTest {
+    private final LegacyCodec.Decoder decoder = new LegacyCodec.Decoder();
+    private final List<Object> decoded = new ArrayList<>();
+
+    // What the original client writes, through a real ObjectOutputStream
+    private interface ClientWrites {
+        void write(ObjectOutputStream out) throws IOException;
+    }
+
+    private static byte[] written(ClientWrites writes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            writes.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Feed bytes in reads of the given size, keeping what isn't decoded yet as the engines do
+    private void decode(byte[] bytes, int readSize) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(bytes.length);
+        for (int i = 0; i < bytes.length; i += readSize) {
+            buf.put(bytes, i, Math.min(readSize, bytes.length - i)).flip();
+            decoder.decode(buf, decoded::add);
+            buf.compact();
+        }
+    }
+
+    @Test
+    void decodesALoginAndAnswersSplitAnywhere() throws IOException {
+        byte[] bytes = written(out -> {
+            out.writeObject("alice");
+            out.writeObject("sécret");
+            out.flush();
+            out.writeInt(3);
+            out.flush();
+            out.writeInt(1);
+            out.writeInt(4);
+            out.flush();
+            out.writeObject("alice"); // sent again as a reference to the first
+        });
+        for (int readSize : new int[] {1, 2, 3, 7, bytes.length}) {
+            LegacyCodecTest test = new LegacyCodecTest();
+            test.decode(bytes, readSize);
+            assertEquals(List.of("alice", "sécret", 3, 1, 4, "alice"), test.decoded, "reads of " + readSize);
+        }
+    }
+
+    @Test
+    void decodesLongBlocks() throws IOException {
+        // More than 255 bytes of block data is written as TC_BLOCKDATALONG
+        byte[] bytes = written(out -> {
+            for (int i = 1; i <= 100; i++) {
+                out.writeInt(i);
+            }
+        });
+        decode(bytes, 64);
+        assertEquals(100, decoded.size());
+        assertEquals(100, decoded.get(99));
+    }
+
+    @Test
+    void referencesDontSurviveAReset() throws IOException {
+        byte[] bytes = written(out -> {
+            out.writeObject("alice");
+            out.reset();
+            out.writeObject("alice");
+        });
+        decode(bytes, bytes.length);
+        assertEquals(List.of("alice", "alice"), decoded);
+
+        // A reference to the string sent before the reset
+        ByteBuffer reset = ByteBuffer.allocate(6).put((byte) 0x79).put((byte) 0x71).putInt(0x7E0000).flip();
+        assertThrows(StreamCorruptedException.class, () -> decoder.decode(reset, decoded::add));
+    }
+
+    @Test
+    void oversizedMessagesAreRejectedFromTheirLength() throws IOException {
+        decode(LegacyCodec.STREAM_HEADER, 4);
+
+        ByteBuffer string = ByteBuffer.allocate(3).put((byte) 0x74).putShort((short) (WireProtocol.MAX_INBOUND_MESSAGE + 1)).flip();
+        assertThrows(StreamCorruptedException.class, () -> decoder.decode(string, decoded::add));
+
+        ByteBuffer block = ByteBuffer.allocate(5).put((byte) 0x7A).putInt(WireProtocol.MAX_INBOUND_MESSAGE + 1).flip();
+        assertThrows(StreamCorruptedException.class, () -> new LegacyCodec.Decoder().decode(
+                ByteBuffer.allocate(9).put(LegacyCodec.STREAM_HEADER).put(block).flip(), decoded::add));
+    }
+
+    @Test
+    void badStreamsAreRejected() {
+        ByteBuffer header = ByteBuffer.wrap(new byte[] {(byte) 0xAC, (byte) 0xED, 0, 4});
+        assertThrows(StreamCorruptedException.class, () -> decoder.decode(header, decoded::add));
+
+        ByteBuffer object = ByteBuffer.allocate(5).put(LegacyCodec.STREAM_HEADER).put((byte) 0x73).flip();
+        assertThrows(StreamCorruptedException.class, () -> new LegacyCodec.Decoder().decode(object, decoded::add));
+    }
+
+    @Test
+    void encodedMessagesReadBackWithAnObjectInputStream() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(LegacyCodec.STREAM_HEADER);
+        Question question = new Question("2 + 2", new String[] {"3", "4"}, 2);
+        for (Object message : new Object[] {"WAITING", question, "WAITING", question}) {
+            ByteBuffer encoded = LegacyCodec.encode(message);
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            stream.write(bytes);
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stream.toByteArray()))) {
+            assertEquals("WAITING", in.readObject());
+            assertEquals("2 + 2", ((Question) in.readObject()).getQuestionText());
+            // Every message starts with TC_RESET, so repeats aren't back-references to earlier ones
+            assertEquals("WAITING", in.readObject());
+            assertArrayEquals(new String[] {"3", "4"}, ((Question) in.readObject()).getOptions());
+        }
+    }
+}
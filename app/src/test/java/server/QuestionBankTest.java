@@ -0,0 +1,157 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QuestionBankTest {
+    @TempDir
+    Path dir;
+
+    private Path bank(String... lines) throws IOException {
+        Path bank = dir.resolve("bank.csv");
+        Files.write(bank, List.of(lines), StandardCharsets.UTF_8);
+        return bank;
+    }
+
+    @Test
+    void parsesQuotedFields() {
+        Question question = QuestionBank.parse("\"Which is \"\"odd\"\", 3 or 4?\" , 2, \"4, even\",3 ,\"\"\r");
+        assertEquals("Which is \"odd\", 3 or 4?", question.getQuestionText());
+        assertArrayEquals(new String[] {"4, even", "3", ""}, question.getOptions());
+        assertEquals(2, question.getCorrectOption());
+
+        Question written = new Question(" spaced, \"quoted\" ", new String[] {"a,b", "\"c\""}, 1);
+        Question read = QuestionBank.parse(QuestionBank.toCsv(written));
+        assertEquals(written.getQuestionText(), read.getQuestionText());
+        assertArrayEquals(written.getOptions(), read.getOptions());
+    }
+
+    @Test
+    void acceptsTwoTo255Options() {
+        assertEquals(2, QuestionBank.parse("Yes or no?,1,Yes,No").getOptions().length);
+        assertThrows(IllegalArgumentException.class, () -> QuestionBank.parse("Only one?,1,Yes"));
+
+        StringBuilder line = new StringBuilder("Pick one,255");
+        for (int i = 1; i <= ExamProtocol.MAX_OPTIONS; i++) {
+            line.append(",option ").append(i);
+        }
+        Question most = QuestionBank.parse(line.toString());
+        assertEquals(ExamProtocol.MAX_OPTIONS, most.getOptions().length);
+        assertEquals(255, most.getCorrectOption());
+        assertThrows(IllegalArgumentException.class, () -> QuestionBank.parse(line + ",option 256"));
+    }
+
+    @Test
+    void rejectsMalformedLines() {
+        assertThrows(IllegalArgumentException.class, () -> QuestionBank.parse("\"Unterminated,1,a,b"));
+        assertThrows(IllegalArgumentException.class, () -> QuestionBank.parse("Q,first,a,b"));
+        assertThrows(IllegalArgumentException.class, () -> QuestionBank.parse("Q,0,a,b"));
+        assertThrows(IllegalArgumentException.class, () -> QuestionBank.parse("Q,3,a,b"));
+    }
+
+    @Test
+    void indexIsBuiltOnceAndReused() throws IOException {
+        Path path = bank("# comment", "2 + 2?,2,3,4", "", "   ", "Capital of France?,1,Paris,Rome,Madrid", "Last,1,x,y");
+        Path index = dir.resolve("bank.csv.idx");
+        try (QuestionBank bank = QuestionBank.open(path, 10)) {
+            assertEquals(3, bank.size());
+            assertEquals("Capital of France?", bank.get(2).getQuestionText());
+            assertEquals("Last", bank.get(3).getQuestionText());
+            assertThrows(IllegalArgumentException.class, () -> bank.get(4));
+        }
+        assertTrue(Files.exists(index));
+        Object built = Files.readAttributes(index, BasicFileAttributes.class).fileKey();
+
+        try (QuestionBank bank = QuestionBank.open(path, 10)) {
+            assertEquals(3, bank.size());
+            assertEquals("2 + 2?", bank.get(1).getQuestionText());
+        }
+        assertEquals(built, Files.readAttributes(index, BasicFileAttributes.class).fileKey(), "index rebuilt for an unchanged bank");
+    }
+
+    @Test
+    void indexIsRebuiltWhenTheBankChangesOrItIsDamaged() throws IOException {
+        Path path = bank("One,1,a,b", "Two,2,a,b");
+        QuestionBank.open(path, 10).close();
+
+        Files.writeString(path, "Three,1,a,b,c\n", StandardOpenOption.APPEND);
+        try (QuestionBank bank = QuestionBank.open(path, 10)) {
+            assertEquals(3, bank.size());
+            assertArrayEquals(new String[] {"a", "b", "c"}, bank.get(3).getOptions());
+        }
+
+        Path index = dir.resolve("bank.csv.idx");
+        Files.write(index, new byte[Math.toIntExact(Files.size(index)) - 1]);
+        try (QuestionBank bank = QuestionBank.open(path, 10)) {
+            assertEquals(3, bank.size());
+            assertEquals("Two", bank.get(2).getQuestionText());
+        }
+    }
+
+    @Test
+    void selectReadsRangesInOrder() throws IOException {
+        try (QuestionBank bank = QuestionBank.open(bank("Q1,1,a,b", "Q2,1,a,b", "Q3,1,a,b", "Q4,1,a,b"), 10)) {
+            List<Question> chosen = bank.select("3-4, 1");
+            assertEquals(List.of("Q3", "Q4", "Q1"), chosen.stream().map(Question::getQuestionText).toList());
+            assertThrows(IllegalArgumentException.class, () -> bank.select("2-1"));
+            assertThrows(IllegalArgumentException.class, () -> bank.select("x"));
+            assertThrows(IllegalArgumentException.class, () -> bank.select("4-5"));
+        }
+    }
+
+    @Test
+    void cacheEvictsTheLeastRecentlyUsed() throws IOException {
+        String[] lines = new String[50];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "Q" + (i + 1) + ",1,a,b";
+        }
+        try (QuestionBank bank = QuestionBank.open(bank(lines), 3)) {
+            Question first = bank.get(1);
+            Question second = bank.get(2);
+            bank.get(3);
+            assertSame(first, bank.get(1)); // cached, and now the most recently used
+            bank.get(4);                    // evicts question 2, the least recently used
+            assertSame(first, bank.get(1));
+            assertNotSame(second, bank.get(2), "question 2 should have been evicted and read again");
+
+            for (int i = 1; i <= lines.length; i++) {
+                bank.get(i);
+                assertTrue(bank.cachedCount() <= 3);
+            }
+            assertEquals(3, bank.cachedCount());
+        }
+    }
+
+    @Test
+    void generatedQuestionsHaveTheirAnswerAnywhere() {
+        Random random = new Random(42);
+        int[] correctAt = new int[4];
+        for (int i = 1; i <= 400; i++) {
+            Question question = QuestionBank.generated(i, random);
+            String text = question.getQuestionText();
+            String[] sum = text.substring(text.indexOf("is ") + 3, text.indexOf('?')).split(" \\+ ");
+            int expected = Integer.parseInt(sum[0]) + Integer.parseInt(sum[1]);
+            assertEquals(String.valueOf(expected), question.getOptions()[question.getCorrectOption() - 1]);
+            assertEquals(4, List.of(question.getOptions()).stream().distinct().count(), "options repeat: " + text);
+            correctAt[question.getCorrectOption() - 1]++;
+        }
+        for (int count : correctAt) {
+            assertTrue(count > 50, "right answer rarely at some position: " + Arrays.toString(correctAt));
+        }
+        // Seeded: the same bank every time
+        assertEquals(QuestionBank.toCsv(QuestionBank.generated(1, new Random(7))),
+                QuestionBank.toCsv(QuestionBank.generated(1, new Random(7))));
+    }
+}
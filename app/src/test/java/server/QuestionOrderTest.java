@@ -0,0 +1,119 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class QuestionOrderTest {
+    private static final long SEED = 0x1234_5678_9ABCL;
+    private static final int QUESTIONS = 40;
+
+    private static int[] questionOrder(QuestionOrder order) {
+        int[] shown = new int[QUESTIONS];
+        for (int p = 0; p < QUESTIONS; p++) {
+            shown[p] = order.question(p);
+        }
+        return shown;
+    }
+
+    // Canonical options (1-based) as shown at a position; a copy, since optionOrder reuses its array
+    private static int[] shownOptions(QuestionOrder order, int position, int optionCount) {
+        byte[] options = order.optionOrder(position, optionCount);
+        int[] shown = new int[optionCount];
+        for (int i = 0; i < optionCount; i++) {
+            shown[i] = (options[i] & 0xFF) + 1;
+        }
+        return shown;
+    }
+
+    private static void assertPermutation(int[] values, int first) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(first + i, sorted[i], "not a permutation: " + Arrays.toString(values));
+        }
+    }
+
+    @Test
+    void sameSeedAndStudentGiveTheSameOrder() {
+        QuestionOrder first = new QuestionOrder(SEED, "alice", QUESTIONS, true);
+        QuestionOrder again = new QuestionOrder(SEED, "alice", QUESTIONS, true);
+        assertArrayEquals(questionOrder(first), questionOrder(again));
+        for (int p = 0; p < QUESTIONS; p++) {
+            assertArrayEquals(shownOptions(first, p, 6), shownOptions(again, p, 6));
+        }
+
+        // Another student, or another exam, almost surely differs
+        assertFalse(Arrays.equals(questionOrder(first), questionOrder(new QuestionOrder(SEED, "bob", QUESTIONS, true))));
+        assertFalse(Arrays.equals(questionOrder(first), questionOrder(new QuestionOrder(SEED + 1, "alice", QUESTIONS, true))));
+    }
+
+    @Test
+    void questionOrderIsAPermutation() {
+        for (String student : new String[] {"alice", "bob", "carol", "a-very-long-username-0123456789"}) {
+            assertPermutation(questionOrder(new QuestionOrder(SEED, student, QUESTIONS, false)), 0);
+        }
+        QuestionOrder single = new QuestionOrder(SEED, "alice", 1, true);
+        assertEquals(0, single.question(0));
+    }
+
+    @Test
+    void canonicalOptionInvertsTheShownOrder() {
+        QuestionOrder order = new QuestionOrder(SEED, "alice", QUESTIONS, true);
+        for (int optionCount : new int[] {2, 3, 4, 5, 10, ExamProtocol.MAX_OPTIONS}) {
+            for (int p = 0; p < QUESTIONS; p++) {
+                int[] shown = shownOptions(order, p, optionCount);
+                assertPermutation(shown, 1);
+                for (int picked = 1; picked <= optionCount; picked++) {
+                    assertEquals(shown[picked - 1], order.canonicalOption(p, picked, optionCount),
+                            "option " + picked + " of " + optionCount + " at position " + p);
+                }
+            }
+        }
+    }
+
+    @Test
+    void optionOrderDoesNotDependOnOtherPositions() {
+        QuestionOrder order = new QuestionOrder(SEED, "alice", QUESTIONS, true);
+        int[] atThree = shownOptions(order, 3, 8);
+        shownOptions(order, 7, 8);
+        shownOptions(order, 0, 4);
+        assertArrayEquals(atThree, shownOptions(order, 3, 8));
+        assertEquals(atThree[5], order.canonicalOption(3, 6, 8));
+
+        // An answer checked after another position was shown maps the same way
+        QuestionOrder other = new QuestionOrder(SEED, "alice", QUESTIONS, true);
+        shownOptions(other, 9, 8);
+        for (int picked = 1; picked <= 8; picked++) {
+            assertEquals(atThree[picked - 1], other.canonicalOption(3, picked, 8));
+        }
+    }
+
+    @Test
+    void noSeedKeepsTheExamOrder() {
+        QuestionOrder order = new QuestionOrder(null, "alice", QUESTIONS, true);
+        assertTrue(order.keepsOptionOrder());
+        for (int p = 0; p < QUESTIONS; p++) {
+            assertEquals(p, order.question(p));
+            assertArrayEquals(new int[] {1, 2, 3, 4}, shownOptions(order, p, 4));
+            assertEquals(3, order.canonicalOption(p, 3, 4));
+        }
+    }
+
+    @Test
+    void optionsStayPutForClientsThatCantReorderThem() {
+        QuestionOrder order = new QuestionOrder(SEED, "alice", QUESTIONS, false);
+        assertTrue(order.keepsOptionOrder());
+        assertArrayEquals(new int[] {1, 2, 3, 4, 5}, shownOptions(order, 2, 5));
+        assertEquals(4, order.canonicalOption(2, 4, 5));
+    }
+
+    @Test
+    void outOfRangeChoicesArePassedOnForTheCallerToReject() {
+        QuestionOrder order = new QuestionOrder(SEED, "alice", QUESTIONS, true);
+        assertEquals(0, order.canonicalOption(0, 0, 4));
+        assertEquals(5, order.canonicalOption(0, 5, 4));
+    }
+}
@@ -0,0 +1,50 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Connection that keeps what is sent on it and runs tasks at once
+ */
+class RecordingConnection implements Connection {
+    final List<ByteBuffer> sent = new ArrayList<>();
+    boolean closed = false;
+
+    @Override
+    public synchronized void send(ByteBuffer... messages) {
+        for (ByteBuffer message : messages) {
+            sent.add(message.duplicate());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        task.run();
+    }
+
+    @Override
+    public String remoteAddress() {
+        return "test";
+    }
+
+    /**
+     * @return everything sent so far, as one buffer
+     */
+    synchronized ByteBuffer received() {
+        int length = 0;
+        for (ByteBuffer message : sent) {
+            length += message.remaining();
+        }
+        ByteBuffer all = ByteBuffer.allocate(length);
+        for (ByteBuffer message : sent) {
+            all.put(message.duplicate());
+        }
+        return all.flip();
+    }
+}
@@ -0,0 +1,157 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class ResultManagerTest {
+    private static final QuestionPayloads QUESTIONS = new QuestionPayloads(List.of(
+            new Question("2 + 2", new String[] {"3", "4", "5"}, 2),
+            new Question("Capital of France?", new String[] {"Paris", "Rome"}, 1),
+            new Question("Java is ___", new String[] {"a language", "coffee", "an island"}, 1),
+            new Question("3 * 3", new String[] {"6", "9", "33", "12"}, 2)));
+    private static final QuestionPayloads OTHER_QUESTIONS = new QuestionPayloads(List.of(
+            new Question("Yes or no?", new String[] {"Yes", "No"}, 1)));
+
+    // Journal directories outlive a test run, so every exam here has a code of its own
+    private static String newCode() {
+        return "T" + Long.toString(System.nanoTime(), 36).toUpperCase();
+    }
+
+    private static Path journalDir(String code) {
+        return Paths.get(ServerConfig.JOURNAL_DIR, code);
+    }
+
+    // Journal the right answers to some questions, then leave it as a crash would: not marked closed
+    private static void crashedJournal(String code, QuestionPayloads questions, String username, int... ordinals)
+            throws IOException {
+        try (AnswerJournal journal = AnswerJournal.open(journalDir(code), questions.fingerprint(),
+                new ResultStore(questions.answerKey()), false)) {
+            for (int ordinal : ordinals) {
+                journal.append(username, ordinal, questions.question(ordinal).getCorrectOption());
+            }
+        }
+        Files.delete(journalDir(code).resolve("closed"));
+    }
+
+    @Test
+    void crashedExamIsRecoveredWhenItsSessionIsCreated() throws IOException {
+        String code = newCode();
+        crashedJournal(code, QUESTIONS, "alice", 0, 2);
+        ExamSession session = ExamSession.open(code, QUESTIONS);
+        try {
+            ResultManager results = session.getResults();
+            assertFalse(session.isStarted());
+            assertArrayEquals(new int[] {2, 0, 1, 0}, results.currentResults().answersOf("alice"));
+            assertEquals(2, results.currentResults().getScoreboard().top(1).get(0).score());
+
+            // Alice carries on from the first question, in her order, she has no answer for
+            assertEquals(1, results.firstUnanswered("alice", new QuestionOrder(null, "alice", 4, false)));
+            QuestionOrder shuffled = new QuestionOrder(42L, "alice", 4, true);
+            int expected = 0;
+            while (Set.of(0, 2).contains(shuffled.question(expected))) {
+                expected++;
+            }
+            assertEquals(expected, results.firstUnanswered("alice", shuffled));
+
+            // Anyone else starts at the beginning, answers or not
+            results.submitAnswer("bob", 0, 2);
+            assertEquals(0, results.firstUnanswered("bob", new QuestionOrder(null, "bob", 4, false)));
+            assertEquals(0, results.firstUnanswered("carol", new QuestionOrder(null, "carol", 4, false)));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    void journalThatIsNotThisExamsIsLeftForStart() throws IOException {
+        // Closed normally: the previous exam with this code is over
+        String closed = newCode();
+        AnswerJournal.open(journalDir(closed), QUESTIONS.fingerprint(), new ResultStore(QUESTIONS.answerKey()), false).close();
+        ResultManager first = new ResultManager(closed, QUESTIONS);
+        first.recoverJournal();
+        assertFalse(first.closeJournal(), "opened a journal with nothing to recover");
+        assertTrue(Files.exists(journalDir(closed).resolve("closed")), "moved aside before the exam started");
+
+        // For another question set, which the exam may still be given before START
+        String other = newCode();
+        crashedJournal(other, OTHER_QUESTIONS, "alice", 0);
+        ResultManager second = new ResultManager(other, QUESTIONS);
+        second.recoverJournal();
+        assertEquals(0, second.currentResults().studentCount());
+
+        second.useQuestions(OTHER_QUESTIONS);
+        second.recoverJournal();
+        assertArrayEquals(new int[] {1}, second.currentResults().answersOf("alice"));
+        assertEquals(1, second.firstUnanswered("alice", new QuestionOrder(null, "alice", 1, false)));
+
+        // Replaced again: the recovered answers don't carry over to a different set
+        second.useQuestions(QUESTIONS);
+        assertEquals(0, second.currentResults().studentCount());
+        assertEquals(0, second.firstUnanswered("alice", new QuestionOrder(null, "alice", 4, false)));
+        second.closeJournal();
+    }
+
+    @Test
+    void recoveredStudentWithEveryAnswerIsGivenTheirResultAtStart() throws Exception {
+        String code = newCode();
+        crashedJournal(code, QUESTIONS, "student3", 0, 1, 2, 3);
+        ExamSession session = ExamSession.open(code, QUESTIONS);
+        RecordingConnection connection = new RecordingConnection();
+        ClientHandler handler = new ClientHandler(connection);
+        try {
+            handler.onInput(ExamProtocol.hello(ExamProtocol.VERSION));
+            handler.onInput(ExamProtocol.auth("student3", "pass123", code));
+            long giveUp = System.nanoTime() + 10_000_000_000L;
+            while (!replyTypes(connection).contains(ExamProtocol.WAITING)) {
+                assertTrue(System.nanoTime() < giveUp, "never logged in");
+                Thread.sleep(10);
+            }
+            session.start();
+
+            List<Byte> types = replyTypes(connection);
+            assertTrue(types.contains(ExamProtocol.START));
+            assertFalse(types.contains(ExamProtocol.QUESTION) || types.contains(ExamProtocol.BUNDLED),
+                    "asked again a question they had answered: " + types);
+            assertEquals(ExamProtocol.RESULT, types.get(types.size() - 1));
+            ByteBuffer result = lastFrame(connection);
+            assertEquals(100, result.get() & 0xFF);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static List<Byte> replyTypes(RecordingConnection connection) throws IOException {
+        List<Byte> types = new ArrayList<>();
+        ByteBuffer received = connection.received();
+        received.position(ExamProtocol.HELLO_LENGTH);
+        while (received.hasRemaining()) {
+            int length = ExamProtocol.getLength(received);
+            types.add(received.get(received.position()));
+            received.position(received.position() + length);
+        }
+        return types;
+    }
+
+    // The payload of the last frame sent, after its type
+    private static ByteBuffer lastFrame(RecordingConnection connection) throws IOException {
+        ByteBuffer received = connection.received();
+        received.position(ExamProtocol.HELLO_LENGTH);
+        ByteBuffer last = null;
+        while (received.hasRemaining()) {
+            int length = ExamProtocol.getLength(received);
+            last = received.slice(received.position() + 1, length - 1);
+            received.position(received.position() + length);
+        }
+        return last;
+    }
+}
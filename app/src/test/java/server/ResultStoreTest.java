@@ -0,0 +1,118 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class ResultStoreTest {
+    private static final int QUESTIONS = 64;
+    private static final int STUDENTS = 8;
+
+    @Test
+    void recordAndReadBack() {
+        ResultStore store = new ResultStore(new int[] {1, 2, 3});
+        assertNull(store.answersOf("alice"));
+        store.record("alice", 1, 2);
+        store.record("bob", 0, 3);
+        store.record("alice", 1, 4); // overwrites
+        assertArrayEquals(new int[] {0, 4, 0}, store.answersOf("alice"));
+        assertEquals(2, store.studentCount());
+        assertEquals(List.of("alice", "bob"), List.copyOf(store.snapshot().keySet()));
+
+        // A copy: changing it doesn't change the store
+        store.answersOf("alice")[0] = 1;
+        assertArrayEquals(new int[] {0, 4, 0}, store.answersOf("alice"));
+    }
+
+    /**
+     * Each writer sweeps its student's answers from the first question to the
+     * last, setting them all to the next value, round after round. Any state
+     * the student is really in is then the new value on a prefix and the
+     * previous one on the rest; a copy torn by a concurrent write would show
+     * a newer value after an older one.
+     */
+    @Test
+    void readsNeverSeeAStudentHalfWayThroughAnotherWrite() throws InterruptedException {
+        int[] answerKey = new int[QUESTIONS];
+        Arrays.fill(answerKey, 1);
+        ResultStore store = new ResultStore(answerKey);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> torn = new AtomicReference<>();
+
+        Thread[] writers = new Thread[STUDENTS];
+        for (int s = 0; s < STUDENTS; s++) {
+            String student = "student" + s;
+            writers[s] = new Thread(() -> {
+                for (int value = 1; running.get(); value = value % ExamProtocol.MAX_OPTIONS + 1) {
+                    for (int q = 0; q < QUESTIONS; q++) {
+                        store.record(student, q, value);
+                    }
+                }
+            });
+        }
+        Thread[] readers = {
+                new Thread(() -> {
+                    while (running.get() && torn.get() == null) {
+                        for (int s = 0; s < STUDENTS; s++) {
+                            check(store.answersOf("student" + s), torn);
+                        }
+                    }
+                }),
+                new Thread(() -> {
+                    while (running.get() && torn.get() == null) {
+                        for (Map.Entry<String, int[]> row : store.snapshot().entrySet()) {
+                            check(row.getValue(), torn);
+                        }
+                    }
+                }),
+        };
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        for (Thread thread : readers) {
+            thread.start();
+        }
+        Thread.sleep(2000);
+        running.set(false);
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        for (Thread thread : readers) {
+            thread.join();
+        }
+        assertNull(torn.get());
+        assertEquals(STUDENTS, store.studentCount());
+    }
+
+    // A row must be some value on a prefix, then the value before it on the rest
+    private static void check(int[] row, AtomicReference<String> torn) {
+        if (row == null) {
+            return; // student not seen yet
+        }
+        int newer = row[0];
+        int i = 0;
+        while (i < row.length && row[i] == newer) {
+            i++;
+        }
+        if (i == row.length) {
+            return;
+        }
+        int older = row[i];
+        // Before 1 comes the last option, or no answer in the first round
+        boolean previous = newer == 1
+                ? older == ExamProtocol.MAX_OPTIONS || older == ResultStore.NO_ANSWER
+                : older == newer - 1;
+        for (; i < row.length; i++) {
+            if (!previous || row[i] != older) {
+                torn.compareAndSet(null, Arrays.toString(row));
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class ResumeTableTest {
+    private static ClientHandler handler() {
+        return new ClientHandler(new RecordingConnection());
+    }
+
+    @Test
+    void tokenRoundTrip() {
+        ResumeTable.Seat seat = ResumeTable.issue("alice", null, handler());
+        byte[] bytes = seat.token.bytes();
+        assertEquals(ExamProtocol.SESSION_TOKEN_LENGTH, bytes.length);
+        assertEquals(seat.token, ResumeTable.Token.read(ByteBuffer.wrap(bytes)));
+        ResumeTable.release(seat);
+    }
+
+    @Test
+    void claimMovesTheSeatToTheNewHandler() {
+        ClientHandler first = handler();
+        ResumeTable.Seat seat = ResumeTable.issue("alice", null, first);
+
+        ClientHandler second = handler();
+        ResumeTable.Claim claim = ResumeTable.claim(seat.token, second);
+        assertSame(seat, claim.seat());
+        assertSame(first, claim.previous(), "the old connection must hand over");
+
+        // The old handler letting go now doesn't empty the seat the new one holds
+        ResumeTable.park(seat, first);
+        assertSame(second, ResumeTable.claim(seat.token, handler()).previous());
+        ResumeTable.release(seat);
+    }
+
+    @Test
+    void parkedSeatIsClaimedWithNoPreviousHolder() {
+        ClientHandler holder = handler();
+        ResumeTable.Seat seat = ResumeTable.issue("bob", null, holder);
+        ResumeTable.park(seat, holder);
+
+        ResumeTable.Claim claim = ResumeTable.claim(seat.token, handler());
+        assertNotNull(claim);
+        assertNull(claim.previous());
+        ResumeTable.release(seat);
+    }
+
+    @Test
+    void releasedOrUnknownTokensCantBeClaimed() {
+        ResumeTable.Seat seat = ResumeTable.issue("carol", null, handler());
+        int size = ResumeTable.size();
+        ResumeTable.release(seat);
+        assertEquals(size - 1, ResumeTable.size());
+        assertNull(ResumeTable.claim(seat.token, handler()));
+        assertNull(ResumeTable.claim(new ResumeTable.Token(seat.token.high(), ~seat.token.low()), handler()));
+    }
+
+    @Test
+    void seatLeftEmptyExpires() throws InterruptedException {
+        ClientHandler holder = handler();
+        ResumeTable.Seat seat = ResumeTable.issue("dave", null, holder);
+        int size = ResumeTable.size();
+        ResumeTable.park(seat, holder);
+
+        assertTrue(waitForSize(size - 1), "seat still held after the resume window");
+        assertNull(ResumeTable.claim(seat.token, handler()));
+    }
+
+    @Test
+    void claimStopsTheSeatExpiring() throws InterruptedException {
+        ClientHandler holder = handler();
+        ResumeTable.Seat seat = ResumeTable.issue("erin", null, holder);
+        int size = ResumeTable.size();
+        ResumeTable.park(seat, holder);
+        assertNotNull(ResumeTable.claim(seat.token, handler()));
+
+        assertFalse(waitForSize(size - 1), "claimed seat expired");
+        assertNotNull(ResumeTable.claim(seat.token, handler()));
+        ResumeTable.release(seat);
+    }
+
+    // Wait up to a few resume windows for the table to reach a size
+    private static boolean waitForSize(int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3 * ServerConfig.RESUME_WINDOW_MS);
+        while (ResumeTable.size() != size) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
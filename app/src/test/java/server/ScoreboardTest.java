@@ -0,0 +1,136 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class ScoreboardTest {
+    private static final int[] ANSWER_KEY = {1, 2, 3, 4};
+
+    private final ResultStore store = new ResultStore(ANSWER_KEY);
+    private final Scoreboard scoreboard = store.getScoreboard();
+
+    @Test
+    void reAnswersMoveTheScoreByOne() {
+        store.record("alice", 0, 2);
+        assertEquals(0, store.scoreOf("alice"));
+        store.record("alice", 0, 1); // incorrect -> correct
+        assertEquals(1, store.scoreOf("alice"));
+        store.record("alice", 0, 1); // same answer again
+        assertEquals(1, store.scoreOf("alice"));
+        store.record("alice", 1, 2);
+        assertEquals(2, store.scoreOf("alice"));
+        store.record("alice", 0, 3); // correct -> incorrect
+        assertEquals(1, store.scoreOf("alice"));
+        store.record("alice", 0, 4); // incorrect -> incorrect
+        assertEquals(1, store.scoreOf("alice"));
+        assertEquals(List.of(new Scoreboard.Standing("alice", 1)), scoreboard.top(10));
+    }
+
+    @Test
+    void perQuestionCountersFollowChangedAnswers() {
+        store.record("alice", 2, 3);
+        store.record("bob", 2, 1);
+        store.record("carol", 2, 3);
+        assertEquals(2, scoreboard.correctCount(2));
+        assertEquals(1, scoreboard.incorrectCount(2));
+
+        store.record("carol", 2, 2); // carol changes her mind, wrongly
+        store.record("bob", 2, 3);   // bob corrects his
+        assertEquals(2, scoreboard.correctCount(2));
+        assertEquals(1, scoreboard.incorrectCount(2));
+        assertEquals(0, scoreboard.correctCount(0));
+        assertEquals(0, scoreboard.incorrectCount(0));
+    }
+
+    @Test
+    void leaderboardIsByScoreThenName() {
+        store.record("dave", 0, 1);
+        store.record("dave", 1, 2);
+        store.record("carol", 0, 1);
+        store.record("bob", 3, 4);
+        store.record("alice", 0, 4); // answered, but nothing right
+        store.record("erin", 0, 1);
+        store.record("erin", 1, 2);
+        store.record("erin", 2, 3);
+
+        assertEquals(List.of(
+                new Scoreboard.Standing("erin", 3),
+                new Scoreboard.Standing("dave", 2),
+                new Scoreboard.Standing("bob", 1),
+                new Scoreboard.Standing("carol", 1),
+                new Scoreboard.Standing("alice", 0)), scoreboard.top(10));
+        assertEquals(List.of(
+                new Scoreboard.Standing("erin", 3),
+                new Scoreboard.Standing("dave", 2),
+                new Scoreboard.Standing("bob", 1)), scoreboard.top(3));
+        assertEquals(75, scoreboard.percent(3));
+    }
+
+    @Test
+    void leaderboardStaysOrderedWhileAnswersArrive() throws InterruptedException {
+        int students = 200;
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            int first = w;
+            writers[w] = new Thread(() -> {
+                for (int round = 0; running.get(); round++) {
+                    for (int s = first; s < students; s += writers.length) {
+                        // Flip between right and wrong, so scores go up and down
+                        int q = (s + round) % ANSWER_KEY.length;
+                        store.record("student" + s, q, round % 2 == 0 ? ANSWER_KEY[q] : ANSWER_KEY[q] % 4 + 1);
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        try {
+            for (int i = 0; i < 2000; i++) {
+                List<Scoreboard.Standing> top = scoreboard.top(50);
+                Set<String> seen = new HashSet<>();
+                for (int r = 0; r < top.size(); r++) {
+                    Scoreboard.Standing row = top.get(r);
+                    assertTrue(row.score() >= 0 && row.score() <= ANSWER_KEY.length);
+                    assertTrue(seen.add(row.username()), "listed twice: " + row.username());
+                    if (r > 0) {
+                        Scoreboard.Standing above = top.get(r - 1);
+                        assertTrue(above.score() > row.score()
+                                || above.score() == row.score() && above.username().compareTo(row.username()) < 0,
+                                above + " listed above " + row);
+                    }
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+
+        // Once answers stop, the buckets agree with the stored scores
+        List<Scoreboard.Standing> all = scoreboard.top(students);
+        assertEquals(students, all.size());
+        for (Scoreboard.Standing row : all) {
+            assertEquals(store.scoreOf(row.username()), row.score());
+        }
+    }
+
+    @Test
+    void outOfRangeOptionsAndQuestionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> store.record("alice", 0, ResultStore.NO_ANSWER));
+        assertThrows(IllegalArgumentException.class, () -> store.record("alice", 0, -1));
+        assertThrows(IllegalArgumentException.class, () -> store.record("alice", 0, ExamProtocol.MAX_OPTIONS + 1));
+        assertThrows(IllegalArgumentException.class, () -> store.record("alice", ANSWER_KEY.length, 1));
+        assertNull(store.answersOf("alice"), "a rejected answer must leave no trace");
+        assertEquals(0, scoreboard.incorrectCount(0));
+
+        store.record("alice", 0, ExamProtocol.MAX_OPTIONS); // the largest option is fine
+        assertArrayEquals(new int[] {ExamProtocol.MAX_OPTIONS, 0, 0, 0}, store.answersOf("alice"));
+    }
+}
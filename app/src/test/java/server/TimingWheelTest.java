@@ -0,0 +1,133 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(5_000_000_000L);
+    private TimingWheel wheel = new TimingWheel(1, now::get);
+
+    private void advanceTo(long nanos) {
+        now.set(nanos);
+        wheel.fireDue();
+    }
+
+    // Each level is 64 times as wide as the one below: 64, 4096, 262144 ticks, and 2^24 for the whole wheel
+    @ParameterizedTest
+    @ValueSource(longs = {1, 63, 64, 65, 4095, 4096, 4097, 262_143, 262_144, 262_145,
+            16_777_215, 16_777_216, 16_777_217, 20_000_000})
+    void firesOnItsTickNeverEarly(long ticks) {
+        for (long offset : new long[] {0, 1, 63, 4095}) {
+            wheel = new TimingWheel(1, now::get);
+            advanceTo(now.get() + offset * TICK); // so slots and level boundaries don't line up with the start
+            AtomicInteger fired = new AtomicInteger();
+            TimingWheel.Timeout timeout = wheel.newTimeout(fired::incrementAndGet);
+            long deadline = now.get() + ticks * TICK;
+            timeout.scheduleAt(deadline);
+
+            advanceTo(deadline - 1);
+            assertEquals(0, fired.get(), "early, " + ticks + " ticks from offset " + offset);
+            advanceTo(deadline);
+            assertEquals(1, fired.get(), "not on its tick, " + ticks + " ticks from offset " + offset);
+            assertEquals(0, wheel.size());
+        }
+    }
+
+    @Test
+    void deadlineBetweenTicksFiresOnTheNextOne() {
+        AtomicInteger fired = new AtomicInteger();
+        long deadline = now.get() + 10 * TICK + TICK / 2;
+        wheel.newTimeout(fired::incrementAndGet).scheduleAt(deadline);
+        advanceTo(deadline);
+        assertEquals(0, fired.get());
+        advanceTo(now.get() + 11 * TICK - TICK / 2);
+        assertEquals(1, fired.get());
+    }
+
+    @Test
+    void pastDeadlineFiresOnTheNextTick() {
+        AtomicInteger fired = new AtomicInteger();
+        wheel.newTimeout(fired::incrementAndGet).scheduleAt(now.get() - 5 * TICK);
+        wheel.fireDue();
+        assertEquals(0, fired.get());
+        advanceTo(now.get() + TICK);
+        assertEquals(1, fired.get());
+    }
+
+    @Test
+    void cancelledTimeoutDoesNotFire() {
+        AtomicInteger fired = new AtomicInteger();
+        TimingWheel.Timeout timeout = wheel.newTimeout(fired::incrementAndGet);
+        timeout.schedule(5000, TimeUnit.MILLISECONDS);
+        assertEquals(1, wheel.size());
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.size());
+        advanceTo(now.get() + 10_000 * TICK);
+        assertEquals(0, fired.get());
+    }
+
+    @Test
+    void rescheduleReplacesTheEarlierDeadline() {
+        AtomicInteger fired = new AtomicInteger();
+        TimingWheel.Timeout timeout = wheel.newTimeout(fired::incrementAndGet);
+        long start = now.get();
+
+        // Later, from level 0 to level 2
+        timeout.scheduleAt(start + 10 * TICK);
+        timeout.scheduleAt(start + 300_000 * TICK);
+        assertEquals(1, wheel.size());
+        advanceTo(start + 299_999 * TICK);
+        assertEquals(0, fired.get());
+
+        // Earlier, from level 1 to level 0
+        timeout.scheduleAt(now.get() + 5000 * TICK);
+        timeout.scheduleAt(now.get() + 3 * TICK);
+        advanceTo(now.get() + 3 * TICK);
+        assertEquals(1, fired.get());
+        advanceTo(now.get() + 10_000 * TICK);
+        assertEquals(1, fired.get());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void timeoutCanBeScheduledAgainFromItsTask() {
+        AtomicInteger fired = new AtomicInteger();
+        TimingWheel.Timeout[] self = new TimingWheel.Timeout[1];
+        self[0] = wheel.newTimeout(() -> {
+            if (fired.incrementAndGet() < 3) {
+                self[0].schedule(100, TimeUnit.MILLISECONDS);
+            }
+        });
+        self[0].schedule(100, TimeUnit.MILLISECONDS);
+        for (int i = 1; i <= 5; i++) {
+            advanceTo(now.get() + 100 * TICK);
+            assertEquals(Math.min(i, 3), fired.get());
+        }
+    }
+
+    @Test
+    void timeoutsSharingASlotAllFire() {
+        AtomicInteger fired = new AtomicInteger();
+        long deadline = now.get() + 5000 * TICK;
+        for (int i = 0; i < 1000; i++) {
+            wheel.newTimeout(fired::incrementAndGet).scheduleAt(deadline);
+        }
+        TimingWheel.Timeout cancelled = wheel.newTimeout(fired::incrementAndGet);
+        cancelled.scheduleAt(deadline);
+        cancelled.cancel();
+        advanceTo(deadline);
+        assertEquals(1000, fired.get());
+        assertEquals(0, wheel.size());
+    }
+}
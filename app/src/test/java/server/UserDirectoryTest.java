@@ -0,0 +1,125 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UserDirectoryTest {
+    private static final int ITERATIONS = 1000;
+    private static final String SALT = Base64.getEncoder().encodeToString(new byte[UserDirectory.SALT_BYTES]);
+    private static final String HASH = Base64.getEncoder().encodeToString(new byte[UserDirectory.HASH_BYTES]);
+
+    @TempDir
+    Path dir;
+
+    private Path roster(String text) throws IOException {
+        Path roster = dir.resolve("students.roster");
+        Files.writeString(roster, text, StandardCharsets.UTF_8);
+        return roster;
+    }
+
+    private static String written(String[] usernames, String[] passwords) throws IOException {
+        StringWriter out = new StringWriter();
+        UserDirectory.writeRoster(out, usernames, passwords, ITERATIONS);
+        return out.toString();
+    }
+
+    @Test
+    void writtenRosterLoadsBack() throws IOException {
+        String[] usernames = {"alice", "bob", "çarol"};
+        String[] passwords = {"secret", "pass:word", "pässwörd"};
+        Path roster = roster("# generated\n\n" + written(usernames, passwords) + "   \n");
+
+        UserDirectory directory = UserDirectory.load(roster, ITERATIONS);
+        assertEquals(3, directory.size());
+        for (int i = 0; i < usernames.length; i++) {
+            assertTrue(directory.contains(usernames[i]));
+            assertEquals(UserDirectory.Outcome.OK, directory.verify(usernames[i], passwords[i]));
+        }
+        assertFalse(directory.contains("dave"));
+        assertFalse(directory.contains(null));
+    }
+
+    @Test
+    void outcomesOfAPasswordCheck() throws IOException {
+        UserDirectory directory = UserDirectory.load(roster(written(new String[] {"alice"}, new String[] {"secret"})), ITERATIONS);
+        assertEquals(UserDirectory.Outcome.OK, directory.verify("alice", "secret"));
+        assertEquals(UserDirectory.Outcome.BAD_PASSWORD, directory.verify("alice", "Secret"));
+        assertEquals(UserDirectory.Outcome.BAD_PASSWORD, directory.verify("alice", ""));
+        assertEquals(UserDirectory.Outcome.UNKNOWN_USER, directory.verify("Alice", "secret"));
+        assertEquals(UserDirectory.Outcome.UNKNOWN_USER, directory.verify(null, "secret"));
+    }
+
+    @Test
+    void malformedLinesAreReportedWithTheirLineNumber() throws IOException {
+        String[] bad = {
+                "alice:" + ITERATIONS + ":" + SALT,                      // a field missing
+                "alice:many:" + SALT + ":" + HASH,                      // iterations not a number
+                "alice:0:" + SALT + ":" + HASH,                         // no iterations
+                "alice:" + ITERATIONS + ":not*base64:" + HASH,          // salt not base64
+                "alice:" + ITERATIONS + ":" + HASH + ":" + HASH,        // salt the wrong length
+                "alice:" + ITERATIONS + ":" + SALT + ":" + SALT,        // hash the wrong length
+        };
+        for (String line : bad) {
+            Path roster = roster("# header\nbob:" + ITERATIONS + ":" + SALT + ":" + HASH + "\n" + line + "\n");
+            IOException e = assertThrows(IOException.class, () -> UserDirectory.load(roster, ITERATIONS), line);
+            assertTrue(e.getMessage().contains("line 3"), e.getMessage());
+        }
+    }
+
+    @Test
+    void duplicateUserIsRejected() throws IOException {
+        Path roster = roster(written(new String[] {"alice", "bob", "alice"}, new String[] {"a", "b", "c"}));
+        IOException e = assertThrows(IOException.class, () -> UserDirectory.load(roster, ITERATIONS));
+        assertTrue(e.getMessage().contains("duplicate user alice"), e.getMessage());
+    }
+
+    @Test
+    void registeredUsersCanLogIn() throws IOException {
+        UserDirectory directory = UserDirectory.load(roster(written(new String[] {"alice"}, new String[] {"secret"})), ITERATIONS);
+        assertTrue(directory.register("bob", "hunter2"));
+        assertFalse(directory.register("alice", "other"), "registered over an existing user");
+        assertEquals(2, directory.size());
+        assertEquals(UserDirectory.Outcome.OK, directory.verify("bob", "hunter2"));
+        assertEquals(UserDirectory.Outcome.OK, directory.verify("alice", "secret"));
+
+        UserDirectory empty = UserDirectory.empty(ITERATIONS);
+        assertEquals(UserDirectory.Outcome.UNKNOWN_USER, empty.verify("alice", "secret"));
+    }
+
+    @Test
+    void fullVerifierPoolTurnsLoginsAwayAtOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+        try {
+            pool.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            CompletableFuture<Boolean> queued = UserManager.authenticateAsync("nobody-1", "x", pool);
+            CompletableFuture<Boolean> rejected = UserManager.authenticateAsync("nobody-2", "x", pool);
+
+            assertTrue(rejected.isCompletedExceptionally(), "should fail without waiting for the pool");
+            ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+            assertFalse(queued.isDone());
+
+            release.countDown();
+            assertFalse(queued.get(5, TimeUnit.SECONDS), "unknown student let in");
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadConnectionEngineTest {
+    private ServerSocketChannel server;
+    private SocketChannel peer;
+    private VirtualThreadConnectionEngine.BlockingConnection connection;
+
+    @BeforeEach
+    void connect() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        peer = SocketChannel.open(server.getLocalAddress());
+        connection = new VirtualThreadConnectionEngine.BlockingConnection(server.accept());
+    }
+
+    @AfterEach
+    void disconnect() throws IOException {
+        connection.close();
+        peer.close();
+        server.close();
+    }
+
+    @Test
+    void tasksRunOneAtATimeInTheOrderPosted() throws InterruptedException {
+        List<Integer> ran = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 10_000; i++) {
+            int n = i;
+            connection.execute(() -> ran.add(n)); // unsynchronized on purpose: only one task runs at a time
+        }
+        connection.execute(done::countDown);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < ran.size(); i++) {
+            assertEquals(i, ran.get(i));
+        }
+        assertEquals(10_000, ran.size());
+    }
+
+    @Test
+    void sendToASlowReaderDoesNotBlockTheCaller() throws Exception {
+        // Far more than the socket buffers hold while the peer isn't reading
+        ByteBuffer big = ByteBuffer.allocate(16 * 1024 * 1024);
+        long start = System.nanoTime();
+        synchronized (this) { // as ClientHandler sends while holding its lock
+            connection.send(big);
+            connection.send(ByteBuffer.wrap(new byte[] {42}));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "send waited for the peer");
+
+        // Everything arrives in order once the peer reads
+        CountDownLatch ran = new CountDownLatch(1);
+        connection.execute(ran::countDown);
+        connection.close();
+        assertEquals(big.capacity() + 1, drain());
+        assertTrue(ran.await(5, TimeUnit.SECONDS), "task after the sends never ran");
+    }
+
+    @Test
+    void closeWaitsForQueuedSends() throws IOException {
+        connection.send(ByteBuffer.wrap(new byte[1000]));
+        connection.close();
+        connection.send(ByteBuffer.wrap(new byte[1000])); // after close: dropped
+        assertEquals(1000, drain());
+    }
+
+    // Read until the connection closes, returning the byte count and checking the last byte sent
+    private long drain() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        long total = 0;
+        int n;
+        byte last = 0;
+        while ((n = peer.read(buf.clear())) >= 0) {
+            total += n;
+            if (n > 0) {
+                last = buf.get(n - 1);
+            }
+        }
+        if (total > 1000) {
+            assertEquals(42, last);
+        }
+        return total;
+    }
+}
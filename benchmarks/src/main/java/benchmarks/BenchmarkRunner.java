@@ -0,0 +1,72 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmarks once for each thread count, writing JMH's JSON
+ * results to one file per count (threads-4.json, ...), so runs can be
+ * compared by a script and regressions caught before an exam does.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.BenchmarkRunner
+ *        [--threads 1,4,8] [--out jmh-results] [--param name=v1,v2] [--quick] [benchmark regex...]
+ *
+ * With no regex every benchmark runs. --param overrides a @Param (student
+ * count, question count, ...) for all of them. --quick cuts warmup and
+ * measurement to one second each, for a smoke run. For anything else, use
+ * JMH's own options: java -jar benchmarks/target/benchmarks.jar -h
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String threads = "1,4,8";
+        File out = new File("jmh-results");
+        boolean quick = false;
+        List<String> params = new ArrayList<>();
+        List<String> includes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = args[++i];
+                case "--out" -> out = new File(args[++i]);
+                case "--param" -> params.add(args[++i]);
+                case "--quick" -> quick = true;
+                default -> includes.add(args[i]);
+            }
+        }
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new IllegalArgumentException("Can't create " + out);
+        }
+
+        for (String count : threads.split(",")) {
+            int threadCount = Integer.parseInt(count.trim());
+            File result = new File(out, "threads-" + threadCount + ".json");
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .threads(threadCount)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.getPath());
+            for (String include : includes) {
+                options.include(include);
+            }
+            for (String param : params) {
+                int equals = param.indexOf('=');
+                if (equals < 1) {
+                    throw new IllegalArgumentException("Expected --param name=v1,v2 but got " + param);
+                }
+                options.param(param.substring(0, equals), param.substring(equals + 1).split(","));
+            }
+            if (quick) {
+                options.warmupIterations(1).warmupTime(TimeValue.seconds(1))
+                        .measurementIterations(1).measurementTime(TimeValue.seconds(1));
+            }
+            System.out.println("📊 " + threadCount + " thread(s) -> " + result);
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+import server.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost on the calling thread of logging one answer: the old synchronous
+ * println with string concatenation against the asynchronous Log, enabled
+ * and filtered out by level. Both write to a discarding stream set up like
+ * System.out (buffered, flushed on every println), so the numbers are the
+ * logging path itself rather than the terminal. Contention shows with more
+ * threads, e.g.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.BenchmarkRunner --threads 1,8 LoggingBenchmark
+ *
+ * If the writer thread falls a whole ring behind, the extra events are
+ * dropped (as in the server), which flatters asyncLog when the producers
+ * outrun the writer; the drops are reported alongside, as the "dropped"
+ * counter.
+ * asyncLogDrained avoids that by logging a batch that fits in the ring and
+ * waiting for the writer to print it, so it counts formatting and output too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+    private PrintStream out;
+    private Log log;
+    private static final int BATCH = 2048;
+
+    private Log warnOnlyLog;
+    private Log drainedLog;
+    private String[] usernames;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        out = new PrintStream(new BufferedOutputStream(OutputStream.nullOutputStream()), true);
+        log = new Log(out, 8192, Log.Level.INFO);
+        warnOnlyLog = new Log(out, 8192, Log.Level.WARN);
+        drainedLog = new Log(out, 8192 * 4, Log.Level.INFO); // room for a batch from each of 16 threads
+        usernames = new String[100];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = "student" + i;
+        }
+    }
+
+    /**
+     * Events the asynchronous logs dropped in each iteration, for all threads together
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Drops {
+        public long dropped;
+        private long before;
+        private boolean reporting;
+
+        @Setup(Level.Iteration)
+        public void start(LoggingBenchmark benchmark, ThreadParams threads) {
+            // Drops are counted per log, not per thread: one thread reports them
+            reporting = threads.getThreadIndex() == 0;
+            before = benchmark.droppedCount();
+            dropped = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop(LoggingBenchmark benchmark) {
+            if (reporting) {
+                dropped = benchmark.droppedCount() - before;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        log.close();
+        warnOnlyLog.close();
+        drainedLog.close();
+    }
+
+    long droppedCount() {
+        return log.droppedCount() + drainedLog.droppedCount();
+    }
+
+    @Benchmark
+    public void println() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        out.println("Answer received from " + usernames[rnd.nextInt(usernames.length)] + ": " + (1 + rnd.nextInt(4)));
+    }
+
+    @Benchmark
+    public void asyncLog(Drops drops) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        log.log(Log.Event.ANSWER, usernames[rnd.nextInt(usernames.length)], rnd.nextInt(50),
+                1 + rnd.nextInt(4), 1_500_000, null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void asyncLogDrained(Drops drops) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (int i = 0; i < BATCH; i++) {
+            drainedLog.log(Log.Event.ANSWER, usernames[rnd.nextInt(usernames.length)], rnd.nextInt(50),
+                    1 + rnd.nextInt(4), 1_500_000, null);
+        }
+        drainedLog.drain(10_000);
+    }
+
+    @Benchmark
+    public void asyncLogDisabled() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        warnOnlyLog.log(Log.Event.ANSWER, usernames[rnd.nextInt(usernames.length)], rnd.nextInt(50),
+                1 + rnd.nextInt(4), 1_500_000, null);
+    }
+}
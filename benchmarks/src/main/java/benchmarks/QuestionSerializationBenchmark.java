@@ -0,0 +1,82 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import server.ExamProtocol;
+import server.Question;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to encode and decode an exam's questions: Java serialization, as
+ * legacy clients get them, against ExamProtocol frames. Bytes on the wire are
+ * compared by WireProtocolBenchmark. Encoding happens once per question set
+ * on the server nowadays (QuestionPayloads), decoding on every client.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuestionSerializationBenchmark {
+    @Param({"20", "200"})
+    int questions;
+
+    private Question[] questionSet;
+    private byte[] objectStream;
+    private byte[] frames;
+
+    @Setup
+    public void setup() throws IOException {
+        questionSet = WireProtocolBenchmark.sampleQuestions(questions);
+        objectStream = encodeObjectStream(questionSet);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int i = 0; i < questionSet.length; i++) {
+            ExamProtocol.writeFrame(bos, ExamProtocol.question(i, questionSet[i]));
+        }
+        frames = bos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] objectStreamEncode() throws IOException {
+        return encodeObjectStream(questionSet);
+    }
+
+    @Benchmark
+    public void objectStreamDecode(Blackhole blackhole) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(objectStream));
+        for (int i = 0; i < questions; i++) {
+            blackhole.consume(in.readObject());
+        }
+    }
+
+    @Benchmark
+    public void binaryEncode(Blackhole blackhole) {
+        for (int i = 0; i < questionSet.length; i++) {
+            blackhole.consume(ExamProtocol.question(i, questionSet[i]));
+        }
+    }
+
+    @Benchmark
+    public void binaryDecode(Blackhole blackhole) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frames));
+        for (int i = 0; i < questions; i++) {
+            ByteBuffer frame = ExamProtocol.readFrame(in);
+            frame.get(); // type
+            blackhole.consume(ExamProtocol.readQuestion(frame));
+        }
+    }
+
+    private static byte[] encodeObjectStream(Question[] questions) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(4096);
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        for (Question q : questions) {
+            out.writeObject(q);
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
+}
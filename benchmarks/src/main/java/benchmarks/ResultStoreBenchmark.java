@@ -0,0 +1,99 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import server.Question;
+import server.ResultStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answer submission throughput: ResultStore against the previous design
+ * (one static synchronized method over a HashMap of HashMaps keyed by
+ * Question). Run with an increasing thread count to see scaling, e.g.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.BenchmarkRunner --threads 1,4,8 ResultStoreBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultStoreBenchmark {
+    @Param({"1000", "5000"})
+    int students;
+
+    @Param({"50"})
+    int questions;
+
+    private String[] usernames;
+    private Question[] questionSet;
+    private ResultStore store;
+    private SynchronizedResults synchronizedResults;
+
+    @Setup
+    public void setup() {
+        usernames = new String[students];
+        for (int i = 0; i < students; i++) {
+            usernames[i] = "student" + i;
+        }
+        questionSet = WireProtocolBenchmark.sampleQuestions(questions);
+        int[] answerKey = new int[questions];
+        for (int i = 0; i < questions; i++) {
+            answerKey[i] = questionSet[i].getCorrectOption();
+        }
+        store = new ResultStore(answerKey);
+        synchronizedResults = new SynchronizedResults();
+        // Every student has a slot already, as they would a few seconds into an exam
+        for (String username : usernames) {
+            store.record(username, 0, 1);
+            synchronizedResults.submitAnswer(username, questionSet[0], 1);
+        }
+    }
+
+    @Benchmark
+    public void resultStore() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        store.record(usernames[rnd.nextInt(students)], rnd.nextInt(questions), 1 + rnd.nextInt(4));
+    }
+
+    @Benchmark
+    public void synchronizedMap() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        synchronizedResults.submitAnswer(usernames[rnd.nextInt(students)],
+                questionSet[rnd.nextInt(questions)], 1 + rnd.nextInt(4));
+    }
+
+    /**
+     * Writers plus one thread taking full snapshots, as the reporting code does
+     */
+    @Benchmark
+    @Group("snapshotUnderLoad")
+    @GroupThreads(3)
+    public void snapshotUnderLoadWriter() {
+        resultStore();
+    }
+
+    @Benchmark
+    @Group("snapshotUnderLoad")
+    @GroupThreads(1)
+    public void snapshotUnderLoadReader(Blackhole bh) {
+        bh.consume(store.snapshot());
+    }
+
+    /**
+     * Copy of the old ResultManager storage, for comparison
+     */
+    static final class SynchronizedResults {
+        private final Map<String, Map<Question, Integer>> results = new HashMap<>();
+
+        synchronized void submitAnswer(String username, Question question, int answer) {
+            results.putIfAbsent(username, new HashMap<>());
+            results.get(username).put(question, answer);
+        }
+    }
+}
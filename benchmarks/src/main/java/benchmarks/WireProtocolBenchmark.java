@@ -0,0 +1,138 @@
+package benchmarks;
+
+import broadcaster.TimerChannel;
+import server.ExamProtocol;
+import server.Question;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the ObjectOutputStream protocol with ExamProtocol: bytes on the
+ * wire for a whole exam session, and time to encode + decode the questions.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar benchmarks.WireProtocolBenchmark [questions] [rounds]
+ */
+public class WireProtocolBenchmark {
+    private static final TimerChannel TIMER = TimerChannel.forExam(0x5EED);
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int questionCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Question[] questions = sampleQuestions(questionCount);
+
+        System.out.println("Questions per session: " + questionCount);
+        System.out.printf("%-8s %14s %14s %16s%n", "", "server->client", "client->server", "encode+decode");
+
+        // Warm up both paths before measuring
+        for (int i = 0; i < rounds / 4; i++) {
+            legacyRoundTrip(questions);
+            binaryRoundTrip(questions);
+        }
+
+        report("legacy", legacyServerBytes(questions), legacyClientBytes(questionCount),
+                time(rounds, () -> legacyRoundTrip(questions)));
+        report("binary", binaryServerBytes(questions), binaryClientBytes(questionCount),
+                time(rounds, () -> binaryRoundTrip(questions)));
+    }
+
+    // --- BYTES ON THE WIRE (one complete session) ---
+
+    private static long legacyServerBytes(Question[] questions) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject("Enter username:");
+        out.writeObject("Enter password:");
+        out.writeObject("Authentication successful! [timer " + TIMER + "]");
+        out.writeObject("WAITING");
+        out.writeObject("START");
+        for (Question q : questions) {
+            out.writeObject(q);
+        }
+        out.writeObject("RESULT:100");
+        out.flush();
+        return bos.size();
+    }
+
+    private static long legacyClientBytes(int questionCount) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject("student1");
+        out.writeObject("pass123");
+        for (int i = 0; i < questionCount; i++) {
+            out.writeInt(1);
+            out.flush(); // the client flushes every answer, which makes each one its own block
+        }
+        return bos.size();
+    }
+
+    private static long binaryServerBytes(Question[] questions) {
+        long bytes = ExamProtocol.HELLO_LENGTH
+                + ExamProtocol.waiting(TIMER.examId(), TIMER.group().getHostAddress(), TIMER.port()).remaining()
+                + ExamProtocol.start().remaining();
+        for (int i = 0; i < questions.length; i++) {
+            bytes += ExamProtocol.question(i, questions[i]).remaining();
+        }
+        return bytes + ExamProtocol.result(100).remaining();
+    }
+
+    private static long binaryClientBytes(int questionCount) {
+        return ExamProtocol.HELLO_LENGTH + ExamProtocol.auth("student1", "pass123").remaining()
+                + (long) questionCount * ExamProtocol.answer(0, 1).remaining();
+    }
+
+    // --- ENCODE + DECODE TIME (questions only, the bulk of the traffic) ---
+
+    private static void legacyRoundTrip(Question[] questions) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(4096);
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        for (Question q : questions) {
+            out.writeObject(q);
+        }
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        for (int i = 0; i < questions.length; i++) {
+            sink = in.readObject();
+        }
+    }
+
+    private static void binaryRoundTrip(Question[] questions) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(4096);
+        for (int i = 0; i < questions.length; i++) {
+            ExamProtocol.writeFrame(bos, ExamProtocol.question(i, questions[i]));
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        for (int i = 0; i < questions.length; i++) {
+            ByteBuffer frame = ExamProtocol.readFrame(in);
+            frame.get(); // type
+            sink = ExamProtocol.readQuestion(frame);
+        }
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private static long time(int rounds, Body body) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            body.run();
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    private static void report(String name, long serverBytes, long clientBytes, long nanosPerSession) {
+        System.out.printf("%-8s %12d B %12d B %13.1f us%n", name, serverBytes, clientBytes, nanosPerSession / 1000.0);
+    }
+
+    public static Question[] sampleQuestions(int count) {
+        Question[] questions = new Question[count];
+        for (int i = 0; i < count; i++) {
+            questions[i] = new Question("Question " + i + ": which of these statements about Java is correct?",
+                    new String[]{"Option A " + i, "Option B " + i, "Option C " + i, "Option D " + i}, i % 4 + 1);
+        }
+        return questions;
+    }
+}
@@ -0,0 +1,77 @@
+package server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A password check, as UserManager.authenticate makes it (UserDirectory.verify;
+ * authenticate only adds a log event). The PBKDF2 iteration count is nearly
+ * all of the cost; the roster size shows the lookup isn't. Threads model
+ * the verifier pool (-Dtestsync.authThreads), e.g.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.BenchmarkRunner --threads 1,4 AuthenticateBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticateBenchmark {
+    private static final String PASSWORD = "pass123";
+
+    @Param({"1000", "100000"})
+    int students;
+
+    @Param({"1000", "100000"})
+    int iterations;
+
+    private UserDirectory directory;
+
+    @Setup
+    public void setup() throws IOException {
+        // Hash once and give every student the same salt and hash, so a big roster loads in no time
+        StringWriter template = new StringWriter();
+        UserDirectory.writeRoster(template, new String[]{"x"}, new String[]{PASSWORD}, iterations);
+        String credentials = template.toString().substring(1);
+        Path roster = Files.createTempFile("bench", ".roster");
+        try {
+            try (Writer out = Files.newBufferedWriter(roster, StandardCharsets.UTF_8)) {
+                for (int i = 1; i <= students; i++) {
+                    out.write("student" + i + credentials);
+                }
+            }
+            directory = UserDirectory.load(roster, iterations);
+        } finally {
+            Files.delete(roster);
+        }
+    }
+
+    @Benchmark
+    public UserDirectory.Outcome correctPassword() {
+        return directory.verify(randomStudent(), PASSWORD);
+    }
+
+    @Benchmark
+    public UserDirectory.Outcome wrongPassword() {
+        return directory.verify(randomStudent(), "wrong");
+    }
+
+    // Costs the same as a real user, so usernames can't be probed by timing
+    @Benchmark
+    public UserDirectory.Outcome unknownUser() {
+        return directory.verify("nobody" + ThreadLocalRandom.current().nextInt(students), PASSWORD);
+    }
+
+    private String randomStudent() {
+        return "student" + (1 + ThreadLocalRandom.current().nextInt(students));
+    }
+}
@@ -0,0 +1,145 @@
+package server;
+
+import benchmarks.WireProtocolBenchmark;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * START for a full waiting room (ExamSession.start, formerly
+ * notifyAllClients): every student's START and first questions handed to
+ * their connection, until the last one is done. Students are real
+ * ClientHandlers logged in over the binary protocol; their connections
+ * discard what is sent, and run tasks on ioThreads single-threaded loops,
+ * as the nio engine's selector loops do. With more than one benchmark
+ * thread, that many exams start at once on the same loops.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.BenchmarkRunner --threads 1,4 StartFanOutBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgsAppend = {"-Dtestsync.logLevel=WARN", "-Dtestsync.journal=off",
+        "-Dtestsync.roster=jmh-no-roster", "-Dtestsync.hashIterations=1", "-Dtestsync.authQueue=1000000",
+        "-Dtestsync.maxHandshakes=1000000", "-Dtestsync.acceptRate=0"})
+public class StartFanOutBenchmark {
+    private static final AtomicInteger exams = new AtomicInteger();
+
+    @State(Scope.Benchmark)
+    public static class Loops {
+        @Param({"1", "4"})
+        int ioThreads;
+
+        ExecutorService[] loops;
+
+        @Setup(Level.Trial)
+        public void start() {
+            loops = new ExecutorService[ioThreads];
+            for (int i = 0; i < ioThreads; i++) {
+                loops[i] = Executors.newSingleThreadExecutor();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            for (ExecutorService loop : loops) {
+                loop.shutdownNow();
+            }
+        }
+
+        // Every task posted before this call has run
+        void drain() throws InterruptedException, ExecutionException {
+            for (ExecutorService loop : loops) {
+                loop.submit(() -> { }).get();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Room {
+        @Param({"100", "1000", "10000"})
+        int students;
+
+        @Param({"20", "200"})
+        int questions;
+
+        QuestionPayloads payloads;
+        ExamSession session;
+
+        @Setup(Level.Trial)
+        public void questions() {
+            payloads = new QuestionPayloads(Arrays.asList(WireProtocolBenchmark.sampleQuestions(questions)));
+        }
+
+        // Log everyone in to a new exam and wait until they are all in its waiting room
+        @Setup(Level.Iteration)
+        public void fill(Loops loops) throws IOException, InterruptedException {
+            session = ExamSession.open("BENCH" + exams.incrementAndGet(), payloads);
+            for (int i = 0; i < students; i++) {
+                ClientHandler student = new ClientHandler(new DiscardingConnection(loops.loops[i % loops.loops.length]));
+                // The 20 demo students; logging in twice is allowed
+                ByteBuffer auth = ExamProtocol.auth("student" + (i % 20 + 1), "pass123", session.getCode());
+                ByteBuffer login = ByteBuffer.allocate(ExamProtocol.HELLO_LENGTH + auth.remaining());
+                login.put(ExamProtocol.hello(ExamProtocol.VERSION)).put(auth).flip();
+                student.onInput(login);
+            }
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+            while (session.waitingCount() < students) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException(session.waitingCount() + " of " + students + " students logged in");
+                }
+                Thread.sleep(1);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public void start(Room room, Loops loops) throws InterruptedException, ExecutionException {
+        room.session.start();
+        loops.drain();
+    }
+
+    // Counts what would have been written, and runs tasks on its loop
+    private static final class DiscardingConnection implements Connection {
+        private final ExecutorService loop;
+        private long bytesSent;
+
+        DiscardingConnection(ExecutorService loop) {
+            this.loop = loop;
+        }
+
+        @Override
+        public void send(ByteBuffer... messages) {
+            for (ByteBuffer message : messages) {
+                bytesSent += message.remaining();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            loop.execute(task);
+        }
+
+        @Override
+        public String remoteAddress() {
+            return "benchmark";
+        }
+    }
+}
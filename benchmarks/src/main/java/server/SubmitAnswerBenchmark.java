@@ -0,0 +1,78 @@
+package server;
+
+import benchmarks.WireProtocolBenchmark;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * ResultManager.submitAnswer, which every answer of every student goes
+ * through: the ResultStore update and, once the exam has started with the
+ * journal on, the journal append. Throughput per thread count shows how it
+ * scales, e.g.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.BenchmarkRunner --threads 1,4,8 SubmitAnswerBenchmark
+ *
+ * (ResultStoreBenchmark compares the store alone with the design it replaced.)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dtestsync.journal=target/jmh-journal", "-Dtestsync.reportInterval=3600000"})
+@State(Scope.Benchmark)
+public class SubmitAnswerBenchmark {
+    private static final AtomicInteger trials = new AtomicInteger();
+
+    @Param({"1000", "10000"})
+    int students;
+
+    @Param({"20", "200"})
+    int questions;
+
+    @Param({"false", "true"})
+    boolean journal;
+
+    private String[] usernames;
+    private ResultManager results;
+
+    @Setup
+    public void setup() {
+        usernames = new String[students];
+        for (int i = 0; i < students; i++) {
+            usernames[i] = "student" + (i + 1);
+        }
+        QuestionPayloads payloads = new QuestionPayloads(Arrays.asList(WireProtocolBenchmark.sampleQuestions(questions)));
+        // A fresh exam code each trial, so there is never a journal to recover
+        results = new ResultManager("BENCH" + trials.incrementAndGet(), payloads);
+        if (journal) {
+            results.beginExam();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        results.closeJournal();
+        Path dir = Paths.get(ServerConfig.JOURNAL_DIR);
+        if (Files.exists(dir)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void submitAnswer() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        results.submitAnswer(usernames[rnd.nextInt(students)], rnd.nextInt(questions), 1 + rnd.nextInt(4));
+    }
+}
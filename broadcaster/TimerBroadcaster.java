@@ -1,73 +1,155 @@
 package broadcaster;
 
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TimerBroadcaster {
     private static final int UDP_PORT = 9876;
     private static final int CONTROL_PORT = 9877; // Port to receive START command
-    private static volatile boolean examStarted = false;
-    
-    public static void main(String[] args) {
-        System.out.println("⏳ TimerBroadcaster initialized. Waiting for exam to start...");
-        
-        // Thread to listen for START signal
-        new Thread(() -> {
-            try (DatagramSocket controlSocket = new DatagramSocket(CONTROL_PORT)) {
-                byte[] buffer = new byte[1024];
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                
-                while (!examStarted) {
-                    controlSocket.receive(packet);
-                    String message = new String(packet.getData(), 0, packet.getLength());
-                    if (message.equals("START_EXAM")) {
-                        examStarted = true;
+
+    // Exam length for a bare START_EXAM, and how often the deadline is repeated;
+    // clients count down on their own in between
+    private static final int EXAM_SECONDS = Integer.getInteger("testsync.examSeconds", 60);
+    private static final long INTERVAL_MS = Long.getLong("testsync.timerInterval", 1000);
+    // Multicast hops; 1 keeps timer traffic on the local subnet
+    private static final int MULTICAST_TTL = Integer.getInteger("testsync.multicastTtl", 1);
+    // FINISHED is sent a few times, in case one is lost
+    private static final int FINISHED_REPEATS = 3;
+
+    // GET /metrics port (0 = JMX only) and address; the exam server uses the same properties
+    private static final int METRICS_PORT = Integer.getInteger("testsync.metricsPort", 9091);
+    private static final String METRICS_HOST = System.getProperty("testsync.metricsHost", "127.0.0.1");
+
+    // One thread ticks every running exam
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private static final Metrics metrics = new Metrics("testsync_timer");
+    private static final Counter controlMessages = metrics.counter("control_messages", "Control messages received");
+    private static final Counter ignoredMessages = metrics.counter("ignored_messages", "Control messages ignored as invalid");
+    private static final Counter examsStarted = metrics.counter("exams_started", "Exam countdowns started");
+    private static final Counter packetsSent = metrics.counter("packets_sent", "Timer packets sent");
+    private static final Counter sendErrors = metrics.counter("send_errors", "Timer packets that could not be sent");
+    private static final LatencyHistogram tickLateness = metrics.histogram("tick_lateness",
+            "How far after its place on the start + n * interval grid each tick ran");
+    private static final AtomicInteger runningExams = new AtomicInteger();
+
+    static {
+        metrics.gauge("running_exams", "Exams counting down now", runningExams::get);
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("⏳ TimerBroadcaster initialized. Waiting for exams to start...");
+        metrics.publish("timer", METRICS_HOST, METRICS_PORT);
+
+        // Each START signal starts one exam's countdown; exams run side by side
+        try (DatagramSocket controlSocket = new DatagramSocket(CONTROL_PORT)) {
+            byte[] buffer = new byte[1024];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            while (true) {
+                packet.setLength(buffer.length);
+                controlSocket.receive(packet);
+                String message = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+                controlMessages.increment();
+                try {
+                    int[] seconds = {EXAM_SECONDS};
+                    TimerChannel timer = TimerChannel.parseStart(message, seconds);
+                    if (timer == null) {
+                        // Bare START_EXAM from an older server: LAN broadcast, as before
                         System.out.println("🚀 START signal received! Beginning countdown...\n");
-                        break;
+                        DatagramChannel channel = DatagramChannel.open();
+                        channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+                        int examId = new SecureRandom().nextInt() | 1; // never 0, which listeners take as "any exam"
+                        broadcast(channel, new InetSocketAddress(InetAddress.getByName("255.255.255.255"), UDP_PORT),
+                                examId, seconds[0] * 1000L);
+                    } else {
+                        System.out.println("🚀 START signal received for exam " + timer.examId() + "! Counting down on "
+                                + timer.group().getHostAddress() + ":" + timer.port() + "\n");
+                        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+                        channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, TimerChannel.multicastInterface());
+                        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, MULTICAST_TTL);
+                        channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true); // students on this host too
+                        broadcast(channel, new InetSocketAddress(timer.group(), timer.port()),
+                                timer.examId(), seconds[0] * 1000L);
                     }
+                } catch (IllegalArgumentException | IOException e) {
+                    ignoredMessages.increment();
+                    System.err.println("⚠️ Ignoring control message '" + message + "': " + e.getMessage());
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
-        
-        // Wait until exam starts
-        while (!examStarted) {
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
             }
         }
-        
-        // Start countdown
-        try (DatagramSocket socket = new DatagramSocket()) {
-            int countdown = 60; // 60 seconds exam duration
-            while (countdown >= 0) {
-                String msg = "Time left: " + countdown + " sec";
-                byte[] buffer = msg.getBytes();
-                InetAddress address = InetAddress.getByName("255.255.255.255"); // Broadcast
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length, address, UDP_PORT);
-                socket.send(packet);
+    }
 
-                System.out.println("Broadcasting: " + msg);
+    /**
+     * Repeat the exam deadline at a fixed rate until it passes, then send
+     * FINISHED and close the channel. Returns once the ticks are scheduled.
+     * @param examId Identifies this exam's packets
+     * @param durationMillis Exam length from now
+     */
+    static void broadcast(DatagramChannel channel, InetSocketAddress target, int examId, long durationMillis) {
+        // The deadline is fixed once on the monotonic clock; wall-clock changes can't move it
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long startMillis = System.currentTimeMillis();
 
-                Thread.sleep(1000);
-                countdown--;
+        // Only the scheduler thread touches these, one task at a time
+        TimerPacket packet = new TimerPacket();
+        packet.examId = examId;
+        packet.deadlineMillis = startMillis + durationMillis;
+        ByteBuffer buf = ByteBuffer.allocateDirect(TimerPacket.SIZE);
+        long[] tick = {0};
+        examsStarted.increment();
+        runningExams.incrementAndGet();
+
+        // Fixed rate: ticks stay on the start + n * interval grid however long a send takes
+        ScheduledFuture<?> ticks = scheduler.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            tickLateness.record(now - startNanos - TimeUnit.MILLISECONDS.toNanos(tick[0]++ * INTERVAL_MS));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - startNanos);
+            if (elapsedMillis >= durationMillis) {
+                return; // the finish task below takes over
+            }
+            packet.type = TimerPacket.DEADLINE;
+            packet.sentMillis = startMillis + elapsedMillis;
+            send(channel, packet, buf, target);
+            System.out.println("Broadcasting: " + (durationMillis - elapsedMillis + 999) / 1000 + " sec left");
+        }, 0, INTERVAL_MS, TimeUnit.MILLISECONDS);
+        // Runs on the scheduler thread too, so it can't overlap a tick
+        scheduler.schedule(() -> {
+            ticks.cancel(false);
+            packet.type = TimerPacket.FINISHED;
+            packet.sentMillis = packet.deadlineMillis;
+            for (int i = 0; i < FINISHED_REPEATS; i++) {
+                send(channel, packet, buf, target);
             }
-            
-            // Send EXAM_FINISHED signal
-            String finishMsg = "EXAM_FINISHED";
-            byte[] finishBuffer = finishMsg.getBytes();
-            InetAddress address = InetAddress.getByName("255.255.255.255");
-            DatagramPacket finishPacket = new DatagramPacket(finishBuffer, finishBuffer.length, address, UDP_PORT);
-            socket.send(finishPacket);
-            
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            runningExams.decrementAndGet();
             System.out.println("\n⏰ Countdown finished! Exam time ended.");
-            
-        } catch (Exception e) {
+        }, deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private static void send(DatagramChannel channel, TimerPacket packet, ByteBuffer buf, InetSocketAddress target) {
+        try {
+            packet.sequence++;
+            packet.encode(buf);
+            channel.send(buf, target);
+            packetsSent.increment();
+        } catch (IOException e) {
+            sendErrors.increment();
+            // Next tick repeats the deadline anyway
             System.err.println("Error: " + e.getMessage());
-            e.printStackTrace();
         }
     }
 }
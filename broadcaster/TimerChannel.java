@@ -0,0 +1,142 @@
+package broadcaster;
+
+import java.io.IOException;
+import java.net.*;
+import java.util.Collections;
+
+/**
+ * Where one exam's timer packets go: a multicast group and port of its own,
+ * plus the exam id the packets carry. The exam server picks it, tells each
+ * student during login, and passes it to TimerBroadcaster in the START_EXAM
+ * control message:
+ *
+ *   START_EXAM <exam id> <group> <port> <duration seconds>
+ *
+ * Students join only their own exam's group, so several exams can run side
+ * by side and hosts that aren't in an exam don't receive the traffic.
+ */
+public final class TimerChannel {
+    // Organisation-local multicast scope (RFC 2365)
+    private static final int GROUP_PREFIX = (239 << 24) | (255 << 16);
+    private static final int PORT_BASE = 20000;
+    private static final int PORT_RANGE = 10000;
+    private static final String CONTROL = "START_EXAM";
+
+    private final int examId;
+    private final InetAddress group;
+    private final int port;
+
+    public TimerChannel(int examId, InetAddress group, int port) {
+        if (!group.isMulticastAddress()) {
+            throw new IllegalArgumentException(group + " is not a multicast address");
+        }
+        this.examId = examId;
+        this.group = group;
+        this.port = port;
+    }
+
+    /**
+     * Derive the group and port from the exam id, so exams spread over
+     * 239.255.0.0/16 and ports 20000-29999
+     */
+    public static TimerChannel forExam(int examId) {
+        int low = examId & 0xFFFF;
+        byte[] address = {(byte) (GROUP_PREFIX >>> 24), (byte) (GROUP_PREFIX >>> 16), (byte) (low >>> 8), (byte) low};
+        try {
+            return new TimerChannel(examId, InetAddress.getByAddress(address),
+                    PORT_BASE + Integer.remainderUnsigned(examId, PORT_RANGE));
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e); // can't happen for a 4-byte address
+        }
+    }
+
+    public int examId() {
+        return examId;
+    }
+
+    public InetAddress group() {
+        return group;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @return the control message that starts this exam's countdown
+     */
+    public String startMessage(int durationSeconds) {
+        return CONTROL + " " + examId + " " + group.getHostAddress() + " " + port + " " + durationSeconds;
+    }
+
+    /**
+     * Parse a START_EXAM control message
+     * @param durationSeconds Receives the duration, in element 0
+     * @return the channel, or null for a bare START_EXAM (old exam servers)
+     * @throws IllegalArgumentException if it isn't a valid START_EXAM message
+     */
+    public static TimerChannel parseStart(String message, int[] durationSeconds) {
+        String[] fields = message.trim().split(" ");
+        if (!fields[0].equals(CONTROL)) {
+            throw new IllegalArgumentException("not a START_EXAM message");
+        }
+        if (fields.length == 1) {
+            return null;
+        }
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("expected exam id, group, port and duration");
+        }
+        try {
+            durationSeconds[0] = Integer.parseInt(fields[4]);
+            return new TimerChannel(Integer.parseInt(fields[1]), InetAddress.getByName(fields[2]), Integer.parseInt(fields[3]));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("bad group " + fields[2]);
+        }
+    }
+
+    /**
+     * @return "exam id group port", as announced to legacy clients
+     */
+    @Override
+    public String toString() {
+        return examId + " " + group.getHostAddress() + " " + port;
+    }
+
+    /**
+     * @return the channel from toString's text, or null if it isn't one
+     */
+    public static TimerChannel parse(String text) {
+        String[] fields = text.trim().split(" ");
+        if (fields.length != 3) {
+            return null;
+        }
+        try {
+            return new TimerChannel(Integer.parseInt(fields[0]), InetAddress.getByName(fields[1]), Integer.parseInt(fields[2]));
+        } catch (IllegalArgumentException | UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The interface timer multicast uses on this host:
+     * -Dtestsync.multicastInterface if set (e.g. "lo" for tests on one
+     * machine), otherwise the first interface that is up and supports
+     * multicast, otherwise loopback.
+     */
+    public static NetworkInterface multicastInterface() throws IOException {
+        String name = System.getProperty("testsync.multicastInterface");
+        if (name != null) {
+            NetworkInterface chosen = NetworkInterface.getByName(name);
+            if (chosen == null) {
+                throw new SocketException("No network interface " + name);
+            }
+            return chosen;
+        }
+        for (NetworkInterface candidate : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (candidate.isUp() && candidate.supportsMulticast() && !candidate.isLoopback() && !candidate.isVirtual()) {
+                return candidate;
+            }
+        }
+        return NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+    }
+}
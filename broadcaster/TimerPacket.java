@@ -0,0 +1,73 @@
+package broadcaster;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The timer datagrams TimerBroadcaster sends and UDPListener reads. Every
+ * packet has the same fixed layout (big-endian, 29 bytes):
+ *
+ *   u8  type       DEADLINE or FINISHED
+ *   u32 exam id    so listeners can ignore other exams' timers
+ *   u64 sequence   grows by one per packet, so late packets can be dropped
+ *   i64 deadline   when the exam ends, broadcaster's epoch milliseconds
+ *   i64 sent       when the packet was sent, same clock
+ *
+ * Packets describe when the exam ends rather than how long is left, so
+ * a client can count down on its own clock between packets, and a lost
+ * or late packet doesn't put the display wrong. Only the difference
+ * deadline - sent is used by clients, so their wall clocks needn't agree
+ * with the broadcaster's.
+ *
+ * One instance is reused for every packet: encoding and decoding
+ * allocate nothing.
+ */
+public final class TimerPacket {
+    public static final byte DEADLINE = 1;
+    public static final byte FINISHED = 2;
+    public static final int SIZE = 1 + 4 + 8 + 8 + 8;
+
+    public byte type;
+    public int examId;
+    public long sequence;
+    public long deadlineMillis;
+    public long sentMillis;
+
+    /**
+     * Write this packet into a buffer, ready to send
+     */
+    public void encode(ByteBuffer buf) {
+        buf.clear();
+        buf.put(type).putInt(examId).putLong(sequence).putLong(deadlineMillis).putLong(sentMillis).flip();
+    }
+
+    /**
+     * Read a received packet (the buffer flipped, positioned at its start)
+     * @return false if it isn't a timer packet
+     */
+    public boolean decode(ByteBuffer buf) {
+        if (buf.remaining() != SIZE) {
+            return false;
+        }
+        byte t = buf.get();
+        if (t != DEADLINE && t != FINISHED) {
+            return false;
+        }
+        type = t;
+        examId = buf.getInt();
+        sequence = buf.getLong();
+        deadlineMillis = buf.getLong();
+        sentMillis = buf.getLong();
+        return true;
+    }
+
+    public boolean isFinished() {
+        return type == FINISHED;
+    }
+
+    /**
+     * @return milliseconds left when the packet was sent
+     */
+    public long remainingMillis() {
+        return Math.max(0, deadlineMillis - sentMillis);
+    }
+}
@@ -0,0 +1,157 @@
+package client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs a logged-in ServerLink's blocking I/O on threads of its own, so the
+ * Swing EDT never waits for the network. A reader thread receives messages
+ * into a queue and has the EDT drain it; answers go into a queue a writer
+ * thread sends from. The UI only handles messages that have already
+ * arrived, and submitting an answer returns at once, however slow the
+ * network or the server.
+ */
+final class AsyncServerLink implements Closeable {
+    /**
+     * Called on the EDT, in the order things happened on the connection
+     */
+    interface Listener {
+        /**
+         * @param message A String or a Question, as from ServerLink.readMessage
+         */
+        void onMessage(Object message);
+
+        /**
+         * The connection failed or the server closed it; not called after close()
+         */
+        void onDisconnect(Exception cause);
+    }
+
+    // Queued after the last message when the connection ends
+    private record Disconnected(Exception cause) { }
+
+    private static final int STOP = Integer.MIN_VALUE;
+
+    private final ServerLink link;
+    private final Listener listener;
+    private final ConcurrentLinkedQueue<Object> received = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final LinkedBlockingQueue<Integer> answers = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    AsyncServerLink(ServerLink link, Listener listener) {
+        this.link = link;
+        this.listener = listener;
+        Thread reader = new Thread(this::readLoop, "server-reader");
+        reader.setDaemon(true);
+        reader.start();
+        writer = new Thread(this::writeLoop, "server-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue an answer to the most recently received question; never blocks
+     * @param option The chosen option, 1-based
+     */
+    void sendAnswer(int option) {
+        answers.add(option);
+    }
+
+    /**
+     * Stop both threads and close the connection. No more messages are delivered.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        answers.add(STOP);
+        link.close();
+    }
+
+    /**
+     * Close after the connection has failed, once the writer is done
+     * @return answers queued and never handed to the link, oldest first, to
+     *         send on a resumed connection (the link itself sends again any
+     *         it wrote that the server didn't get)
+     */
+    List<Integer> abandon() throws InterruptedException {
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+        writer.join();
+        List<Integer> unsent = new ArrayList<>();
+        answers.drainTo(unsent);
+        unsent.removeIf(option -> option == STOP);
+        return unsent;
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                deliver(link.readMessage());
+            }
+        } catch (Exception e) {
+            ended(e);
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                int option = answers.take();
+                if (option == STOP) {
+                    return;
+                }
+                link.sendAnswer(option);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            ended(e);
+            try {
+                link.close(); // wakes the reader too
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // The first of the reader and writer to fail reports it
+    private void ended(Exception cause) {
+        if (ended.compareAndSet(false, true)) {
+            deliver(new Disconnected(cause));
+        }
+    }
+
+    // One EDT task drains whatever has arrived, however many messages that is
+    private void deliver(Object message) {
+        received.add(message);
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        Object message;
+        while ((message = received.poll()) != null) {
+            if (closed) {
+                received.clear();
+                return;
+            }
+            if (message instanceof Disconnected disconnected) {
+                listener.onDisconnect(disconnected.cause());
+            } else {
+                listener.onMessage(message);
+            }
+        }
+    }
+}
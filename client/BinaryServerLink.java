@@ -0,0 +1,227 @@
+package client;
+
+import broadcaster.TimerChannel;
+import server.ExamProtocol;
+import server.Question;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The length-prefixed binary protocol (see server.ExamProtocol)
+ */
+final class BinaryServerLink implements ServerLink {
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private Object pending;
+    private byte version;
+    // Indexes of questions received and not yet answered, oldest first; filled by
+    // whichever thread reads, taken by whichever thread answers
+    private final ConcurrentLinkedQueue<Integer> unanswered = new ConcurrentLinkedQueue<>();
+    // Answers sent and not yet acknowledged, by index, to send again on a resumed connection
+    private final ConcurrentSkipListMap<Integer, Integer> unconfirmed = new ConcurrentSkipListMap<>();
+    private volatile int questionsReceived;
+    // From SESSION: what picks this session up again on a new connection; null if the server gave none
+    private volatile byte[] sessionToken;
+    private TimerChannel timerChannel;
+    // The sealed BUNDLE payload until START brings its key, then its questions
+    private ByteBuffer sealedBundle;
+    private Question[] bundle;
+
+    private BinaryServerLink(Socket socket) throws IOException {
+        this.socket = socket;
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = socket.getOutputStream();
+    }
+
+    /**
+     * Send our hello and check the server's reply
+     * @return the link, or null if the server answered with something else
+     */
+    static BinaryServerLink handshake(Socket socket) throws IOException {
+        return handshake(socket, null);
+    }
+
+    /**
+     * @param request Sent in the same write as our hello, without waiting for the reply; may be null
+     */
+    private static BinaryServerLink handshake(Socket socket, ByteBuffer request) throws IOException {
+        BinaryServerLink link = new BinaryServerLink(socket);
+        ByteBuffer hello = ExamProtocol.hello(ExamProtocol.VERSION);
+        if (request != null) {
+            hello = ByteBuffer.allocate(hello.remaining() + request.remaining()).put(hello).put(request).flip();
+        }
+        ExamProtocol.writeFrame(link.out, hello);
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        try {
+            byte[] magic = new byte[ExamProtocol.MAGIC.length];
+            link.in.readFully(magic);
+            if (!Arrays.equals(magic, ExamProtocol.MAGIC)) {
+                return null;
+            }
+            link.version = link.in.readByte(); // version the server will speak
+        } catch (SocketTimeoutException | EOFException e) {
+            return null;
+        }
+        socket.setSoTimeout(0);
+        return link;
+    }
+
+    @Override
+    public void login(String username, String password, String examCode) throws Exception {
+        ExamProtocol.writeFrame(out, ExamProtocol.auth(username, password,
+                examCode == null || examCode.isEmpty() ? null : examCode));
+        Object response = readMessage();
+        if (!"WAITING".equals(response)) {
+            socket.close();
+            if (response instanceof String message && message.startsWith("BUSY:")) {
+                throw new ServerBusyException(Long.parseLong(message.substring(5)));
+            }
+            throw new Exception(String.valueOf(response));
+        }
+        pending = response;
+    }
+
+    @Override
+    public Object readMessage() throws IOException {
+        if (pending != null) {
+            Object message = pending;
+            pending = null;
+            return message;
+        }
+        ByteBuffer frame = ExamProtocol.readFrame(in);
+        byte type = frame.get();
+        while (type == ExamProtocol.BUNDLE || type == ExamProtocol.SESSION) {
+            // Kept for START, or for resume; the UI never sees them
+            if (type == ExamProtocol.BUNDLE) {
+                sealedBundle = frame;
+            } else {
+                byte[] token = new byte[ExamProtocol.SESSION_TOKEN_LENGTH];
+                frame.get(token);
+                sessionToken = token;
+            }
+            frame = ExamProtocol.readFrame(in);
+            type = frame.get();
+        }
+        switch (type) {
+            case ExamProtocol.WAITING:
+                if (frame.hasRemaining()) {
+                    int examId = frame.getInt();
+                    String group = ExamProtocol.getString(frame);
+                    timerChannel = TimerChannel.parse(examId + " " + group + " " + (frame.getShort() & 0xFFFF));
+                }
+                return "WAITING";
+            case ExamProtocol.START:
+                if (frame.remaining() == ExamProtocol.BUNDLE_KEY_LENGTH && sealedBundle != null) {
+                    byte[] key = new byte[ExamProtocol.BUNDLE_KEY_LENGTH];
+                    frame.get(key);
+                    bundle = ExamProtocol.openBundle(sealedBundle, key);
+                }
+                sealedBundle = null;
+                return "START";
+            case ExamProtocol.QUESTION:
+                unanswered.add(ExamProtocol.questionIndex(frame));
+                questionsReceived++;
+                return ExamProtocol.readQuestion(frame);
+            case ExamProtocol.BUNDLED: {
+                if (bundle == null) {
+                    throw new StreamCorruptedException("bundled question without a bundle");
+                }
+                int index = ExamProtocol.questionIndex(frame);
+                Question question = ExamProtocol.readBundled(frame, bundle);
+                unanswered.add(index);
+                questionsReceived++;
+                return question;
+            }
+            case ExamProtocol.ACK: {
+                int index = frame.getShort() & 0xFFFF;
+                unconfirmed.remove(index);
+                return "ACK:" + index;
+            }
+            case ExamProtocol.RESUMED: {
+                int next = frame.getShort() & 0xFFFF;
+                unconfirmed.headMap(next).clear();
+                return "RESUMED:" + next;
+            }
+            case ExamProtocol.BUSY:
+                return "BUSY:" + (frame.getInt() & 0xFFFFFFFFL);
+            case ExamProtocol.DEADLINE:
+                return "DEADLINE:" + (frame.getInt() & 0xFFFFFFFFL);
+            case ExamProtocol.RESULT:
+                return "RESULT:" + (frame.get() & 0xFF);
+            case ExamProtocol.FINISHED:
+                return ExamProtocol.getString(frame);
+            default:
+                throw new StreamCorruptedException("unexpected message type " + type);
+        }
+    }
+
+    @Override
+    public ServerLink resume(String host, int port) throws Exception {
+        byte[] token = sessionToken;
+        if (token == null) {
+            throw new Exception("The server gave this session no resume token");
+        }
+        Socket socket = new Socket(host, port);
+        BinaryServerLink link;
+        try {
+            link = handshake(socket, ExamProtocol.resume(token, questionsReceived));
+            if (link == null || link.version < ExamProtocol.RESUME_VERSION) {
+                throw new IOException("Server did not take the resume");
+            }
+            link.sessionToken = token;
+            link.timerChannel = timerChannel;
+            link.questionsReceived = questionsReceived;
+            Object response = link.readMessage();
+            if (response instanceof String message && message.startsWith("RESUMED:")) {
+                // Answers the server hasn't got go again; questions not answered yet are still to be
+                int next = Integer.parseInt(message.substring("RESUMED:".length()));
+                for (Map.Entry<Integer, Integer> answer : unconfirmed.tailMap(next).entrySet()) {
+                    link.unconfirmed.put(answer.getKey(), answer.getValue());
+                    ExamProtocol.writeFrame(link.out, ExamProtocol.answer(answer.getKey(), answer.getValue()));
+                }
+                link.unanswered.addAll(unanswered);
+            } else if (!"WAITING".equals(response)) {
+                socket.close();
+                throw new Exception(String.valueOf(response));
+            }
+            link.pending = response;
+            return link;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public TimerChannel timerChannel() {
+        return timerChannel;
+    }
+
+    @Override
+    public void sendAnswer(int option) throws IOException {
+        Integer index = unanswered.poll();
+        if (index == null) {
+            throw new IllegalStateException("No question to answer");
+        }
+        if (version >= ExamProtocol.PIPELINED_VERSION) {
+            // Before the write, so an answer lost with the connection is sent again on resume
+            unconfirmed.put(index, option);
+        }
+        ExamProtocol.writeFrame(out, ExamProtocol.answer(index, option));
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,78 @@
+package client;
+
+import broadcaster.TimerChannel;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The original ObjectOutputStream/ObjectInputStream protocol
+ */
+final class LegacyServerLink implements ServerLink {
+    // How the server words a login turned away as busy
+    private static final Pattern BUSY = Pattern.compile("server busy, please try again in (\\d+) ms");
+
+    private final Socket socket;
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+    private TimerChannel timerChannel;
+
+    LegacyServerLink(Socket socket) throws IOException {
+        this.socket = socket;
+        out = new ObjectOutputStream(socket.getOutputStream());
+        in = new ObjectInputStream(socket.getInputStream());
+    }
+
+    @Override
+    public void login(String username, String password, String examCode) throws Exception {
+        in.readObject(); // prompt
+        // The object stream protocol has no exam code field; the server splits "CODE:username"
+        out.writeObject(examCode == null || examCode.isEmpty() ? username : examCode + ":" + username);
+        in.readObject(); // prompt
+        out.writeObject(password);
+
+        String response = (String) in.readObject(); // success or failure message
+        if (response.contains("failed")) {
+            socket.close();
+            Matcher busy = BUSY.matcher(response);
+            if (busy.find()) {
+                throw new ServerBusyException(Long.parseLong(busy.group(1)));
+            }
+            throw new Exception(response);
+        }
+        // e.g. "Authentication successful! [timer 1234 239.255.4.210 21234]"
+        int timer = response.indexOf("[timer ");
+        if (timer >= 0 && response.endsWith("]")) {
+            timerChannel = TimerChannel.parse(response.substring(timer + 7, response.length() - 1));
+        }
+    }
+
+    @Override
+    public ServerLink resume(String host, int port) throws Exception {
+        throw new Exception("The object stream protocol can't resume a session");
+    }
+
+    @Override
+    public TimerChannel timerChannel() {
+        return timerChannel;
+    }
+
+    @Override
+    public Object readMessage() throws IOException, ClassNotFoundException {
+        return in.readObject();
+    }
+
+    @Override
+    public void sendAnswer(int option) throws IOException {
+        out.writeInt(option);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        in.close();
+    }
+}
@@ -0,0 +1,372 @@
+package client;
+
+import server.Question;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless load generator: simulated students against a real server, over
+ * the same ServerLink as StudentClient (binary protocol, or object streams
+ * with -Dtestsync.protocol=legacy). Each student logs in, waits for START
+ * and answers every question after a think time, on virtual threads, so
+ * thousands fit in one JVM.
+ *
+ *   java client.LoadGenerator [--students 1000] [--host localhost] [--port 12345]
+ *        [--exam CODE] [--password pass123] [--ramp 5000] [--think 2000]
+ *        [--errors 0.01] [--disconnect 0.001] [--retries 5] [--timeout 600] [--seed 1]
+ *
+ * Students are student1 .. studentN, as made by RosterTool --generate.
+ * Logins are spread evenly over --ramp ms; start the exam on the server
+ * (START, or OPEN with a delay) once they are all waiting. Think time is
+ * --think ms give or take half. --errors is the share of students who log in
+ * with a wrong password; --disconnect the chance, at each question, that a
+ * student drops the connection instead of answering. A login the server
+ * turns away as busy is retried up to --retries times, after the jittered
+ * delay StudentClient would wait; "busy" counts students who gave up.
+ *
+ * Reported latencies, in milliseconds:
+ *   login   first connect to WAITING (TCP, handshake, password check, busy retries)
+ *   start   START's arrival at each student after the first one had it
+ *   answer  answer sent to its ACK; to the next question or result on
+ *           servers that don't acknowledge answers
+ * Exits with status 1 if anything failed that wasn't asked for.
+ */
+public class LoadGenerator {
+    private static final String[] OPTIONS = {"students", "host", "port", "exam", "password",
+            "ramp", "think", "errors", "disconnect", "retries", "timeout", "seed"};
+
+    // A message and when the reader thread received it
+    private record Arrival(Object message, long at) { }
+
+    private final int students;
+    private final String host;
+    private final int port;
+    private final String exam;
+    private final String password;
+    private final long rampMs;
+    private final long thinkMs;
+    private final double errorRate;
+    private final double disconnectRate;
+    private final int retries;
+    private final long seed;
+
+    private final ServerLink[] links;
+    // When START reached each student; 0 = not (yet)
+    private final long[] startedAt;
+
+    private final Samples loginTimes = new Samples();
+    private final Samples answerTimes = new Samples();
+    private final AtomicInteger loggedIn = new AtomicInteger();
+    private final AtomicInteger refused = new AtomicInteger();
+    private final AtomicInteger busy = new AtomicInteger();
+    private final AtomicInteger busyRetries = new AtomicInteger();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicInteger answers = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    // First few unexpected failures, to print with the report
+    private final List<String> failureMessages = Collections.synchronizedList(new ArrayList<>());
+
+    private LoadGenerator(Map<String, String> options) {
+        students = Integer.parseInt(options.getOrDefault("students", "1000"));
+        host = options.getOrDefault("host", "localhost");
+        port = Integer.parseInt(options.getOrDefault("port", "12345"));
+        exam = options.get("exam");
+        password = options.getOrDefault("password", "pass123");
+        rampMs = Long.parseLong(options.getOrDefault("ramp", "5000"));
+        thinkMs = Long.parseLong(options.getOrDefault("think", "2000"));
+        errorRate = Double.parseDouble(options.getOrDefault("errors", "0"));
+        disconnectRate = Double.parseDouble(options.getOrDefault("disconnect", "0"));
+        retries = Integer.parseInt(options.getOrDefault("retries", "5"));
+        seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        links = new ServerLink[students];
+        startedAt = new long[students];
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+            if (!Arrays.asList(OPTIONS).contains(name) || i + 1 >= args.length) {
+                System.err.println("Usage: LoadGenerator [--students 1000] [--host localhost] [--port 12345] [--exam CODE]");
+                System.err.println("       [--password pass123] [--ramp ms] [--think ms] [--errors 0.01] [--disconnect 0.001]");
+                System.err.println("       [--retries 5] [--timeout seconds] [--seed 1]");
+                System.exit(2);
+                return;
+            }
+            options.put(name, args[i + 1]);
+        }
+        LoadGenerator generator = new LoadGenerator(options);
+        boolean clean = generator.run(Long.parseLong(options.getOrDefault("timeout", "600")));
+        System.exit(clean ? 0 : 1);
+    }
+
+    /**
+     * Run every student to the end of the exam, or until the timeout
+     * @return true if nothing failed that wasn't asked for
+     */
+    private boolean run(long timeoutSeconds) throws InterruptedException {
+        System.out.println("🚦 " + students + " student(s) against " + host + ":" + port
+                + (exam == null ? "" : " exam " + exam) + ", logins over " + rampMs + " ms, think " + thinkMs + " ms");
+        long begin = System.nanoTime();
+        Thread[] threads = new Thread[students];
+        for (int i = 0; i < students; i++) {
+            int student = i;
+            threads[i] = Thread.ofVirtual().name("student" + (i + 1)).start(() -> simulate(student));
+        }
+
+        Thread progress = new Thread(this::printProgress, "progress");
+        progress.setDaemon(true);
+        progress.start();
+
+        long deadline = begin + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        boolean timedOut = false;
+        for (Thread thread : threads) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || !thread.join(Duration.ofNanos(left))) {
+                timedOut = true;
+                break;
+            }
+        }
+        if (timedOut) {
+            System.out.println("⌛ Timed out after " + timeoutSeconds + " s; closing the remaining connections");
+            for (ServerLink link : links) {
+                closeQuietly(link);
+            }
+        }
+        progress.interrupt();
+        report((System.nanoTime() - begin) / 1e9);
+        return !timedOut && failures.get() == 0;
+    }
+
+    private void simulate(int student) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + student);
+        String username = "student" + (student + 1);
+        boolean wrongPassword = random.nextDouble() < errorRate;
+        try {
+            Thread.sleep(rampMs * student / students);
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        long loginStart = System.nanoTime();
+        ServerLink link = logIn(student, username, wrongPassword, random);
+        if (link == null) {
+            return;
+        }
+        loginTimes.add(System.nanoTime() - loginStart);
+        loggedIn.incrementAndGet();
+        if (wrongPassword) {
+            fail(username, "logged in with a wrong password");
+        }
+
+        // Read on a thread of its own, so arrival times aren't held up by think time
+        LinkedBlockingQueue<Arrival> inbox = new LinkedBlockingQueue<>();
+        Thread.ofVirtual().name(username + "-reader").start(() -> {
+            try {
+                while (true) {
+                    inbox.add(new Arrival(link.readMessage(), System.nanoTime()));
+                }
+            } catch (Exception e) {
+                inbox.add(new Arrival(e, System.nanoTime()));
+            }
+        });
+
+        try {
+            answerQuestions(student, username, link, inbox, random);
+        } catch (InterruptedException e) {
+            // timed out
+        } catch (Exception e) {
+            fail(username, e.toString());
+        } finally {
+            closeQuietly(link);
+        }
+    }
+
+    /**
+     * Log in, retrying while the server is busy
+     * @return the logged in link, or null if the student gave up or was refused (counted as such)
+     */
+    private ServerLink logIn(int student, String username, boolean wrongPassword, SplittableRandom random) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ServerLink link = ServerLink.connect(host, port);
+                links[student] = link;
+                link.login(username, wrongPassword ? password + "-wrong" : password, exam);
+                return link;
+            } catch (ServerBusyException e) {
+                if (attempt > retries) {
+                    busy.incrementAndGet();
+                    return null;
+                }
+                busyRetries.incrementAndGet();
+                try {
+                    Thread.sleep(e.retryDelayMillis(attempt, random));
+                } catch (InterruptedException interrupted) {
+                    return null;
+                }
+            } catch (Exception e) {
+                if (wrongPassword && String.valueOf(e.getMessage()).startsWith("Authentication failed")) {
+                    refused.incrementAndGet();
+                } else {
+                    fail(username, "login: " + e);
+                }
+                return null;
+            }
+        }
+    }
+
+    private void answerQuestions(int student, String username, ServerLink link,
+                                 LinkedBlockingQueue<Arrival> inbox, SplittableRandom random) throws Exception {
+        // Send times of answers not yet confirmed, oldest first
+        ArrayDeque<Long> unconfirmed = new ArrayDeque<>();
+        boolean serverAcks = false;
+        while (true) {
+            Arrival arrival = inbox.take();
+            Object message = arrival.message();
+            if (message instanceof Exception e) {
+                fail(username, "connection lost: " + e);
+                return;
+            }
+            if (message instanceof Question question) {
+                // Without ACKs, the next question is the reply to an answer; one sent ahead of it isn't
+                if (!serverAcks && !unconfirmed.isEmpty() && arrival.at() > unconfirmed.peek()) {
+                    answerTimes.add(arrival.at() - unconfirmed.poll());
+                }
+                if (random.nextDouble() < disconnectRate) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                if (thinkMs > 0) {
+                    Thread.sleep(thinkMs / 2 + random.nextLong(thinkMs + 1));
+                }
+                link.sendAnswer(1 + random.nextInt(question.getOptions().length));
+                unconfirmed.add(System.nanoTime());
+                answers.incrementAndGet();
+                continue;
+            }
+            String text = String.valueOf(message);
+            if (text.equals("START")) {
+                startedAt[student] = arrival.at();
+                started.incrementAndGet();
+            } else if (text.startsWith("ACK:")) {
+                serverAcks = true;
+                if (!unconfirmed.isEmpty()) {
+                    answerTimes.add(arrival.at() - unconfirmed.poll());
+                }
+            } else if (text.startsWith("RESULT:")) {
+                if (!serverAcks && !unconfirmed.isEmpty()) {
+                    answerTimes.add(arrival.at() - unconfirmed.poll());
+                }
+                finished.incrementAndGet();
+                return;
+            } else if (!text.equals("WAITING") && !text.startsWith("DEADLINE:")) {
+                // A closing message instead of a result
+                fail(username, "server said: " + text);
+                return;
+            }
+        }
+    }
+
+    private void fail(String username, String message) {
+        if (failures.incrementAndGet() <= 10) {
+            failureMessages.add(username + ": " + message);
+        }
+    }
+
+    private void printProgress() {
+        boolean announced = false;
+        try {
+            while (true) {
+                Thread.sleep(5000);
+                int waiting = loggedIn.get() - started.get();
+                System.out.printf("⏳ %d logged in (%d waiting), %d started, %d finished, %d answers, %d failure(s)%n",
+                        loggedIn.get(), waiting, started.get(), finished.get(), answers.get(), failures.get());
+                if (!announced && started.get() == 0 && loggedIn.get() + refused.get() + busy.get() + failures.get() >= students) {
+                    System.out.println("✅ Every student has logged in: start the exam on the server");
+                    announced = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            // done
+        }
+    }
+
+    private void report(double seconds) {
+        System.out.printf("%n📊 %d student(s) in %.1f s: %d logged in, %d refused as asked, %d busy (%d retries), %d started,"
+                        + " %d finished, %d dropped as asked, %d failure(s); %d answers (%.0f/s)%n",
+                students, seconds, loggedIn.get(), refused.get(), busy.get(), busyRetries.get(), started.get(),
+                finished.get(), dropped.get(), failures.get(), answers.get(), answers.get() / seconds);
+
+        long firstStart = Long.MAX_VALUE;
+        for (long at : startedAt) {
+            if (at != 0) {
+                firstStart = Math.min(firstStart, at);
+            }
+        }
+        Samples startTimes = new Samples();
+        for (long at : startedAt) {
+            if (at != 0) {
+                startTimes.add(at - firstStart);
+            }
+        }
+
+        System.out.printf("%-8s %8s %9s %9s %9s %9s %9s%n", "(ms)", "count", "p50", "p90", "p99", "p99.9", "max");
+        printRow("login", loginTimes);
+        printRow("start", startTimes);
+        printRow("answer", answerTimes);
+        for (String message : failureMessages) {
+            System.out.println("❌ " + message);
+        }
+    }
+
+    private static void printRow(String name, Samples samples) {
+        long[] sorted = samples.sorted();
+        if (sorted.length == 0) {
+            System.out.printf("%-8s %8d%n", name, 0);
+            return;
+        }
+        System.out.printf("%-8s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, sorted.length,
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                percentile(sorted, 99.9), sorted[sorted.length - 1] / 1e6);
+    }
+
+    // Nearest rank, in milliseconds
+    private static double percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static void closeQuietly(ServerLink link) {
+        if (link != null) {
+            try {
+                link.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    // Latencies in nanoseconds, kept whole so percentiles are exact
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int count = 0;
+
+        synchronized void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
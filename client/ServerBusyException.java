@@ -0,0 +1,34 @@
+package client;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * The server turned a login away because it is overloaded, and said how long
+ * to wait before trying again. The password was not checked.
+ */
+final class ServerBusyException extends Exception {
+    // However long the server asks for, retries are never spaced further apart than this
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private final long retryAfterMillis;
+
+    ServerBusyException(long retryAfterMillis) {
+        super("Server busy, please try again in " + retryAfterMillis + " ms.");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    long retryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * How long to wait before the next attempt: the server's delay, doubled
+     * for each earlier busy answer, of which a random half is waited, so
+     * students turned away together don't all come back together
+     * @param attempt 1 for the first retry
+     */
+    long retryDelayMillis(int attempt, RandomGenerator random) {
+        long backoff = Math.min(MAX_RETRY_DELAY_MS, Math.max(1, retryAfterMillis) << Math.min(attempt - 1, 20));
+        return backoff / 2 + random.nextLong(backoff / 2 + 1);
+    }
+}
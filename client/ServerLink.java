@@ -0,0 +1,77 @@
+package client;
+
+import broadcaster.TimerChannel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * The client's view of a server connection, independent of the wire format.
+ * Messages come back in the shape the UI has always used: Strings for status
+ * text ("WAITING", "START", "RESULT:<score>", closing messages) and Question
+ * objects for questions. A server that sends questions ahead may deliver
+ * several before they are answered, and confirms each answer with
+ * "ACK:<index>". A student with their own time (extra time) is told how
+ * much they have left with "DEADLINE:<milliseconds>".
+ */
+interface ServerLink extends Closeable {
+    /**
+     * Send credentials and wait for the answer
+     * @param examCode The exam session to join, or null/empty for the server's default
+     * @throws ServerBusyException if the server is overloaded and the login should be retried later
+     * @throws Exception with the server's message if authentication failed
+     */
+    void login(String username, String password, String examCode) throws Exception;
+
+    /**
+     * Pick the session up on a new connection after this one dropped,
+     * without logging in again. Questions already received aren't sent
+     * again, and answers the server didn't get are.
+     * @return the new link; its first message is "RESUMED:<next answer index>",
+     *         or "WAITING" if the exam hadn't started for this student
+     * @throws IOException if the server couldn't be reached; worth trying again
+     * @throws Exception with the server's message if the session can't be resumed
+     */
+    ServerLink resume(String host, int port) throws Exception;
+
+    /**
+     * @return where the exam's timer is multicast, as announced at login,
+     *         or null if the server didn't say (older servers broadcast it)
+     */
+    TimerChannel timerChannel();
+
+    /**
+     * Block until the next message arrives
+     * @return a String or a Question
+     */
+    Object readMessage() throws IOException, ClassNotFoundException;
+
+    /**
+     * Answer the oldest received question not answered yet
+     * @param option The chosen option, 1-based
+     */
+    void sendAnswer(int option) throws IOException;
+
+    /**
+     * Connect, preferring the binary protocol and falling back to object
+     * streams if the server doesn't understand it. -Dtestsync.protocol=legacy
+     * skips the binary attempt.
+     */
+    static ServerLink connect(String host, int port) throws IOException {
+        if (!"legacy".equalsIgnoreCase(System.getProperty("testsync.protocol"))) {
+            Socket socket = new Socket(host, port);
+            try {
+                BinaryServerLink link = BinaryServerLink.handshake(socket);
+                if (link != null) {
+                    return link;
+                }
+            } catch (IOException e) {
+                // Older server: fall through to the object stream protocol
+            }
+            socket.close();
+            System.out.println("Server does not support the binary protocol, using object streams");
+        }
+        return new LegacyServerLink(new Socket(host, port));
+    }
+}
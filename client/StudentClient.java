@@ -1,31 +1,51 @@
 package client;
 
+import broadcaster.TimerChannel;
 import server.Question;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.*;
-import java.net.*;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
 
 public class StudentClient {
 
     private static final String SERVER_IP = "localhost";
     private static final int SERVER_PORT = 12345;
     private static final int UDP_PORT = 9876;
+    // Tries at logging in while the server answers busy, including the first
+    private static final int LOGIN_ATTEMPTS = Integer.getInteger("testsync.loginAttempts", 6);
+    // Tries at resuming the session after the connection drops, and the longest wait between them
+    private static final int RESUME_ATTEMPTS = Integer.getInteger("testsync.resumeAttempts", 10);
+    private static final long MAX_RESUME_DELAY_MS = 8000;
 
     private JFrame frame;
     private JTextArea questionArea;
+    // One button per option of the question shown; questions may have different numbers of options
+    private JPanel optionsPanel;
     private JRadioButton[] optionButtons;
     private ButtonGroup group;
     private JButton submitButton;
     private JLabel timerLabel, questionCountLabel;
 
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    // All network I/O after login happens on its threads; this class only runs on the EDT.
+    // Null while reconnecting, when answers wait in unsentAnswers
+    private AsyncServerLink network;
+    private ServerLink link;
+    private final List<Integer> unsentAnswers = new ArrayList<>();
 
     private Question currentQuestion;
+    // Questions the server sent ahead, shown as soon as the current one is answered
+    private final ArrayDeque<Question> upcoming = new ArrayDeque<>();
+    private boolean awaitingQuestion = true;
+    private int savedAnswers = 0;
     private int totalQuestions = 0;
     private boolean examStarted = false;
+    private boolean examFinished = false;
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new StudentClient().showLogin());
@@ -35,7 +55,7 @@ public class StudentClient {
     
     private void showLogin() {
         JFrame loginFrame = new JFrame("TestSync - Login");
-        loginFrame.setSize(350, 220);
+        loginFrame.setSize(350, 260);
         loginFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         loginFrame.setLayout(new GridBagLayout());
 
@@ -45,6 +65,7 @@ public class StudentClient {
 
         JTextField usernameField = new JTextField(15);
         JPasswordField passwordField = new JPasswordField(15);
+        JTextField examCodeField = new JTextField(15);
         JButton loginBtn = new JButton("Login");
 
         JLabel title = new JLabel("🔒 TestSync Login", SwingConstants.CENTER);
@@ -67,6 +88,12 @@ public class StudentClient {
         gbc.gridx = 1;
         loginFrame.add(passwordField, gbc);
 
+        gbc.gridx = 0;
+        gbc.gridy++;
+        loginFrame.add(new JLabel("Exam code:"), gbc);
+        gbc.gridx = 1;
+        loginFrame.add(examCodeField, gbc);
+
         gbc.gridy++;
         gbc.gridx = 0;
         gbc.gridwidth = 2;
@@ -75,68 +102,199 @@ public class StudentClient {
         loginBtn.addActionListener(e -> {
             String username = usernameField.getText();
             String password = new String(passwordField.getPassword());
-            try {
-                connectToServer(username, password);
-                loginFrame.dispose();
-                
-                // Initialize timer label first
-                timerLabel = new JLabel("Timer: Waiting for broadcast...", SwingConstants.CENTER);
-                timerLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
-                timerLabel.setForeground(new Color(75, 110, 175));
-                
-                // Show waiting screen
-                showWaitingScreen();
-                
-                // Set callback for when exam time finishes
-                UDPListener.setOnExamFinished(() -> autoFinishExam());
-                
-                // Start UDP listener after timer label is initialized
-                new Thread(() -> UDPListener.listen(UDP_PORT, timerLabel)).start();
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(loginFrame, "❌ Login failed: " + ex.getMessage());
-            }
+            String examCode = examCodeField.getText().trim(); // blank = the server's default exam
+            loginBtn.setEnabled(false);
+            // Connecting and checking the password can take a while; keep the window responsive
+            new Thread(() -> {
+                try {
+                    ServerLink link = connectToServer(username, password, examCode,
+                            status -> SwingUtilities.invokeLater(() -> loginBtn.setText(status)));
+                    SwingUtilities.invokeLater(() -> {
+                        loginFrame.dispose();
+                        startExamSession(link);
+                    });
+                } catch (Exception ex) {
+                    SwingUtilities.invokeLater(() -> {
+                        JOptionPane.showMessageDialog(loginFrame, "❌ Login failed: " + ex.getMessage());
+                        loginBtn.setText("Login");
+                        loginBtn.setEnabled(true);
+                    });
+                }
+            }, "login").start();
         });
 
         loginFrame.setLocationRelativeTo(null);
         loginFrame.setVisible(true);
     }
 
-    // --- CONNECT TO SERVER ---
-    private void connectToServer(String username, String password) throws Exception {
-        Socket socket = new Socket(SERVER_IP, SERVER_PORT);
-        out = new ObjectOutputStream(socket.getOutputStream());
-        in = new ObjectInputStream(socket.getInputStream());
+    // --- CONNECT TO SERVER (login thread) ---
 
-        in.readObject(); // prompt
-        out.writeObject(username);
-        in.readObject(); // prompt
-        out.writeObject(password);
-        
-        String response = (String) in.readObject(); // success or failure message
-        if (response.contains("failed")) {
-            socket.close();
-            throw new Exception(response);
+    /**
+     * Log in, trying again after a jittered delay while the server is busy
+     * @param status Told what is happening while a retry is pending
+     */
+    private ServerLink connectToServer(String username, String password, String examCode,
+                                       Consumer<String> status) throws Exception {
+        Random random = new Random();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ServerLink link = ServerLink.connect(SERVER_IP, SERVER_PORT);
+                link.login(username, password, examCode);
+                return link;
+            } catch (ServerBusyException busy) {
+                if (attempt >= LOGIN_ATTEMPTS) {
+                    throw busy;
+                }
+                long delay = busy.retryDelayMillis(attempt, random);
+                status.accept("Server busy, retrying in " + (delay + 999) / 1000 + " s...");
+                Thread.sleep(delay);
+                status.accept("Logging in...");
+            }
         }
-        
-        // Check for WAITING status
-        String status = (String) in.readObject();
-        if (status.equals("WAITING")) {
-            // Client will show waiting screen
-            // Start a thread to wait for START signal
-            new Thread(() -> {
-                try {
-                    String startSignal = (String) in.readObject();
-                    if (startSignal.equals("START")) {
-                        SwingUtilities.invokeLater(() -> {
-                            examStarted = true;
-                            createExamUI();
-                            loadNextQuestion();
-                        });
+    }
+
+    private void startExamSession(ServerLink link) {
+        // Initialize timer label first
+        timerLabel = new JLabel("Timer: Waiting for broadcast...", SwingConstants.CENTER);
+        timerLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        timerLabel.setForeground(new Color(75, 110, 175));
+
+        // Show waiting screen
+        showWaitingScreen();
+
+        // Set callback for when exam time finishes
+        UDPListener.setOnExamFinished(() -> autoFinishExam());
+
+        // Start UDP listener after timer label is initialized
+        TimerChannel timer = link.timerChannel();
+        if (timer != null) {
+            new Thread(() -> UDPListener.listen(timer, timerLabel)).start();
+        } else {
+            new Thread(() -> UDPListener.listen(UDP_PORT, timerLabel)).start();
+        }
+
+        attach(link);
+    }
+
+    // WAITING, START, questions and the result arrive through onServerMessage
+    private void attach(ServerLink serverLink) {
+        link = serverLink;
+        network = new AsyncServerLink(serverLink, new AsyncServerLink.Listener() {
+            @Override
+            public void onMessage(Object message) {
+                onServerMessage(message);
+            }
+
+            @Override
+            public void onDisconnect(Exception cause) {
+                if (!examFinished) {
+                    reconnect();
+                }
+            }
+        });
+    }
+
+    // --- RECONNECT (e.g. the Wi-Fi dropped) ---
+
+    // Resume the session on a new connection, in the background; the student can keep answering meanwhile
+    private void reconnect() {
+        AsyncServerLink dropped = network;
+        ServerLink droppedLink = link;
+        network = null;
+        if (questionCountLabel != null) {
+            questionCountLabel.setText("📶 Connection lost, reconnecting...");
+        }
+        new Thread(() -> {
+            try {
+                List<Integer> unsent = dropped.abandon();
+                ServerLink resumed = resumeSession(droppedLink);
+                SwingUtilities.invokeLater(() -> onResumed(resumed, unsent));
+            } catch (Exception e) {
+                SwingUtilities.invokeLater(() -> {
+                    if (!examFinished) {
+                        examFinished = true;
+                        JOptionPane.showMessageDialog(frame, "❌ Lost connection to the server: " + e.getMessage());
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
+                });
+            }
+        }, "reconnect").start();
+    }
+
+    /**
+     * Resume, trying again after a growing, jittered delay while the server
+     * can't be reached, so a room that dropped together doesn't all come back together
+     */
+    private ServerLink resumeSession(ServerLink dropped) throws Exception {
+        Random random = new Random();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return dropped.resume(SERVER_IP, SERVER_PORT);
+            } catch (IOException e) {
+                if (attempt >= RESUME_ATTEMPTS) {
+                    throw e;
                 }
-            }).start();
+                long backoff = Math.min(MAX_RESUME_DELAY_MS, 250L << Math.min(attempt, 10));
+                Thread.sleep(backoff / 2 + random.nextLong(backoff / 2 + 1));
+            }
+        }
+    }
+
+    /**
+     * @param unsent Answers the dropped connection never sent, before any given while reconnecting
+     */
+    private void onResumed(ServerLink resumed, List<Integer> unsent) {
+        if (examFinished) {
+            try {
+                resumed.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        attach(resumed);
+        unsent.addAll(unsentAnswers);
+        unsentAnswers.clear();
+        for (int option : unsent) {
+            network.sendAnswer(option);
+        }
+        if (questionCountLabel != null) {
+            updateQuestionCount();
+        }
+    }
+
+    // Messages the reader thread has already received, in order
+    private void onServerMessage(Object message) {
+        if (message instanceof Question question) {
+            if (awaitingQuestion) {
+                showQuestion(question);
+            } else {
+                upcoming.add(question);
+            }
+        } else if (message instanceof String msg && msg.startsWith("ACK:")) {
+            // The server has recorded another answer
+            savedAnswers++;
+            updateQuestionCount();
+        } else if (message instanceof String msg && msg.startsWith("DEADLINE:")) {
+            // This student's time differs from the exam's broadcast countdown
+            UDPListener.setPersonalDeadline(Long.parseLong(msg.substring("DEADLINE:".length())), timerLabel);
+        } else if (message instanceof String msg && msg.startsWith("RESUMED:")) {
+            // Back on a new connection: this many answers are recorded, and any others are being sent again
+            savedAnswers = Integer.parseInt(msg.substring("RESUMED:".length()));
+            updateQuestionCount();
+        } else if ("WAITING".equals(message)) {
+            // Already on the waiting screen
+        } else if ("START".equals(message)) {
+            if (!examStarted) {
+                examStarted = true;
+                createExamUI();
+            }
+        } else if (message instanceof String msg && msg.startsWith("RESULT:")) {
+            examFinished = true;
+            showResult(msg);
+            if (frame != null) {
+                frame.dispose();
+            }
+        } else {
+            JOptionPane.showMessageDialog(frame, message);
         }
     }
 
@@ -245,20 +403,9 @@ public class StudentClient {
         mainPanel.add(Box.createRigidArea(new Dimension(0, 15)));
 
         // --- OPTIONS ---
-        JPanel optionsPanel = new JPanel(new GridLayout(4, 1, 10, 10));
+        optionsPanel = new JPanel(new GridLayout(0, 1, 10, 10));
         optionsPanel.setBackground(Color.WHITE);
-        optionButtons = new JRadioButton[4];
-        group = new ButtonGroup();
-
-        for (int i = 0; i < 4; i++) {
-            optionButtons[i] = new JRadioButton();
-            optionButtons[i].setFont(new Font("Segoe UI", Font.PLAIN, 15));
-            optionButtons[i].setBackground(new Color(250, 250, 250));
-            optionButtons[i].setBorder(BorderFactory.createLineBorder(new Color(230, 230, 230), 1));
-            optionButtons[i].setFocusPainted(false);
-            group.add(optionButtons[i]);
-            optionsPanel.add(optionButtons[i]);
-        }
+        setOptionCount(4);
 
         mainPanel.add(optionsPanel);
         frame.add(mainPanel, BorderLayout.CENTER);
@@ -283,34 +430,47 @@ public class StudentClient {
         // Don't automatically load questions - wait for START signal
     }
 
-    private void loadNextQuestion() {
-        try {
-            Object obj = in.readObject();
-            if (obj instanceof String msg) {
-                if (msg.startsWith("RESULT:")) {
-                    showResult(msg);
-                    frame.dispose();
-                    return;
-                }
-                JOptionPane.showMessageDialog(frame, msg);
-                return;
-            }
-
-            currentQuestion = (Question) obj;
-            totalQuestions++;
-            questionArea.setText(currentQuestion.getQuestionText());
-            String[] opts = currentQuestion.getOptions();
+    private void showQuestion(Question question) {
+        awaitingQuestion = false;
+        currentQuestion = question;
+        totalQuestions++;
+        questionArea.setText(currentQuestion.getQuestionText());
+        String[] opts = currentQuestion.getOptions();
 
-            for (int i = 0; i < opts.length; i++) {
-                optionButtons[i].setText(opts[i]);
-            }
+        setOptionCount(opts.length);
+        for (int i = 0; i < opts.length; i++) {
+            optionButtons[i].setText(opts[i]);
+        }
 
-            group.clearSelection();
-            questionCountLabel.setText("Question: " + totalQuestions);
+        group.clearSelection();
+        updateQuestionCount();
+        submitButton.setEnabled(true);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Replace the option buttons when the number of options changes
+    private void setOptionCount(int count) {
+        if (optionButtons != null && optionButtons.length == count) {
+            return;
+        }
+        optionsPanel.removeAll();
+        optionButtons = new JRadioButton[count];
+        group = new ButtonGroup();
+        for (int i = 0; i < count; i++) {
+            optionButtons[i] = new JRadioButton();
+            optionButtons[i].setFont(new Font("Segoe UI", Font.PLAIN, 15));
+            optionButtons[i].setBackground(new Color(250, 250, 250));
+            optionButtons[i].setBorder(BorderFactory.createLineBorder(new Color(230, 230, 230), 1));
+            optionButtons[i].setFocusPainted(false);
+            group.add(optionButtons[i]);
+            optionsPanel.add(optionButtons[i]);
         }
+        optionsPanel.revalidate();
+        optionsPanel.repaint();
+    }
+
+    private void updateQuestionCount() {
+        questionCountLabel.setText("Question: " + totalQuestions
+                + (savedAnswers > 0 ? "  (" + savedAnswers + " saved)" : ""));
     }
 
     private void submitAnswer() {
@@ -325,12 +485,19 @@ public class StudentClient {
             return;
         }
 
-        try {
-            out.writeInt(selected);
-            out.flush();
-            loadNextQuestion();
-        } catch (IOException e) {
-            e.printStackTrace();
+        // Sent by the writer thread; the next question shows at once if it was sent ahead,
+        // otherwise when the reader has it
+        if (network != null) {
+            network.sendAnswer(selected);
+        } else {
+            unsentAnswers.add(selected);
+        }
+        Question next = upcoming.poll();
+        if (next != null) {
+            showQuestion(next);
+        } else {
+            awaitingQuestion = true;
+            submitButton.setEnabled(false);
         }
     }
 
@@ -385,11 +552,8 @@ public class StudentClient {
                     JOptionPane.INFORMATION_MESSAGE);
                 
                 // Close connection
-                if (out != null) {
-                    out.close();
-                }
-                if (in != null) {
-                    in.close();
+                if (network != null) {
+                    network.close();
                 }
                 
                 System.exit(0);
@@ -1,63 +1,200 @@
 package client;
 
+import broadcaster.TimerChannel;
+import broadcaster.TimerPacket;
+
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import javax.swing.JLabel;
 import javax.swing.SwingUtilities;
 import javax.swing.JOptionPane;
+import javax.swing.Timer;
 
 public class UDPListener {
     private static Runnable onExamFinished = null;
-    
+
+    // Local monotonic deadline from the latest packet; 0 until the first one arrives
+    private static volatile long deadlineNanos = 0;
+    // This student's own deadline, if the exam server sent one (extra time); overrides the broadcast
+    private static volatile long personalDeadlineNanos = 0;
+    // EDT only
+    private static Timer countdown = null;
+    private static boolean finished = false;
+    private static long shownSeconds = -1;
+
     public static void setOnExamFinished(Runnable callback) {
         onExamFinished = callback;
     }
-    
-    public static void listen(int port, JLabel timerLabel) {
-        try (DatagramSocket socket = new DatagramSocket(port)) {
-            socket.setSoTimeout(2000); // 2 second timeout to update "Waiting..." message
-            byte[] buffer = new byte[1024];
-            boolean receivedFirstPacket = false;
-            
-            while (true) {
-                try {
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    socket.receive(packet);
-                    String msg = new String(packet.getData(), 0, packet.getLength());
-                    receivedFirstPacket = true;
-                    
-                    // Check for exam finished signal
-                    if (msg.equals("EXAM_FINISHED")) {
-                        SwingUtilities.invokeLater(() -> {
-                            if (timerLabel != null) {
-                                timerLabel.setText("Time's Up!");
-                            }
-                            JOptionPane.showMessageDialog(null, 
-                                "⏰ Time's up! Exam will auto-submit.", 
-                                "Exam Finished", 
-                                JOptionPane.INFORMATION_MESSAGE);
-                            
-                            if (onExamFinished != null) {
-                                onExamFinished.run();
-                            }
-                        });
-                        break;
-                    }
-                    
-                    if (timerLabel != null) {
-                        String finalMsg = msg;
-                        SwingUtilities.invokeLater(() -> timerLabel.setText(finalMsg));
-                    }
-                } catch (SocketTimeoutException e) {
-                    // No packet received - show waiting message
-                    if (!receivedFirstPacket && timerLabel != null) {
-                        SwingUtilities.invokeLater(() -> 
-                            timerLabel.setText("Timer: Waiting for broadcast...")
-                        );
-                    }
-                }
+
+    /**
+     * Count down to this student's own time rather than the exam's, e.g.
+     * when they have extra time; call on the EDT
+     * @param remainingMillis Time left, as the exam server sent it
+     */
+    public static void setPersonalDeadline(long remainingMillis, JLabel timerLabel) {
+        personalDeadlineNanos = System.nanoTime() + remainingMillis * 1_000_000;
+        startCountdown(timerLabel);
+    }
+
+    /**
+     * Follow one exam's timer on its multicast group, as announced by the
+     * exam server at login
+     */
+    public static void listen(TimerChannel timer, JLabel timerLabel) {
+        try (DatagramChannel channel = join(timer, TimerChannel.multicastInterface())) {
+            receive(channel, timer.examId(), timerLabel);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Open a channel on a timer's port, joined to its group on an interface
+     */
+    static DatagramChannel join(TimerChannel timer, NetworkInterface networkInterface) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(timer.port()));
+            channel.join(timer.group(), networkInterface);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Which timer packets a listener acts on: only its exam's (a group can be
+     * shared, and a socket may hear other groups on its port), and each only
+     * if it is newer than the last one taken
+     */
+    static final class PacketFilter {
+        private int exam;
+        private long lastSequence = 0;
+
+        /**
+         * @param examId The exam to follow, or 0 to follow the first exam heard
+         */
+        PacketFilter(int examId) {
+            this.exam = examId;
+        }
+
+        boolean accept(TimerPacket timer) {
+            if (exam == 0) {
+                exam = timer.examId;
+            } else if (timer.examId != exam) {
+                return false; // another exam's timer
             }
+            if (timer.sequence <= lastSequence) {
+                return false; // duplicate or delayed packet, older than what we have
+            }
+            lastSequence = timer.sequence;
+            return true;
+        }
+    }
+
+    /**
+     * Follow the timer broadcast on a port (servers that don't announce a channel)
+     * @param examId The exam to follow, or 0 to follow the first exam heard
+     */
+    public static void listen(int port, int examId, JLabel timerLabel) {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            receive(channel, examId, timerLabel);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    public static void listen(int port, JLabel timerLabel) {
+        listen(port, 0, timerLabel);
+    }
+
+    /**
+     * Receive timer packets until the exam is over. One buffer and one
+     * packet object serve every datagram; the only work handed to the EDT
+     * is starting the countdown and the final time-up.
+     */
+    private static void receive(DatagramChannel channel, int examId, JLabel timerLabel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocateDirect(TimerPacket.SIZE + 1); // one spare byte shows oversize datagrams
+        TimerPacket timer = new TimerPacket();
+        PacketFilter filter = new PacketFilter(examId);
+
+        while (true) {
+            buf.clear();
+            channel.receive(buf);
+            buf.flip();
+            if (!timer.decode(buf) || !filter.accept(timer)) {
+                continue;
+            }
+
+            // Check for exam finished signal
+            if (timer.isFinished()) {
+                if (personalDeadlineNanos == 0) {
+                    SwingUtilities.invokeLater(() -> timeUp(timerLabel));
+                }
+                // otherwise the countdown ends at this student's own deadline
+                return;
+            }
+
+            // Count down on our own clock from here; transit time is small next to a second
+            boolean first = deadlineNanos == 0;
+            deadlineNanos = System.nanoTime() + timer.remainingMillis() * 1_000_000;
+            if (first) {
+                SwingUtilities.invokeLater(() -> startCountdown(timerLabel));
+            }
+        }
+    }
+
+    // Run the display off the local deadline, so it keeps going between packets.
+    // The timer is armed for the moment the shown second next changes, so the
+    // EDT only wakes when there is a new number to show.
+    private static void startCountdown(JLabel timerLabel) {
+        if (countdown == null) {
+            countdown = new Timer(0, e -> tick(timerLabel));
+            countdown.setRepeats(false);
+        }
+        tick(timerLabel); // also re-arms a running countdown for a changed deadline
+    }
+
+    private static void tick(JLabel timerLabel) {
+        long deadline = personalDeadlineNanos != 0 ? personalDeadlineNanos : deadlineNanos;
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0 || finished) {
+            countdown.stop();
+            timeUp(timerLabel);
+            return;
+        }
+        long seconds = (remainingNanos + 999_999_999) / 1_000_000_000;
+        if (seconds != shownSeconds && timerLabel != null) {
+            shownSeconds = seconds;
+            timerLabel.setText("Time left: " + seconds + " sec");
+        }
+        // Until the remaining time drops to (seconds - 1) whole seconds; rounded up so we're never early
+        long untilNextSecond = remainingNanos - (seconds - 1) * 1_000_000_000;
+        countdown.setInitialDelay((int) Math.max(1, (untilNextSecond + 999_999) / 1_000_000));
+        countdown.restart();
+    }
+
+    private static void timeUp(JLabel timerLabel) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (timerLabel != null) {
+            timerLabel.setText("Time's Up!");
+        }
+        JOptionPane.showMessageDialog(null,
+            "⏰ Time's up! Exam will auto-submit.",
+            "Exam Finished",
+            JOptionPane.INFORMATION_MESSAGE);
+
+        if (onExamFinished != null) {
+            onExamFinished.run();
+        }
+    }
 }
@@ -0,0 +1,268 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A process's counters, gauges and latency histograms, readable while it
+ * runs: over JMX as one MBean (an attribute per value, for JConsole), and as
+ * Prometheus text from GET /metrics on a local HTTP port, for a scraper to
+ * alert on. Recording costs an add or two; all the formatting happens when
+ * someone reads.
+ *
+ * Histograms are exported as Prometheus histograms in seconds (cumulative
+ * buckets, so rates and quantiles over any window can be computed), plus
+ * p50/p90/p99/p99.9/max since start as gauges for reading by eye.
+ */
+public final class Metrics {
+    // Upper bounds of the exported histogram buckets, in seconds
+    private static final double[] BUCKET_BOUNDS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025,
+            0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private interface Metric {
+        String name();
+
+        void writeText(StringBuilder out);
+
+        void attributes(Map<String, Object> out);
+    }
+
+    private final String prefix;
+    private final List<Metric> metrics = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param prefix Put in front of every name, e.g. "testsync"
+     */
+    public Metrics(String prefix) {
+        this.prefix = prefix + "_";
+    }
+
+    /**
+     * @param name Exported as prefix_name_total
+     */
+    public Counter counter(String name, String help) {
+        Counter counter = new Counter();
+        String full = prefix + name + "_total";
+        add(new Metric() {
+            public String name() {
+                return full;
+            }
+
+            public void writeText(StringBuilder out) {
+                header(out, full, help, "counter");
+                out.append(full).append(' ').append(counter.get()).append('\n');
+            }
+
+            public void attributes(Map<String, Object> out) {
+                out.put(full, counter.get());
+            }
+        });
+        return counter;
+    }
+
+    /**
+     * A value read when the metrics are, e.g. a queue length
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        String full = prefix + name;
+        add(new Metric() {
+            public String name() {
+                return full;
+            }
+
+            public void writeText(StringBuilder out) {
+                header(out, full, help, "gauge");
+                out.append(full).append(' ').append(format(value.getAsDouble())).append('\n');
+            }
+
+            public void attributes(Map<String, Object> out) {
+                out.put(full, value.getAsDouble());
+            }
+        });
+    }
+
+    /**
+     * @param name Exported as prefix_name_seconds
+     */
+    public LatencyHistogram histogram(String name, String help) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        String full = prefix + name + "_seconds";
+        add(new Metric() {
+            public String name() {
+                return full;
+            }
+
+            public void writeText(StringBuilder out) {
+                long[] buckets = histogram.snapshot();
+                header(out, full, help, "histogram");
+                for (double bound : BUCKET_BOUNDS) {
+                    out.append(full).append("_bucket{le=\"").append(format(bound)).append("\"} ")
+                            .append(LatencyHistogram.countAtMost(buckets, (long) (bound * 1e9))).append('\n');
+                }
+                long count = 0;
+                for (long c : buckets) {
+                    count += c;
+                }
+                out.append(full).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+                out.append(full).append("_sum ").append(format(histogram.sumNanos() / 1e9)).append('\n');
+                out.append(full).append("_count ").append(count).append('\n');
+                long max = histogram.maxNanos();
+                header(out, full + "_percentile", help + ", since start", "gauge");
+                for (double percent : PERCENTILES) {
+                    out.append(full).append("_percentile{percentile=\"").append(format(percent)).append("\"} ")
+                            .append(format(percentile(buckets, percent, max) / 1e9)).append('\n');
+                }
+                out.append(full).append("_percentile{percentile=\"100\"} ").append(format(max / 1e9)).append('\n');
+            }
+
+            public void attributes(Map<String, Object> out) {
+                long[] buckets = histogram.snapshot();
+                long max = histogram.maxNanos();
+                out.put(full + "_count", histogram.count());
+                for (double percent : PERCENTILES) {
+                    out.put(full + "_p" + format(percent).replace(".", ""), percentile(buckets, percent, max) / 1e9);
+                }
+                out.put(full + "_max", max / 1e9);
+            }
+        });
+        return histogram;
+    }
+
+    /**
+     * @return every metric in the Prometheus text format
+     */
+    public String text() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : metrics) {
+            metric.writeText(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return every value by name, as the MBean shows them
+     */
+    public Map<String, Object> values() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Metric metric : metrics) {
+            metric.attributes(values);
+        }
+        return values;
+    }
+
+    /**
+     * Register the MBean and, if port is above 0, serve /metrics. Problems are
+     * reported and otherwise ignored: metrics never stop the process starting.
+     * @param name The MBean is testsync:type=Metrics,name=&lt;name&gt;
+     * @param host Address to listen on; keep it local unless a scraper elsewhere needs it
+     */
+    public void publish(String name, String host, int port) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(),
+                    new ObjectName("testsync:type=Metrics,name=" + name));
+        } catch (JMException e) {
+            System.err.println("⚠️ Could not register metrics MBean: " + e.getMessage());
+        }
+        if (port <= 0) {
+            return;
+        }
+        try {
+            HttpServer http = HttpServer.create(new InetSocketAddress(host, port), 0);
+            http.createContext("/metrics", exchange -> {
+                byte[] body = text().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            http.start();
+            System.out.println("📈 Metrics on http://" + host + ":" + port + "/metrics and JMX testsync:type=Metrics,name=" + name);
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not serve metrics on " + host + ":" + port + ": " + e.getMessage());
+        }
+    }
+
+    private void add(Metric metric) {
+        for (Metric existing : metrics) {
+            if (existing.name().equals(metric.name())) {
+                throw new IllegalArgumentException("metric " + metric.name() + " already registered");
+            }
+        }
+        metrics.add(metric);
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // A bucket's top can be above the largest value actually recorded
+    private static long percentile(long[] buckets, double percent, long max) {
+        return Math.min(LatencyHistogram.percentile(buckets, percent), max);
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    // Read-only; attributes are listed afresh each time, so metrics added later show up too
+    private final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = values().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> values = values();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> value : values().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+                        value.getKey(), true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "TestSync metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package server;
+
+import metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control for new connections, so a login storm is turned away
+ * early and cheaply instead of queueing without limit. A connection is
+ * admitted if the accept rate allows it (token bucket) and fewer than
+ * MAX_HANDSHAKES others are still logging in; otherwise its login is
+ * answered "busy, retry in N ms" without checking the password, and the
+ * client tries again later, with jitter.
+ */
+final class Admission {
+    // Longest retry delay suggested, however big the backlog
+    private static final long MAX_RETRY_MS = 30_000;
+
+    /**
+     * The server's, as configured in ServerConfig
+     */
+    static final Admission SERVER = new Admission(ServerConfig.ACCEPT_RATE, ServerConfig.ACCEPT_BURST,
+            ServerConfig.MAX_HANDSHAKES, ServerConfig.BUSY_RETRY_MS, ServerConfig.AUTH_THREADS,
+            ServerMetrics.PASSWORD_CHECK_TIME, System::nanoTime);
+
+    private final int acceptRate;
+    private final int acceptBurst;
+    private final int maxHandshakes;
+    private final long busyRetryMillis;
+    private final int verifierThreads;
+    private final LatencyHistogram checkTime;
+    private final LongSupplier clock;
+
+    private final AtomicInteger handshakes = new AtomicInteger();
+
+    // Token bucket; guarded by this
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param acceptRate Connections admitted per second, on average; 0 for no limit
+     * @param acceptBurst Connections admitted at once after a quiet spell
+     * @param maxHandshakes Admitted connections allowed to be logging in at once
+     * @param busyRetryMillis Shortest retry delay suggested
+     * @param verifierThreads Password checks run in parallel, for the retry estimate
+     * @param checkTime Password check times, for the retry estimate
+     * @param clock Nanosecond clock, System::nanoTime outside tests
+     */
+    Admission(int acceptRate, int acceptBurst, int maxHandshakes, long busyRetryMillis, int verifierThreads,
+              LatencyHistogram checkTime, LongSupplier clock) {
+        this.acceptRate = acceptRate;
+        this.acceptBurst = acceptBurst;
+        this.maxHandshakes = maxHandshakes;
+        this.busyRetryMillis = busyRetryMillis;
+        this.verifierThreads = Math.max(1, verifierThreads);
+        this.checkTime = checkTime;
+        this.clock = clock;
+        this.tokens = acceptBurst;
+        this.refilledAt = clock.getAsLong();
+    }
+
+    /**
+     * Decide whether a new connection may log in. If so it holds a handshake
+     * slot until handshakeDone.
+     * @return 0 if admitted, otherwise how long the client should wait before retrying
+     */
+    long admit() {
+        if (!takeToken()) {
+            return retryAfterMillis();
+        }
+        if (handshakes.incrementAndGet() > maxHandshakes) {
+            handshakes.decrementAndGet();
+            return retryAfterMillis();
+        }
+        return 0;
+    }
+
+    /**
+     * Give back an admitted connection's handshake slot, once it is waiting, refused or gone
+     */
+    void handshakeDone() {
+        handshakes.decrementAndGet();
+    }
+
+    int handshakesInFlight() {
+        return handshakes.get();
+    }
+
+    /**
+     * @return the suggested wait before a busy client retries: about the time
+     *         the logins in progress take to clear, at the password checks'
+     *         average speed, and at least busyRetryMillis
+     */
+    long retryAfterMillis() {
+        long checks = checkTime.count();
+        long drainMillis = 0;
+        if (checks > 0) {
+            long checkNanos = checkTime.sumNanos() / checks;
+            drainMillis = TimeUnit.NANOSECONDS.toMillis(handshakes.get() * checkNanos / verifierThreads);
+        }
+        return Math.min(MAX_RETRY_MS, Math.max(busyRetryMillis, drainMillis));
+    }
+
+    private synchronized boolean takeToken() {
+        if (acceptRate <= 0) {
+            return true;
+        }
+        long now = clock.getAsLong();
+        tokens = Math.min(acceptBurst, tokens + (now - refilledAt) * acceptRate / 1e9);
+        refilledAt = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+}
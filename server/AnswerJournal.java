@@ -0,0 +1,533 @@
+package server;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, crash-safe log of submitted answers.
+ *
+ * append() only copies a few bytes into an in-memory batch; a background
+ * thread writes each batch as one checksummed block and fsyncs it (group
+ * commit), so the answer path never waits for the disk. An answer is durable
+ * at most FLUSH_INTERVAL_MS after it was submitted.
+ *
+ * Files in the journal directory:
+ *   answers-NNNNNN.journal  segments: header, then blocks [int length][int crc32c][records]
+ *   answers.snapshot        every student's answers as of the end of segment N
+ *   closed                  present once the journal was closed normally (the exam is over)
+ *
+ * Every COMPACT_AFTER_BYTES the journal starts a new segment, writes a
+ * snapshot covering the older ones and deletes them, so recovery reads one
+ * snapshot plus a bounded tail no matter how long the exam has been running.
+ *
+ * Only a journal that wasn't closed (the server crashed) is replayed on its
+ * own; a closed one belongs to an exam that is over, and the next exam with
+ * the same code moves it aside and starts empty.
+ */
+final class AnswerJournal implements Closeable {
+    private static final int SEGMENT_MAGIC = 0x54534A31;  // "TSJ1"
+    private static final int SNAPSHOT_MAGIC = 0x54535331; // "TSS1"
+    private static final int SEGMENT_HEADER_LENGTH = 4 + 8 + 8;
+    private static final byte REC_USER = 1;
+    private static final byte REC_ANSWER = 2;
+
+    private static final long FLUSH_INTERVAL_MS = 2;
+    private static final int BATCH_CAPACITY = 256 * 1024;
+    private static final long COMPACT_AFTER_BYTES = 8L * 1024 * 1024;
+    private static final String SNAPSHOT_FILE = "answers.snapshot";
+    private static final String CLOSED_FILE = "closed";
+
+    private final Path dir;
+    private final long questionSetId;
+    private final ResultStore store;
+
+    // Student ids keep records small; they are stable for the life of the journal
+    private final Map<String, Integer> userIds = new ConcurrentHashMap<>();
+    private final List<String> usernames = new ArrayList<>();
+
+    // Double-buffered batch: producers fill `filling` under the lock, the flusher swaps it out
+    private final Object lock = new Object();
+    private ByteBuffer filling = ByteBuffer.allocate(BATCH_CAPACITY);
+    private ByteBuffer draining = ByteBuffer.allocate(BATCH_CAPACITY);
+    private boolean closed = false;
+    // Set by the flusher if a block may not have reached the disk; the journal isn't marked closed then
+    private volatile boolean writeFailed = false;
+
+    // Only touched by the flusher thread (and open/close)
+    private FileChannel segment;
+    private long segmentSeq;
+    private long segmentBytes;
+    private int replayedSegments;
+    private final CRC32C crc = new CRC32C();
+    private final Thread flusher;
+
+    private AnswerJournal(Path dir, long questionSetId, ResultStore store) {
+        this.dir = dir;
+        this.questionSetId = questionSetId;
+        this.store = store;
+        this.flusher = new Thread(this::flushLoop, "answer-journal");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Open the journal in a directory, replaying what a crash left there into the store
+     * @param dir Journal directory (created if missing)
+     * @param questionSetId Fingerprint of the question set; a journal for a different set is moved aside
+     * @param store Receives the recovered answers
+     * @param replayClosed Replay the journal even if it was closed normally, rather than move it aside
+     */
+    static AnswerJournal open(Path dir, long questionSetId, ResultStore store, boolean replayClosed) throws IOException {
+        Files.createDirectories(dir);
+        AnswerJournal journal = new AnswerJournal(dir, questionSetId, store);
+        long start = System.nanoTime();
+        int recovered = journal.recover(replayClosed);
+        if (recovered > 0) {
+            System.out.printf("♻️ Recovered %d answer(s) for %d student(s) from %s in %d ms%n",
+                    recovered, store.studentCount(), dir, (System.nanoTime() - start) / 1_000_000);
+        }
+        journal.startSegment(journal.segmentSeq + 1);
+        if (journal.replayedSegments > 0) {
+            // Fold what we just replayed into a snapshot so the next restart is quicker still
+            journal.compact();
+        }
+        journal.flusher.start();
+        return journal;
+    }
+
+    /**
+     * @return whether open() would replay answers from the journal in dir:
+     *         there is one, for this question set, and it wasn't closed
+     *         (or replayClosed)
+     */
+    static boolean unfinished(Path dir, long questionSetId, boolean replayClosed) throws IOException {
+        if (!Files.isDirectory(dir) || (!replayClosed && Files.exists(dir.resolve(CLOSED_FILE)))) {
+            return false;
+        }
+        AnswerJournal journal = new AnswerJournal(dir, questionSetId, null);
+        return (Files.exists(dir.resolve(SNAPSHOT_FILE)) || !journal.segmentNumbers().isEmpty())
+                && !journal.journalForOtherQuestionSet();
+    }
+
+    /**
+     * Queue an answer for the journal. Never blocks on I/O.
+     */
+    void append(String username, int questionIndex, int answer) {
+        synchronized (lock) {
+            Integer id = userIds.get(username);
+            byte[] name = id == null ? username.getBytes(StandardCharsets.UTF_8) : null;
+            ensureRoom(12 + (name == null ? 0 : 8 + name.length));
+            if (closed) {
+                return;
+            }
+            if (filling.position() == 0) {
+                lock.notifyAll(); // the flusher sleeps until there is something to write
+            }
+            if (id == null) {
+                // ensureRoom may have waited; another thread could have defined the student meanwhile
+                id = userIds.get(username);
+                if (id == null) {
+                    id = usernames.size();
+                    usernames.add(username);
+                    userIds.put(username, id);
+                    filling.put(REC_USER);
+                    putVarint(filling, id);
+                    filling.putShort((short) name.length).put(name);
+                }
+            }
+            filling.put(REC_ANSWER);
+            putVarint(filling, id);
+            putVarint(filling, questionIndex);
+            filling.put((byte) answer);
+        }
+    }
+
+    // Caller holds lock. If the flusher has fallen behind, wait for it rather than grow without bound.
+    private void ensureRoom(int bytes) {
+        while (filling.remaining() < bytes && !closed) {
+            lock.notifyAll();
+            try {
+                lock.wait(FLUSH_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write out what is queued and mark the journal closed, so the next open
+     * doesn't take these answers for a crashed exam's
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        boolean flushed = true;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flushed = false;
+        }
+        segment.close();
+        if (flushed && !writeFailed) {
+            try (FileChannel marker = FileChannel.open(dir.resolve(CLOSED_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                marker.force(true);
+            }
+        }
+    }
+
+    // --- FLUSHER THREAD ---
+
+    private void flushLoop() {
+        while (true) {
+            boolean last;
+            synchronized (lock) {
+                try {
+                    // Idle until append() or close() wakes us, then give other answers
+                    // FLUSH_INTERVAL_MS to join the block (ensureRoom cuts that short)
+                    while (filling.position() == 0 && !closed) {
+                        lock.wait();
+                    }
+                    if (!closed) {
+                        lock.wait(FLUSH_INTERVAL_MS);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ByteBuffer full = filling;
+                filling = draining;
+                draining = full;
+                last = closed;
+                lock.notifyAll();
+            }
+            try {
+                writeBlock(draining.flip());
+                draining.clear();
+                if (segmentBytes >= COMPACT_AFTER_BYTES) {
+                    compact();
+                }
+            } catch (IOException e) {
+                writeFailed = true;
+                System.err.println("⚠️ Answer journal write failed: " + e.getMessage());
+            }
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    private void writeBlock(ByteBuffer records) throws IOException {
+        if (!records.hasRemaining()) {
+            return;
+        }
+        crc.reset();
+        crc.update(records.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(records.remaining()).putInt((int) crc.getValue()).flip();
+        ByteBuffer[] block = {header, records};
+        while (records.hasRemaining()) {
+            segmentBytes += segment.write(block);
+        }
+        segment.force(false);
+    }
+
+    /**
+     * Start a new segment, snapshot the store, then drop the segments the snapshot covers.
+     * Answers recorded while the snapshot is taken land in the new segment; replaying them
+     * over the snapshot is harmless because a record simply sets one answer.
+     */
+    private void compact() throws IOException {
+        long covered = segmentSeq;
+        segment.close();
+        startSegment(covered + 1);
+
+        List<String> names;
+        synchronized (lock) {
+            names = new ArrayList<>(usernames);
+        }
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(questionSetId);
+            out.writeLong(covered);
+            out.writeInt(store.getQuestionCount());
+            out.writeInt(names.size());
+            for (String name : names) {
+                int[] answers = store.answersOf(name);
+                out.writeUTF(name);
+                for (int i = 0; i < store.getQuestionCount(); i++) {
+                    out.writeByte(answers == null ? ResultStore.NO_ANSWER : answers[i]);
+                }
+            }
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for (Path old : segmentsUpTo(covered)) {
+            Files.deleteIfExists(old);
+        }
+    }
+
+    private void startSegment(long seq) throws IOException {
+        segmentSeq = seq;
+        segment = FileChannel.open(segmentPath(seq), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+        header.putInt(SEGMENT_MAGIC).putLong(questionSetId).putLong(seq).flip();
+        segment.write(header);
+        segmentBytes = SEGMENT_HEADER_LENGTH;
+        segment.force(true);
+    }
+
+    // --- RECOVERY ---
+
+    /**
+     * Load the snapshot, then replay newer segments in order. A block that is
+     * short or fails its checksum is a write torn by the crash: the segment is
+     * cut off there.
+     * @return the number of answers recovered
+     */
+    private int recover(boolean replayClosed) throws IOException {
+        Path closedMarker = dir.resolve(CLOSED_FILE);
+        if (journalForOtherQuestionSet()) {
+            System.out.println("⚠️ Existing answer journal moved to " + moveAside() + " (question set changed)");
+        } else if (Files.exists(closedMarker)) {
+            if (replayClosed) {
+                Files.delete(closedMarker); // carrying on with it; open again until closed again
+            } else {
+                System.out.println("📁 Answer journal of the previous exam " + dir.getFileName() + " moved to " + moveAside());
+            }
+        }
+        int recovered = 0;
+        long covered = 0;
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                in.readInt();  // magic
+                in.readLong(); // question set, checked above
+                covered = in.readLong();
+                int questionCount = in.readInt();
+                int users = in.readInt();
+                for (int u = 0; u < users; u++) {
+                    String name = in.readUTF();
+                    defineUser(u, name);
+                    for (int q = 0; q < questionCount; q++) {
+                        int answer = in.readUnsignedByte();
+                        if (answer != ResultStore.NO_ANSWER) {
+                            store.record(name, q, answer);
+                            recovered++;
+                        }
+                    }
+                }
+            }
+        }
+
+        segmentSeq = covered;
+        for (long seq : segmentNumbers()) {
+            if (seq <= covered) {
+                // Compaction was interrupted after the snapshot was written
+                Files.deleteIfExists(segmentPath(seq));
+                continue;
+            }
+            recovered += replaySegment(segmentPath(seq));
+            segmentSeq = seq;
+            replayedSegments++;
+        }
+        return recovered;
+    }
+
+    private boolean journalForOtherQuestionSet() throws IOException {
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshot))) {
+                return in.readInt() != SNAPSHOT_MAGIC || in.readLong() != questionSetId;
+            } catch (EOFException e) {
+                return true;
+            }
+        }
+        for (long seq : segmentNumbers()) {
+            ByteBuffer header = readSegmentHeader(segmentPath(seq));
+            if (header != null) {
+                return header.getLong(4) != questionSetId;
+            }
+        }
+        return false;
+    }
+
+    private int replaySegment(Path path) throws IOException {
+        if (readSegmentHeader(path) == null) {
+            // Crashed while creating the segment; it holds no answers
+            Files.delete(path);
+            return 0;
+        }
+        int recovered = 0;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long valid = SEGMENT_HEADER_LENGTH;
+            ByteBuffer blockHeader = ByteBuffer.allocate(8);
+            while (true) {
+                blockHeader.clear();
+                if (!readFully(ch, blockHeader, valid)) {
+                    break;
+                }
+                int length = blockHeader.getInt(0);
+                int checksum = blockHeader.getInt(4);
+                if (length <= 0 || length > BATCH_CAPACITY) {
+                    break;
+                }
+                ByteBuffer records = ByteBuffer.allocate(length);
+                if (!readFully(ch, records, valid + 8)) {
+                    break;
+                }
+                crc.reset();
+                crc.update(records.array(), 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                recovered += applyRecords(records.flip());
+                valid += 8 + length;
+            }
+            if (ch.size() > valid) {
+                System.out.println("⚠️ Discarding " + (ch.size() - valid) + " incomplete byte(s) at the end of " + path.getFileName());
+                ch.truncate(valid);
+            }
+        }
+        return recovered;
+    }
+
+    private int applyRecords(ByteBuffer records) throws IOException {
+        int answers = 0;
+        try {
+            while (records.hasRemaining()) {
+                byte type = records.get();
+                if (type == REC_USER) {
+                    int id = getVarint(records);
+                    byte[] name = new byte[records.getShort() & 0xFFFF];
+                    records.get(name);
+                    defineUser(id, new String(name, StandardCharsets.UTF_8));
+                } else if (type == REC_ANSWER) {
+                    int id = getVarint(records);
+                    int questionIndex = getVarint(records);
+                    int answer = records.get() & 0xFF; // unsigned, as in the snapshot
+                    if (id >= usernames.size() || questionIndex >= store.getQuestionCount()) {
+                        throw new StreamCorruptedException("record refers to unknown student or question");
+                    }
+                    if (answer == ResultStore.NO_ANSWER) {
+                        throw new StreamCorruptedException("answer record without an answer");
+                    }
+                    store.record(usernames.get(id), questionIndex, answer);
+                    answers++;
+                } else {
+                    throw new StreamCorruptedException("unknown record type " + type);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new StreamCorruptedException("truncated record in a checksummed block");
+        }
+        return answers;
+    }
+
+    private void defineUser(int id, String name) throws StreamCorruptedException {
+        if (id == usernames.size()) {
+            usernames.add(name);
+            userIds.put(name, id);
+        } else if (id > usernames.size() || !usernames.get(id).equals(name)) {
+            throw new StreamCorruptedException("inconsistent student id " + id);
+        }
+        // id < size with the same name: defined again after a snapshot, nothing to do
+    }
+
+    private ByteBuffer readSegmentHeader(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+            if (!readFully(ch, header, 0) || header.getInt(0) != SEGMENT_MAGIC) {
+                return null;
+            }
+            return header;
+        }
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Move every file (not the archives of earlier journals) to a new archive directory
+    private Path moveAside() throws IOException {
+        String name = "old-" + System.currentTimeMillis();
+        Path archive = dir.resolve(name);
+        for (int n = 1; Files.exists(archive); n++) {
+            archive = dir.resolve(name + "-" + n);
+        }
+        Files.createDirectories(archive);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                if (!Files.isDirectory(p)) {
+                    Files.move(p, archive.resolve(p.getFileName()));
+                }
+            }
+        }
+        return archive;
+    }
+
+    private List<Path> segmentsUpTo(long seq) throws IOException {
+        List<Path> result = new ArrayList<>();
+        for (long s : segmentNumbers()) {
+            if (s <= seq) {
+                result.add(segmentPath(s));
+            }
+        }
+        return result;
+    }
+
+    private List<Long> segmentNumbers() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "answers-*.journal")) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+                numbers.add(Long.parseLong(name.substring("answers-".length(), name.length() - ".journal".length())));
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("answers-%06d.journal", seq));
+    }
+
+    private static void putVarint(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buf) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buf.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+}
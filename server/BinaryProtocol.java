@@ -0,0 +1,221 @@
+package server;
+
+import broadcaster.TimerChannel;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Server side of ExamProtocol
+ */
+final class BinaryProtocol implements WireProtocol {
+    private static final ByteBuffer START = QuestionPayloads.direct(ExamProtocol.start());
+
+    private boolean helloRead = false;
+    private byte version;
+    // The bundle this client was sent, and whether its questions are sent as BUNDLED references
+    private ExamBundle bundle;
+    private boolean bundled = false;
+
+    @Override
+    public void onOpen(Connection connection) {
+        // The hello reply goes out once we've read the client's version
+    }
+
+    @Override
+    public void decode(ByteBuffer buf, ClientHandler handler) throws IOException {
+        if (!helloRead) {
+            if (buf.remaining() < ExamProtocol.HELLO_LENGTH) {
+                return;
+            }
+            buf.position(buf.position() + ExamProtocol.MAGIC.length);
+            byte clientVersion = buf.get();
+            if (clientVersion < 1) {
+                throw new StreamCorruptedException("unsupported protocol version " + clientVersion);
+            }
+            version = (byte) Math.min(clientVersion, ExamProtocol.VERSION);
+            helloRead = true;
+            handler.getConnection().send(ExamProtocol.hello(version));
+        }
+
+        while (buf.hasRemaining()) {
+            int start = buf.position();
+            int length = ExamProtocol.getLength(buf);
+            if (length < 0) {
+                return;
+            }
+            if (length < 1 || length > MAX_INBOUND_MESSAGE) {
+                throw new StreamCorruptedException("bad frame length " + length);
+            }
+            if (buf.remaining() < length) {
+                buf.position(start);
+                return;
+            }
+            ByteBuffer payload = buf.slice(buf.position() + 1, length - 1);
+            byte type = buf.get();
+            buf.position(buf.position() + length - 1);
+            try {
+                dispatch(type, payload, handler);
+            } catch (BufferUnderflowException e) {
+                throw new StreamCorruptedException("truncated message type " + type);
+            }
+        }
+    }
+
+    private void dispatch(byte type, ByteBuffer payload, ClientHandler handler) throws IOException {
+        switch (type) {
+            case ExamProtocol.AUTH: {
+                String username = ExamProtocol.getString(payload);
+                String password = ExamProtocol.getString(payload);
+                // Older clients don't send an exam code
+                String examCode = payload.hasRemaining() ? ExamProtocol.getString(payload) : null;
+                handler.onLogin(username, password, examCode);
+                break;
+            }
+            case ExamProtocol.RESUME: {
+                if (version < ExamProtocol.RESUME_VERSION) {
+                    throw new StreamCorruptedException("resume on protocol version " + version);
+                }
+                ResumeTable.Token token = ResumeTable.Token.read(payload);
+                handler.onResume(token, payload.getShort() & 0xFFFF);
+                break;
+            }
+            case ExamProtocol.ANSWER: {
+                int index = payload.getShort() & 0xFFFF;
+                int option = payload.get() & 0xFF;
+                handler.onAnswer(index, option);
+                break;
+            }
+            default:
+                throw new StreamCorruptedException("unexpected message type " + type);
+        }
+    }
+
+    @Override
+    public void sendWaiting(Connection connection, TimerChannel timer) {
+        connection.send(ExamProtocol.waiting(timer.examId(), timer.group().getHostAddress(), timer.port()));
+    }
+
+    @Override
+    public void sendAuthFailed(Connection connection, String message) {
+        connection.send(ExamProtocol.finished(message));
+    }
+
+    @Override
+    public void sendBusy(Connection connection, long retryAfterMillis) {
+        if (version >= ExamProtocol.BUSY_VERSION) {
+            connection.send(ExamProtocol.busy(retryAfterMillis));
+        } else {
+            connection.send(ExamProtocol.finished(WireProtocol.busyMessage(retryAfterMillis)));
+        }
+    }
+
+    @Override
+    public void sendBundle(Connection connection, ExamBundle bundle) {
+        if (version >= ExamProtocol.BUNDLE_VERSION) {
+            this.bundle = bundle;
+            connection.send(bundle.frame());
+        }
+    }
+
+    @Override
+    public void sendStart(Connection connection, QuestionPayloads questions, QuestionOrder order, int position) {
+        // A bundle of a question set that has since been replaced is useless: send the questions in full
+        bundled = bundle != null && bundle.questions() == questions;
+        if (position >= questions.size()) {
+            connection.send(bundled ? bundle.startFrame() : START);
+        } else if (bundled) {
+            connection.send(bundle.startFrame(), bundledFrame(questions, order, position));
+        } else {
+            connection.send(questionFrame(questions, order, position, START));
+        }
+        bundle = null;
+    }
+
+    @Override
+    public void sendQuestion(Connection connection, QuestionPayloads questions, QuestionOrder order, int position) {
+        if (bundled) {
+            connection.send(bundledFrame(questions, order, position));
+        } else {
+            connection.send(questionFrame(questions, order, position, null));
+        }
+    }
+
+    @Override
+    public boolean canReorderOptions() {
+        return true;
+    }
+
+    @Override
+    public int questionsInFlight() {
+        return version >= ExamProtocol.PIPELINED_VERSION ? ServerConfig.QUESTIONS_IN_FLIGHT : 1;
+    }
+
+    @Override
+    public void sendAck(Connection connection, int position) {
+        if (version >= ExamProtocol.PIPELINED_VERSION) {
+            connection.send(ExamProtocol.ack(position));
+        }
+    }
+
+    @Override
+    public boolean canResume() {
+        return version >= ExamProtocol.RESUME_VERSION;
+    }
+
+    @Override
+    public void sendSession(Connection connection, ResumeTable.Token token) {
+        connection.send(ExamProtocol.session(token.bytes()));
+    }
+
+    @Override
+    public void sendResumed(Connection connection, int position) {
+        connection.send(ExamProtocol.resumed(position));
+    }
+
+    @Override
+    public void sendDeadline(Connection connection, long remainingMillis) {
+        if (version >= ExamProtocol.DEADLINE_VERSION) {
+            connection.send(ExamProtocol.deadline(remainingMillis));
+        }
+    }
+
+    // The client has the question's text: name it, and the order of its options
+    private static ByteBuffer bundledFrame(QuestionPayloads questions, QuestionOrder order, int position) {
+        int ordinal = order.question(position);
+        int optionCount = questions.question(ordinal).getOptions().length;
+        return ExamProtocol.bundled(position, ordinal, order.optionOrder(position, optionCount), optionCount);
+    }
+
+    // The question at a position in the student's order, after an optional message to send with it
+    private static ByteBuffer[] questionFrame(QuestionPayloads questions, QuestionOrder order, int position, ByteBuffer before) {
+        int ordinal = order.question(position);
+        ByteBuffer[] parts;
+        if (ordinal == position && order.keepsOptionOrder()) {
+            // Exam order: the whole frame is shared
+            parts = new ByteBuffer[] {questions.binaryFrame(position)};
+        } else {
+            byte[] optionOrder = order.optionOrder(position, questions.question(ordinal).getOptions().length);
+            parts = questions.binaryFrame(position, ordinal, optionOrder);
+        }
+        if (before == null) {
+            return parts;
+        }
+        ByteBuffer[] all = new ByteBuffer[parts.length + 1];
+        all[0] = before;
+        System.arraycopy(parts, 0, all, 1, parts.length);
+        return all;
+    }
+
+    @Override
+    public void sendFinished(Connection connection, String message) {
+        connection.send(ExamProtocol.finished(message));
+    }
+
+    @Override
+    public void sendResult(Connection connection, int percent) {
+        connection.send(ExamProtocol.result(percent));
+    }
+}
@@ -0,0 +1,470 @@
+package server;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-student session state. Holds no thread: the connection engine feeds
+ * received bytes to onInput, and the student's ExamSession calls startExam
+ * when the exam starts. The wire format is chosen from the client's first bytes.
+ *
+ * Each connection is admitted or turned away as busy when it is accepted
+ * (see Admission), and must send its login, and then each answer once in
+ * the exam, within a deadline; a waiting student is closed if START doesn't
+ * come for WAITING_TIMEOUT_MS. When the student's time is up (and a grace
+ * period, for the client to finish first) the server submits what they have
+ * answered. All of these are one timeout on the shared timing wheel, moved
+ * as the student goes (see Deadlines).
+ *
+ * A student is given a session token at login (see ResumeTable). If their
+ * connection drops, their place is kept, and a new connection that sends the
+ * token picks up where they were, without the password or the questions
+ * they already have.
+ */
+class ClientHandler {
+    enum Phase { LOGIN, AUTHENTICATING, WAITING, IN_EXAM, FINISHED }
+
+    private final Connection connection;
+    private WireProtocol protocol;
+    private Phase phase = Phase.LOGIN;
+    private String username;
+    private ExamSession session;
+    // Position of the next answer expected, and how many questions have been sent
+    private int questionIndex = 0;
+    private int questionsSent = 0;
+    private QuestionPayloads questions;
+    private QuestionOrder order;
+    private long questionSentAt;
+    // Nonzero if the connection was turned away at accept: the retry delay its login is answered with
+    private final long busyRetryMillis;
+    private boolean holdsHandshake;
+    // This connection's deadline, and when it is due (0 = none), so one that fired just as it moved is ignored
+    private final TimingWheel.Timeout deadline;
+    private long deadlineNanos;
+    // The current idle limit and when it runs out, and when the student's time is up (0 = no limit)
+    private long idleMillis;
+    private long idleDeadline;
+    private long timeUpAt;
+    // The student's place in ResumeTable, if their client can resume; null once they are done
+    private ResumeTable.Seat seat;
+
+    ClientHandler(Connection connection) {
+        this.connection = connection;
+        deadline = Deadlines.newTimeout(() -> connection.execute(this::onDeadline));
+        ServerMetrics.CONNECTIONS_ACCEPTED.increment();
+        busyRetryMillis = Admission.SERVER.admit();
+        holdsHandshake = busyRetryMillis == 0;
+        expectInputWithin(ServerConfig.LOGIN_TIMEOUT_MS);
+    }
+
+    /**
+     * Handle bytes received from the client
+     * @param buf Received bytes; anything left unread is an incomplete message
+     */
+    synchronized void onInput(ByteBuffer buf) throws IOException {
+        if (protocol == null) {
+            protocol = WireProtocol.negotiate(buf);
+            if (protocol == null) {
+                return;
+            }
+            protocol.onOpen(connection);
+        }
+        protocol.decode(buf, this);
+    }
+
+    /**
+     * @param examCode The exam session to join; null or empty for the default one
+     */
+    void onLogin(String username, String password, String examCode) throws IOException {
+        if (phase != Phase.LOGIN) {
+            throw new StreamCorruptedException("Unexpected login from " + this.username + " in phase " + phase);
+        }
+        this.username = username;
+        cancelDeadline();
+        if (busyRetryMillis > 0) {
+            turnAway(busyRetryMillis);
+            return;
+        }
+        session = ExamSession.find(examCode == null || examCode.isEmpty() ? ServerConfig.DEFAULT_EXAM : examCode);
+        if (session == null) {
+            // Checked before the password, so a mistyped code costs no hashing
+            phase = Phase.FINISHED;
+            releaseHandshake();
+            ServerMetrics.LOGINS_FAILED.increment();
+            protocol.sendAuthFailed(connection, "Authentication failed! No exam with code " + examCode + ".");
+            connection.close();
+            return;
+        }
+        phase = Phase.AUTHENTICATING;
+        long loginStart = System.nanoTime();
+        // Validate credentials on the verifier pool; the result comes back on this connection's thread
+        UserManager.authenticateAsync(username, password).whenComplete((valid, error) ->
+                connection.execute(() -> onAuthenticated(Boolean.TRUE.equals(valid), error, loginStart)));
+    }
+
+    /**
+     * @param error Why the password couldn't be checked, or null if it was
+     */
+    private synchronized void onAuthenticated(boolean valid, Throwable error, long loginStart) {
+        if (phase != Phase.AUTHENTICATING) {
+            return; // disconnected while the password was checked
+        }
+        releaseHandshake();
+        try {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof RejectedExecutionException) {
+                // Too many logins already waiting for a verifier
+                turnAway(Admission.SERVER.retryAfterMillis());
+                return;
+            }
+            if (cause != null || !valid) {
+                phase = Phase.FINISHED;
+                ServerMetrics.LOGINS_FAILED.increment();
+                if (cause != null) {
+                    Log.error(Log.Event.CLIENT_ERROR, username, "password check failed: " + cause);
+                    protocol.sendAuthFailed(connection, "Authentication failed! Your password couldn't be checked, please try again.");
+                } else {
+                    protocol.sendAuthFailed(connection, "Authentication failed! Invalid username or password.");
+                }
+                connection.close();
+                return;
+            }
+            phase = Phase.WAITING;
+            if (ServerConfig.RESUME_WINDOW_MS > 0 && protocol.canResume()) {
+                // Ahead of WAITING, so the client has it as soon as its login returns
+                seat = ResumeTable.issue(username, session, this);
+                protocol.sendSession(connection, seat.token);
+            }
+            protocol.sendWaiting(connection, session.getTimerChannel());
+            long loginNanos = System.nanoTime() - loginStart;
+            Log.latency(Log.Event.WAITING, username, -1, 0, loginNanos);
+            ServerMetrics.LOGINS_OK.increment();
+            ServerMetrics.LOGIN_TIME.record(loginNanos);
+            enterWaitingRoom();
+        } catch (IOException e) {
+            Log.error(Log.Event.CLIENT_ERROR, username, e.getMessage());
+            connection.close();
+        }
+    }
+
+    /**
+     * A student back on a new connection, with the token from their first
+     * one; answered at once, as there is no password to check
+     * @param questionsReceived Questions the client already has, which aren't sent again
+     */
+    void onResume(ResumeTable.Token token, int questionsReceived) throws IOException {
+        if (phase != Phase.LOGIN) {
+            throw new StreamCorruptedException("Unexpected resume in phase " + phase);
+        }
+        cancelDeadline();
+        releaseHandshake();
+        ResumeTable.Claim claim = ResumeTable.claim(token, this);
+        // The old connection may still look open: it closes, and saves where the student was first
+        if (claim == null || (claim.previous() != null && !claim.previous().handOver())) {
+            phase = Phase.FINISHED;
+            if (claim != null) {
+                ResumeTable.release(claim.seat());
+            }
+            ServerMetrics.RESUMES_REFUSED.increment();
+            protocol.sendAuthFailed(connection, "This session can't be resumed, please log in again.");
+            connection.close();
+            return;
+        }
+        seat = claim.seat();
+        username = seat.username;
+        session = seat.session;
+        ServerMetrics.RESUMES.increment();
+        QuestionPayloads started = seat.questions();
+        if (started == null) {
+            Log.event(Log.Event.RESUMED, username, -1);
+            phase = Phase.WAITING;
+            protocol.sendWaiting(connection, session.getTimerChannel());
+            enterWaitingRoom();
+            return;
+        }
+        phase = Phase.IN_EXAM;
+        session.enterExam(this);
+        timeUpAt = session.timeUpAt(username);
+        questions = started;
+        questionIndex = seat.questionIndex();
+        order = new QuestionOrder(session.getShuffleSeed(), username, questions.size(), protocol.canReorderOptions());
+        questionsSent = Math.max(questionIndex, Math.min(questionsReceived, seat.questionsSent()));
+        Log.event(Log.Event.RESUMED, username, questionIndex);
+        protocol.sendResumed(connection, questionIndex);
+        sendAhead();
+        questionSentAt = System.nanoTime();
+        sendOwnDeadline();
+        expectInputWithin(ServerConfig.ANSWER_TIMEOUT_MS);
+    }
+
+    // Wait for START, or begin at once if it has already happened
+    private void enterWaitingRoom() {
+        if (!session.joinWaitingRoom(this)) {
+            startExam();
+            return;
+        }
+        expectInputWithin(ServerConfig.WAITING_TIMEOUT_MS);
+        // Downloaded while waiting; startExam can't run before this returns, as both hold this handler's lock
+        ExamBundle bundle = session.getBundle();
+        if (bundle != null) {
+            protocol.sendBundle(connection, bundle);
+        }
+    }
+
+    void onAnswer(int index, int answer) throws IOException {
+        if (phase != Phase.IN_EXAM || index != questionIndex) {
+            throw new StreamCorruptedException("Unexpected answer from " + username + " for question " + index);
+        }
+        long now = System.nanoTime();
+        // Back to the question and option as written, whatever order this student saw them in
+        int ordinal = order.question(questionIndex);
+        int optionCount = questions.question(ordinal).getOptions().length;
+        if (answer < 1 || answer > optionCount) {
+            throw new StreamCorruptedException("Option " + answer + " from " + username + " for question " + index
+                    + " is out of range (1-" + optionCount + ")");
+        }
+        int option = order.canonicalOption(questionIndex, answer, optionCount);
+        session.getResults().submitAnswer(username, ordinal, option);
+        // With questions sent ahead this is the time since the previous answer, i.e. time spent on this one
+        Log.latency(Log.Event.ANSWER, username, ordinal, option, now - questionSentAt);
+        ServerMetrics.QUESTION_TIME.record(now - questionSentAt);
+        protocol.sendAck(connection, questionIndex);
+        questionIndex++;
+        questionSentAt = now;
+        if (questionIndex < questions.size()) {
+            sendAhead();
+            expectInputWithin(ServerConfig.ANSWER_TIMEOUT_MS);
+        } else {
+            finishWithResult();
+        }
+        ServerMetrics.ANSWER_SERVICE_TIME.record(System.nanoTime() - now);
+    }
+
+    /**
+     * Move a waiting student into the exam: send START and the first question
+     */
+    synchronized void startExam() {
+        if (phase != Phase.WAITING) {
+            return;
+        }
+        try {
+            phase = Phase.IN_EXAM;
+            session.enterExam(this);
+            timeUpAt = session.timeUpAt(username);
+            // Keep this student on the question set they started with, even if it is replaced later
+            questions = session.getQuestions();
+            order = new QuestionOrder(session.getShuffleSeed(), username, questions.size(), protocol.canReorderOptions());
+            session.getResults().examStarted(username);
+            // A student whose answers were recovered after a restart carries on from the first one missing
+            questionIndex = session.getResults().firstUnanswered(username, order);
+            protocol.sendStart(connection, questions, order, questionIndex);
+            questionsSent = Math.min(questionIndex + 1, questions.size());
+            sendAhead();
+            questionSentAt = System.nanoTime();
+            sendOwnDeadline();
+            Log.event(Log.Event.EXAM_STARTED, username);
+            if (questionIndex == questions.size()) {
+                finishWithResult();
+            } else {
+                expectInputWithin(ServerConfig.ANSWER_TIMEOUT_MS);
+            }
+        } catch (IOException e) {
+            Log.error(Log.Event.CLIENT_ERROR, username, e.getMessage());
+            connection.close();
+        }
+    }
+
+    private void sendOwnDeadline() {
+        if (timeUpAt != 0 && session.extraSeconds(username) != 0) {
+            // The timer broadcast counts down everyone's time; this student has their own
+            protocol.sendDeadline(connection, TimeUnit.NANOSECONDS.toMillis(timeUpAt - System.nanoTime()));
+        }
+    }
+
+    // Keep the protocol's number of questions in flight, so on a pipelining
+    // client the next question is already there when an answer goes out
+    private void sendAhead() throws IOException {
+        int limit = Math.min(questions.size(), questionIndex + protocol.questionsInFlight());
+        while (questionsSent < limit) {
+            protocol.sendQuestion(connection, questions, order, questionsSent++);
+        }
+    }
+
+    /**
+     * Called by the engine once the connection is gone, for whatever reason
+     */
+    synchronized void onDisconnect() {
+        ServerMetrics.CONNECTIONS_CLOSED.increment();
+        cancelDeadline();
+        releaseHandshake();
+        if (seat != null && (phase == Phase.WAITING || phase == Phase.IN_EXAM)) {
+            // Maybe only the network: keep their place for a while
+            letGo();
+            ResumeTable.park(seat, this);
+            return;
+        }
+        if (phase == Phase.WAITING) {
+            session.leaveWaitingRoom(this);
+        }
+        if (phase == Phase.IN_EXAM) {
+            session.leaveExam(this);
+            session.getResults().examLeft(username);
+        }
+        if (phase != Phase.FINISHED) {
+            // Client disconnected (possibly due to time expiry) - this is normal
+            Log.event(Log.Event.DISCONNECTED, username);
+            phase = Phase.FINISHED;
+        }
+    }
+
+    /**
+     * The student is back on a newer connection, before this one was found
+     * to be dead: save where they are, for the new one, and close
+     * @return false if they were no longer waiting or in the exam
+     */
+    synchronized boolean handOver() {
+        if (phase != Phase.WAITING && phase != Phase.IN_EXAM) {
+            return false;
+        }
+        letGo();
+        connection.close();
+        return true;
+    }
+
+    // Leave the waiting room or exam, keeping the seat (with where the student is) for whoever resumes it
+    private void letGo() {
+        cancelDeadline();
+        if (phase == Phase.WAITING) {
+            session.leaveWaitingRoom(this);
+            seat.save(null, 0, 0);
+        } else {
+            session.leaveExam(this);
+            seat.save(questions, questionIndex, questionsSent);
+        }
+        phase = Phase.FINISHED;
+    }
+
+    private void releaseSeat() {
+        if (seat != null) {
+            ResumeTable.release(seat);
+            seat = null;
+        }
+    }
+
+    // The client's result screen replaces the old "Exam completed!" message
+    private void finishWithResult() throws IOException {
+        phase = Phase.FINISHED;
+        cancelDeadline();
+        releaseSeat();
+        session.leaveExam(this);
+        ResultManager results = session.getResults();
+        int percent = results.scorePercent(username);
+        protocol.sendResult(connection, percent);
+        connection.close();
+        results.examFinished(username, percent);
+        Log.event(Log.Event.FINISHED, username, percent);
+    }
+
+    // Answer the login with "busy, retry later" and close; the password is never checked
+    private void turnAway(long retryAfterMillis) throws IOException {
+        phase = Phase.FINISHED;
+        ServerMetrics.LOGINS_BUSY.increment();
+        Log.event(Log.Event.BUSY, username, retryAfterMillis);
+        protocol.sendBusy(connection, retryAfterMillis);
+        connection.close();
+    }
+
+    private void releaseHandshake() {
+        if (holdsHandshake) {
+            holdsHandshake = false;
+            Admission.SERVER.handshakeDone();
+        }
+    }
+
+    /**
+     * The student's time has changed (see ExamSession.extendTime): move the
+     * deadline, and tell the client
+     */
+    synchronized void onTimeChanged() {
+        if (phase != Phase.IN_EXAM || timeUpAt == 0) {
+            return;
+        }
+        timeUpAt = session.timeUpAt(username);
+        rescheduleDeadline();
+        Log.event(Log.Event.EXTRA_TIME, username, session.extraSeconds(username));
+        protocol.sendDeadline(connection, TimeUnit.NANOSECONDS.toMillis(timeUpAt - System.nanoTime()));
+    }
+
+    // Close the connection unless the client sends something within the time; replaces any earlier idle limit
+    private void expectInputWithin(long millis) {
+        idleMillis = millis;
+        idleDeadline = millis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis) : 0;
+        rescheduleDeadline();
+    }
+
+    // Whichever comes first: the idle limit, or (in the exam) time up plus grace
+    private void rescheduleDeadline() {
+        long due = idleDeadline;
+        if (phase == Phase.IN_EXAM && timeUpAt != 0) {
+            long submitAt = timeUpAt + TimeUnit.MILLISECONDS.toNanos(ServerConfig.DEADLINE_GRACE_MS);
+            if (due == 0 || submitAt - due < 0) {
+                due = submitAt;
+            }
+        }
+        deadlineNanos = due;
+        if (due == 0) {
+            deadline.cancel();
+        } else {
+            deadline.scheduleAt(due);
+        }
+    }
+
+    private void cancelDeadline() {
+        idleDeadline = 0;
+        deadlineNanos = 0;
+        deadline.cancel();
+    }
+
+    private synchronized void onDeadline() {
+        long now = System.nanoTime();
+        if (deadlineNanos == 0 || now - deadlineNanos < 0 || phase == Phase.FINISHED) {
+            return; // moved or cleared just as it fired
+        }
+        deadlineNanos = 0;
+        try {
+            if (phase == Phase.IN_EXAM && timeUpAt != 0 && now - timeUpAt >= 0) {
+                // Answers already recorded stand; the rest are left unanswered
+                ServerMetrics.EXAMS_EXPIRED.increment();
+                Log.event(Log.Event.TIME_UP, username, questionIndex);
+                finishWithResult();
+                return;
+            }
+            if (phase == Phase.IN_EXAM) {
+                ServerMetrics.ANSWER_TIMEOUTS.increment();
+                Log.event(Log.Event.ANSWER_TIMEOUT, username, idleMillis / 1000);
+                protocol.sendFinished(connection, "⌛ No answer for " + idleMillis / 1000 + " seconds, your exam has been closed.");
+            } else if (phase == Phase.WAITING) {
+                ServerMetrics.WAITING_TIMEOUTS.increment();
+                Log.event(Log.Event.WAITING_TIMEOUT, username, idleMillis / 1000);
+                String limit = idleMillis >= 120_000 ? idleMillis / 60_000 + " minutes" : idleMillis / 1000 + " seconds";
+                protocol.sendFinished(connection, "⌛ The exam did not start within " + limit + ", please log in again.");
+            } else {
+                ServerMetrics.LOGIN_TIMEOUTS.increment();
+                Log.event(Log.Event.LOGIN_TIMEOUT, connection.remoteAddress());
+            }
+        } catch (IOException e) {
+            Log.error(Log.Event.CLIENT_ERROR, username, e.getMessage());
+        }
+        // Closed on purpose, so there's nothing to resume; onDisconnect follows, and records a student who left mid-exam as such
+        releaseSeat();
+        connection.close();
+    }
+
+    Connection getConnection() { return connection; }
+
+    String getUsername() { return username; }
+}
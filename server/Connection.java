@@ -0,0 +1,32 @@
+package server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A client connection as seen by a ClientHandler, independent of the engine
+ * that drives it. All methods are safe to call from any thread.
+ */
+interface Connection {
+    /**
+     * Queue encoded messages for sending; several messages go out in one gathering write
+     * @param messages The bytes to send; the buffers' contents must not be modified afterwards
+     */
+    void send(ByteBuffer... messages);
+
+    /**
+     * Close the connection once everything queued so far has been sent
+     */
+    void close();
+
+    /**
+     * Run a task on behalf of this connection, e.g. to hand back the result
+     * of work done on another pool. The engine picks the thread: never the
+     * caller's, so the caller isn't held up by sends the task makes.
+     */
+    void execute(Runnable task);
+
+    /**
+     * @return the remote address, for log messages
+     */
+    String remoteAddress();
+}
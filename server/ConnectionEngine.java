@@ -0,0 +1,25 @@
+package server;
+
+import java.io.IOException;
+
+/**
+ * Accepts client sockets and feeds their traffic to ClientHandlers.
+ * Selected with -Dtestsync.engine (see ServerConfig).
+ */
+interface ConnectionEngine {
+    /**
+     * Bind the listening socket
+     * @param port The TCP port to listen on
+     */
+    void open(int port) throws IOException;
+
+    /**
+     * Accept connections until the process exits (blocks the calling thread)
+     */
+    void serve() throws IOException;
+
+    /**
+     * @return a short name for startup messages
+     */
+    String name();
+}
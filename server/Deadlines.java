@@ -0,0 +1,24 @@
+package server;
+
+/**
+ * Deadlines for every connection (login, answer and waiting room limits, and
+ * the end of each student's exam), on one shared timing wheel. A task only
+ * hands the expiry to its connection's own thread; nothing else runs on the
+ * wheel, so one slow connection can't delay another's deadline.
+ */
+final class Deadlines {
+    private static final TimingWheel wheel = new TimingWheel("deadlines", ServerConfig.TIMER_TICK_MS);
+
+    private Deadlines() {}
+
+    /**
+     * @param task Run on the wheel's thread each time the timeout, scheduled and moved by its owner, expires
+     */
+    static TimingWheel.Timeout newTimeout(Runnable task) {
+        return wheel.newTimeout(task);
+    }
+
+    static int pending() {
+        return wheel.size();
+    }
+}
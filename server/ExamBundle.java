@@ -0,0 +1,80 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * An exam's questions sealed for download before the exam starts (see
+ * ExamProtocol.BUNDLE). Students fetch the bundle over the waiting period,
+ * whenever they log in, so START only has to carry the 16 byte key and each
+ * question after it is a few bytes naming one in the bundle.
+ *
+ * Built once per question set with a fresh key, and shared: every student
+ * waiting for the exam is sent the same bytes.
+ */
+final class ExamBundle {
+    private static final SecureRandom random = new SecureRandom();
+
+    private final QuestionPayloads questions;
+    private final ByteBuffer frame;
+    private final ByteBuffer startFrame;
+
+    private ExamBundle(QuestionPayloads questions, ByteBuffer frame, ByteBuffer startFrame) {
+        this.questions = questions;
+        this.frame = frame;
+        this.startFrame = startFrame;
+    }
+
+    /**
+     * Compress and encrypt a question set
+     * @return the bundle, or null if there are no questions or they don't fit in one frame
+     */
+    static ExamBundle seal(QuestionPayloads questions) {
+        if (questions.size() == 0) {
+            return null;
+        }
+        int length = 0;
+        for (int i = 0; i < questions.size(); i++) {
+            length += questions.binaryFrame(i).remaining();
+        }
+        ByteBuffer plain = ByteBuffer.allocate(length);
+        for (int i = 0; i < questions.size(); i++) {
+            plain.put(questions.binaryFrame(i));
+        }
+        byte[] key = new byte[ExamProtocol.BUNDLE_KEY_LENGTH];
+        byte[] nonce = new byte[ExamProtocol.BUNDLE_NONCE_LENGTH];
+        random.nextBytes(key);
+        random.nextBytes(nonce);
+        try {
+            ByteBuffer frame = ExamProtocol.bundle(plain.flip(), key, nonce);
+            return new ExamBundle(questions, QuestionPayloads.direct(frame), QuestionPayloads.direct(ExamProtocol.start(key)));
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠️ Questions will be sent at START: " + e.getMessage());
+            return null;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    }
+
+    /**
+     * @return the question set sealed in this bundle
+     */
+    QuestionPayloads questions() {
+        return questions;
+    }
+
+    /**
+     * @return a fresh view of the BUNDLE frame
+     */
+    ByteBuffer frame() {
+        return frame.duplicate();
+    }
+
+    /**
+     * @return a fresh view of the START frame that releases the key
+     */
+    ByteBuffer startFrame() {
+        return startFrame.duplicate();
+    }
+}
@@ -0,0 +1,503 @@
+package server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The binary exam protocol shared by ExamServer and StudentClient.
+ *
+ * A connection opens with a 5 byte hello in each direction (MAGIC + version);
+ * the server answers with the version it will speak. After that every message
+ * is a frame: length of what follows (unsigned LEB128 varint, so one byte for
+ * small messages), byte type, payload. Strings are an unsigned short byte
+ * count followed by UTF-8.
+ *
+ * Version 1 is lock-step: the server sends the next question once the answer
+ * to the last one arrives. From version 2 the server may send questions
+ * ahead of the student's answers (the client shows them in index order and
+ * answers each in turn), and acknowledges every answer with an ACK.
+ *
+ * From version 3 a student waiting for START may be sent a BUNDLE: the
+ * exam's QUESTION frames, deflated and then sealed with AES-GCM. The key only
+ * arrives with START, so the questions can't be read before the exam begins,
+ * and each question after that is a BUNDLED frame of a few bytes naming a
+ * question in the bundle and the order to show its options in.
+ *
+ * From version 4 a login the server can't take yet is answered with BUSY,
+ * carrying how long to wait before trying again, rather than a FINISHED
+ * message the client can only show.
+ *
+ * From version 5 the server sends a student DEADLINE when their own time
+ * differs from the exam's (extra time), after START and whenever it changes,
+ * since the timer broadcast only counts down the exam's time.
+ *
+ * From version 6 a logged-in student is given a SESSION token. If the
+ * connection drops, the client opens a new one with RESUME (the token, and
+ * how many questions it already has) straight after its hello, instead of
+ * AUTH; the server answers RESUMED with the index of the next answer it
+ * expects, then sends on from the first question the client doesn't have.
+ * The client sends again any answers from that index on. Before START,
+ * the answer to RESUME is WAITING.
+ *
+ * A legacy client starts with the ObjectOutputStream header (0xACED...), which
+ * can never match MAGIC, so the server can tell the two apart from the first
+ * four bytes.
+ */
+public final class ExamProtocol {
+    public static final byte[] MAGIC = {'T', 'S', 'Y', 'N'};
+    public static final byte VERSION = 6;
+    // First version with questions sent ahead and ACKs
+    public static final byte PIPELINED_VERSION = 2;
+    // First version with BUNDLE and BUNDLED
+    public static final byte BUNDLE_VERSION = 3;
+    // First version with BUSY
+    public static final byte BUSY_VERSION = 4;
+    // First version with DEADLINE
+    public static final byte DEADLINE_VERSION = 5;
+    // First version with SESSION, RESUME and RESUMED
+    public static final byte RESUME_VERSION = 6;
+    public static final int SESSION_TOKEN_LENGTH = 16;
+    public static final int HELLO_LENGTH = MAGIC.length + 1;
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+    // A question's options are counted, and answers given, in one unsigned byte
+    public static final int MAX_OPTIONS = 255;
+
+    public static final int BUNDLE_KEY_LENGTH = 16;  // AES-128
+    public static final int BUNDLE_NONCE_LENGTH = 12;
+    private static final int BUNDLE_TAG_BITS = 128;
+    // Upper bound on a bundle's inflated size, so a bad length can't exhaust memory
+    private static final int MAX_BUNDLE_LENGTH = 64 << 20;
+
+    // Message types
+    public static final byte AUTH = 1;      // client: username, password, optional exam code
+    public static final byte WAITING = 2;   // server: authenticated, wait for START; u32 exam id, timer group, u16 timer port
+    public static final byte START = 3;     // server: exam has begun; the bundle's key if a BUNDLE was sent
+    public static final byte QUESTION = 4;  // server: u16 index, text, u8 count, options
+    public static final byte ANSWER = 5;    // client: u16 index, u8 option (1-based)
+    public static final byte RESULT = 6;    // server: u8 score in percent
+    public static final byte FINISHED = 7;  // server: closing message; the connection ends after it
+    public static final byte ACK = 8;       // server: u16 index of an answer recorded (version 2+)
+    public static final byte BUNDLE = 9;    // server, while waiting: u32 inflated length, nonce, sealed question frames (version 3+)
+    public static final byte BUNDLED = 10;  // server: u16 index, u16 bundle ordinal, u8 count, option order (u8 each, 0-based) (version 3+)
+    public static final byte BUSY = 11;     // server, instead of WAITING: u32 milliseconds to wait before logging in again (version 4+)
+    public static final byte DEADLINE = 12; // server, in the exam: u32 milliseconds this student has left (version 5+)
+    public static final byte SESSION = 13;  // server, just before WAITING: the session's resume token (version 6+)
+    public static final byte RESUME = 14;   // client, instead of AUTH: token, u16 questions the client already has (version 6+)
+    public static final byte RESUMED = 15;  // server: u16 index of the next answer expected; earlier ones are recorded (version 6+)
+
+    private ExamProtocol() {}
+
+    public static ByteBuffer hello(byte version) {
+        ByteBuffer buf = ByteBuffer.allocate(HELLO_LENGTH);
+        buf.put(MAGIC).put(version);
+        return buf.flip();
+    }
+
+    /**
+     * Check whether the first bytes of a connection are a binary hello
+     * @param buf At least MAGIC.length bytes, starting at position
+     * @return true if they match MAGIC
+     */
+    public static boolean isHello(ByteBuffer buf) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buf.get(buf.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // --- ENCODING (each method returns a complete frame ready to write) ---
+
+    public static ByteBuffer auth(String username, String password) {
+        return auth(username, password, null);
+    }
+
+    /**
+     * @param examCode The exam session to join, or null for the server's default
+     */
+    public static ByteBuffer auth(String username, String password, String examCode) {
+        byte[] user = utf8(username);
+        byte[] pass = utf8(password);
+        byte[] code = examCode == null ? null : utf8(examCode);
+        ByteBuffer buf = frame(AUTH, 2 + user.length + 2 + pass.length + (code == null ? 0 : 2 + code.length));
+        putString(buf, user);
+        putString(buf, pass);
+        if (code != null) {
+            putString(buf, code);
+        }
+        return buf.flip();
+    }
+
+    /**
+     * @param examId The exam's timer packets carry this id
+     * @param group Multicast group of the exam's timer
+     * @param port UDP port of the exam's timer
+     */
+    public static ByteBuffer waiting(int examId, String group, int port) {
+        byte[] address = utf8(group);
+        ByteBuffer buf = frame(WAITING, 4 + 2 + address.length + 2);
+        buf.putInt(examId);
+        putString(buf, address);
+        buf.putShort((short) port);
+        return buf.flip();
+    }
+
+    public static ByteBuffer start() {
+        return frame(START, 0).flip();
+    }
+
+    /**
+     * START for a client that was sent a BUNDLE
+     * @param key The bundle's key
+     */
+    public static ByteBuffer start(byte[] key) {
+        return frame(START, key.length).put(key).flip();
+    }
+
+    /**
+     * Seal question frames into a BUNDLE frame
+     * @param questionFrames QUESTION frames, one after another
+     * @param key AES key, BUNDLE_KEY_LENGTH bytes; never reused with the same nonce
+     * @param nonce BUNDLE_NONCE_LENGTH bytes
+     * @throws IllegalArgumentException if the sealed bundle is too big for a frame
+     */
+    public static ByteBuffer bundle(ByteBuffer questionFrames, byte[] key, byte[] nonce) throws GeneralSecurityException {
+        byte[] plain = new byte[questionFrames.remaining()];
+        questionFrames.duplicate().get(plain);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(plain.length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(plain);
+            deflater.finish();
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+        } finally {
+            deflater.end();
+        }
+        Cipher cipher = bundleCipher(Cipher.ENCRYPT_MODE, key, nonce, plain.length);
+        byte[] sealed = cipher.doFinal(compressed.toByteArray());
+        if (1 + 4 + nonce.length + sealed.length > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("bundle of " + sealed.length + " bytes is too big for a frame");
+        }
+        ByteBuffer buf = frame(BUNDLE, 4 + nonce.length + sealed.length);
+        return buf.putInt(plain.length).put(nonce).put(sealed).flip();
+    }
+
+    /**
+     * @param ordinal The question's place in the bundle
+     * @param optionOrder Bundle option (0-based) for each option shown, in order
+     * @param optionCount Number of options
+     */
+    public static ByteBuffer bundled(int index, int ordinal, byte[] optionOrder, int optionCount) {
+        ByteBuffer buf = frame(BUNDLED, 2 + 2 + 1 + optionCount);
+        buf.putShort((short) index).putShort((short) ordinal).put((byte) optionCount);
+        return buf.put(optionOrder, 0, optionCount).flip();
+    }
+
+    public static ByteBuffer question(int index, Question q) {
+        byte[] text = utf8(q.getQuestionText());
+        String[] options = q.getOptions();
+        byte[][] opts = new byte[options.length][];
+        int size = 2 + 2 + text.length + 1;
+        for (int i = 0; i < options.length; i++) {
+            opts[i] = utf8(options[i]);
+            size += 2 + opts[i].length;
+        }
+        ByteBuffer buf = frame(QUESTION, size);
+        buf.putShort((short) index);
+        putString(buf, text);
+        buf.put((byte) opts.length);
+        for (byte[] opt : opts) {
+            putString(buf, opt);
+        }
+        return buf.flip();
+    }
+
+    /**
+     * Length, type and index of a QUESTION frame, for a body sent from separate buffers
+     * @param length Frame length: type, index and body
+     */
+    static ByteBuffer questionHeader(int index, int length) {
+        ByteBuffer buf = ByteBuffer.allocate(lengthSize(length) + 1 + 2);
+        putLength(buf, length);
+        return buf.put(QUESTION).putShort((short) index).flip();
+    }
+
+    /**
+     * @param token SESSION_TOKEN_LENGTH bytes
+     */
+    public static ByteBuffer session(byte[] token) {
+        return frame(SESSION, token.length).put(token).flip();
+    }
+
+    /**
+     * @param token The token from SESSION
+     * @param questionsReceived Questions the client already has, so they aren't sent again
+     */
+    public static ByteBuffer resume(byte[] token, int questionsReceived) {
+        return frame(RESUME, token.length + 2).put(token).putShort((short) questionsReceived).flip();
+    }
+
+    /**
+     * @param nextIndex Index of the next answer the server expects
+     */
+    public static ByteBuffer resumed(int nextIndex) {
+        return frame(RESUMED, 2).putShort((short) nextIndex).flip();
+    }
+
+    public static ByteBuffer answer(int index, int option) {
+        return frame(ANSWER, 3).putShort((short) index).put((byte) option).flip();
+    }
+
+    public static ByteBuffer ack(int index) {
+        return frame(ACK, 2).putShort((short) index).flip();
+    }
+
+    public static ByteBuffer result(int scorePercent) {
+        return frame(RESULT, 1).put((byte) scorePercent).flip();
+    }
+
+    /**
+     * @param retryAfterMillis How long the client should wait before logging in again
+     */
+    public static ByteBuffer busy(long retryAfterMillis) {
+        return frame(BUSY, 4).putInt((int) Math.min(retryAfterMillis, Integer.MAX_VALUE)).flip();
+    }
+
+    /**
+     * @param remainingMillis Time this student has left, from when it is sent
+     */
+    public static ByteBuffer deadline(long remainingMillis) {
+        return frame(DEADLINE, 4).putInt((int) Math.max(0, Math.min(remainingMillis, Integer.MAX_VALUE))).flip();
+    }
+
+    public static ByteBuffer finished(String message) {
+        byte[] text = utf8(message);
+        ByteBuffer buf = frame(FINISHED, 2 + text.length);
+        putString(buf, text);
+        return buf.flip();
+    }
+
+    // --- DECODING (payload = frame contents after the type byte) ---
+
+    public static Question readQuestion(ByteBuffer payload) {
+        payload.getShort(); // index, read separately with questionIndex()
+        String text = getString(payload);
+        String[] options = new String[payload.get() & 0xFF];
+        for (int i = 0; i < options.length; i++) {
+            options[i] = getString(payload);
+        }
+        // The client never learns the correct option
+        return new Question(text, options, 0);
+    }
+
+    /**
+     * Decrypt and unpack a BUNDLE
+     * @param payload The BUNDLE frame after its type byte
+     * @param key The key START brought
+     * @return the bundle's questions, in bundle order
+     */
+    public static Question[] openBundle(ByteBuffer payload, byte[] key) throws IOException {
+        if (key.length != BUNDLE_KEY_LENGTH) {
+            throw new IOException("exam bundle key is " + key.length + " bytes, not " + BUNDLE_KEY_LENGTH);
+        }
+        ByteBuffer data = payload.duplicate();
+        int plainLength = data.getInt();
+        if (plainLength < 0 || plainLength > MAX_BUNDLE_LENGTH) {
+            throw new StreamCorruptedException("bad bundle length " + plainLength);
+        }
+        byte[] nonce = new byte[BUNDLE_NONCE_LENGTH];
+        data.get(nonce);
+        byte[] sealed = new byte[data.remaining()];
+        data.get(sealed);
+        byte[] compressed;
+        try {
+            compressed = bundleCipher(Cipher.DECRYPT_MODE, key, nonce, plainLength).doFinal(sealed);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("could not decrypt the exam bundle", e);
+        }
+
+        byte[] plain = new byte[plainLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < plainLength && !inflater.finished()) {
+                int read = inflater.inflate(plain, n, plainLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != plainLength || !inflater.finished()) {
+                throw new StreamCorruptedException("exam bundle is not " + plainLength + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("bad exam bundle: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        List<Question> questions = new ArrayList<>();
+        ByteBuffer frames = ByteBuffer.wrap(plain);
+        while (frames.hasRemaining()) {
+            int length = getLength(frames);
+            if (length < 1 || length > frames.remaining()) {
+                throw new StreamCorruptedException("bad frame in exam bundle");
+            }
+            ByteBuffer frame = frames.slice(frames.position(), length);
+            frames.position(frames.position() + length);
+            if (frame.get() != QUESTION) {
+                throw new StreamCorruptedException("exam bundle holds a message other than a question");
+            }
+            questions.add(readQuestion(frame));
+        }
+        return questions.toArray(new Question[0]);
+    }
+
+    /**
+     * @param bundle Questions from openBundle
+     * @return the question a BUNDLED frame names, with its options in the order given
+     */
+    public static Question readBundled(ByteBuffer payload, Question[] bundle) throws StreamCorruptedException {
+        payload.getShort(); // index, read separately with questionIndex()
+        int ordinal = payload.getShort() & 0xFFFF;
+        if (ordinal >= bundle.length) {
+            throw new StreamCorruptedException("no question " + ordinal + " in the exam bundle");
+        }
+        String[] bundleOptions = bundle[ordinal].getOptions();
+        String[] options = new String[payload.get() & 0xFF];
+        for (int i = 0; i < options.length; i++) {
+            int option = payload.get() & 0xFF;
+            if (option >= bundleOptions.length) {
+                throw new StreamCorruptedException("no option " + option + " in bundled question " + ordinal);
+            }
+            options[i] = bundleOptions[option];
+        }
+        return new Question(bundle[ordinal].getQuestionText(), options, 0);
+    }
+
+    public static int questionIndex(ByteBuffer payload) {
+        return payload.getShort(payload.position()) & 0xFFFF;
+    }
+
+    public static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // --- BLOCKING I/O (used by the client) ---
+
+    /**
+     * Read one frame
+     * @return a buffer positioned at the type byte, limit at the end of the payload
+     */
+    public static ByteBuffer readFrame(DataInputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            if (shift >= 21) {
+                throw new StreamCorruptedException("bad frame length");
+            }
+        }
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("bad frame length " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return ByteBuffer.wrap(data);
+    }
+
+    public static void writeFrame(OutputStream out, ByteBuffer frame) throws IOException {
+        ByteBuffer data = frame.duplicate();
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Decode a frame length from a buffer without blocking
+     * @return the length with the position moved past it, or -1 (position unchanged) if incomplete
+     */
+    public static int getLength(ByteBuffer buf) throws StreamCorruptedException {
+        int start = buf.position();
+        int length = 0;
+        for (int shift = 0; buf.hasRemaining(); shift += 7) {
+            int b = buf.get() & 0xFF;
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return length;
+            }
+            if (shift >= 21) {
+                throw new StreamCorruptedException("bad frame length");
+            }
+        }
+        buf.position(start);
+        return -1;
+    }
+
+    // The inflated length is authenticated too, so it can't be altered to size the buffer
+    private static Cipher bundleCipher(int mode, byte[] key, byte[] nonce, int plainLength) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(BUNDLE_TAG_BITS, nonce));
+        cipher.updateAAD(ByteBuffer.allocate(4).putInt(plainLength).array());
+        return cipher;
+    }
+
+    private static ByteBuffer frame(byte type, int payloadLength) {
+        int length = 1 + payloadLength;
+        ByteBuffer buf = ByteBuffer.allocate(lengthSize(length) + length);
+        putLength(buf, length);
+        return buf.put(type);
+    }
+
+    static int lengthSize(int length) {
+        int size = 1;
+        while ((length >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    static void putLength(ByteBuffer buf, int length) {
+        while ((length & ~0x7F) != 0) {
+            buf.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buf.put((byte) length);
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("string too long for protocol: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] bytes) {
+        buf.putShort((short) bytes.length).put(bytes);
+    }
+}
@@ -1,146 +1,135 @@
 package server;
 
 import java.io.*;
-import java.net.*;
+import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.*;
 
 public class ExamServer {
-    private static final int PORT = 12345;
-    private static List<Question> questions = new ArrayList<>();
-    private static ExecutorService pool = Executors.newFixedThreadPool(10);
-    private static volatile boolean examStarted = false;
-    private static List<ClientHandler> waitingClients = Collections.synchronizedList(new ArrayList<>());
+    private static final int DEFAULT_EXAM_LENGTH = 20;
+
+    private static QuestionBank bank;
+    private static QuestionPayloads sampleQuestions;
 
     public static void main(String[] args) throws IOException {
-        // Sample questions
-        questions.add(new Question("What is 2+2?", new String[]{"3","4","5","6"}, 2));
-        questions.add(new Question("Capital of Sri Lanka?", new String[]{"Colombo","Kandy","Galle","Jaffna"}, 1));
-        questions.add(new Question("Java is ___", new String[]{"Programming language","Coffee","OS","Browser"}, 1));
+        Path bankFile = Paths.get(ServerConfig.QUESTION_BANK);
+        if (Files.isRegularFile(bankFile)) {
+            bank = QuestionBank.open(bankFile, ServerConfig.QUESTION_CACHE);
+            System.out.println("📚 Question bank " + bankFile + ": " + bank.size() + " question(s)");
+        } else {
+            // Sample questions
+            List<Question> questions = new ArrayList<>();
+            questions.add(new Question("What is 2+2?", new String[]{"3","4","5","6"}, 2));
+            questions.add(new Question("Capital of Sri Lanka?", new String[]{"Colombo","Kandy","Galle","Jaffna"}, 1));
+            questions.add(new Question("Java is ___", new String[]{"Programming language","Coffee","OS","Browser"}, 1));
+            // Every session opened with the sample set shares these encoded buffers
+            sampleQuestions = new QuestionPayloads(questions);
+        }
+        ExamSession.open(ServerConfig.DEFAULT_EXAM, loadQuestions(ServerConfig.EXAM_QUESTIONS));
 
         // Start a thread to monitor for exam start command
         new Thread(() -> {
             Scanner scanner = new Scanner(System.in);
             System.out.println("\n⏳ Server ready. Type 'START' and press Enter to begin the exam for all connected students:");
-            while (true) {
-                String command = scanner.nextLine().trim().toUpperCase();
-                if (command.equals("START") && !examStarted) {
-                    examStarted = true;
-                    System.out.println("\n🚀 EXAM STARTED! Notifying " + waitingClients.size() + " connected student(s)...\n");
-                    notifyAllClients();
-                    break;
+            System.out.println("   (LEADERBOARD and STATS show live scores at any time; REPORT writes the full results)");
+            System.out.println("   Other classes: OPEN <code> [start in seconds], then START <code>, LEADERBOARD <code>, ...;");
+            System.out.println("   SESSIONS lists them and CLOSE <code> removes one. Students log in with the code.");
+            System.out.println("   QUESTIONS <code> <numbers, e.g. 1-40,97> picks an exam's questions from the bank before it starts.");
+            System.out.println("   EXTEND <code> <username> <seconds> gives a student extra time, even mid-exam.");
+            while (scanner.hasNextLine()) {
+                // Usernames are case-sensitive; exam codes are normalized by ExamSession
+                String[] words = scanner.nextLine().trim().split("\\s+");
+                words[0] = words[0].toUpperCase();
+                try {
+                    runCommand(words);
+                } catch (IllegalArgumentException | IOException e) {
+                    System.out.println("⚠️ " + e.getMessage());
                 }
             }
         }).start();
 
-        ServerSocket serverSocket = new ServerSocket(PORT);
-        System.out.println("✅ Exam Server started on port " + PORT);
-
-        while (true) {
-            Socket clientSocket = serverSocket.accept();
-            ClientHandler handler = new ClientHandler(clientSocket);
-            pool.execute(handler);
-        }
+        ConnectionEngine engine = ServerConfig.createEngine();
+        engine.open(ServerConfig.PORT);
+        System.out.println("✅ Exam Server started on port " + ServerConfig.PORT + " (" + engine.name() + " engine)");
+        ServerMetrics.publish();
+        engine.serve();
     }
 
-    private static synchronized void notifyAllClients() {
-        // Notify all waiting clients
-        for (ClientHandler client : waitingClients) {
-            client.startExam();
-        }
-        waitingClients.clear();
-        
-        // Broadcast START signal to TimerBroadcaster via UDP
-        try {
-            DatagramSocket udpSocket = new DatagramSocket();
-            String startSignal = "START_EXAM";
-            byte[] buffer = startSignal.getBytes();
-            InetAddress address = InetAddress.getByName("localhost");
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, address, 9877);
-            udpSocket.send(packet);
-            udpSocket.close();
-            System.out.println("📡 START signal sent to TimerBroadcaster");
-        } catch (Exception e) {
-            System.err.println("⚠️ Warning: Could not send START signal to broadcaster: " + e.getMessage());
+    private static void runCommand(String[] words) throws IOException {
+        String command = words[0];
+        switch (command) {
+            case "START" -> session(words).start();
+            case "LEADERBOARD" -> session(words).getResults().printLeaderboard(10);
+            case "STATS" -> session(words).getResults().printQuestionStats();
+            case "REPORT" -> session(words).getResults().printAllResults();
+            case "OPEN" -> {
+                if (words.length < 2) {
+                    throw new IllegalArgumentException("Usage: OPEN <code> [start in seconds]");
+                }
+                ExamSession session = ExamSession.open(words[1], loadQuestions(ServerConfig.EXAM_QUESTIONS));
+                if (words.length > 2) {
+                    session.scheduleStart(Long.parseLong(words[2]));
+                }
+                System.out.println("📂 Exam " + session + " is open");
+            }
+            case "QUESTIONS" -> {
+                if (words.length < 3) {
+                    throw new IllegalArgumentException("Usage: QUESTIONS <code> <question numbers, e.g. 1-40,97>");
+                }
+                ExamSession session = session(words);
+                if (!session.setQuestions(loadQuestions(words[2]))) {
+                    throw new IllegalArgumentException("Exam " + session.getCode() + " has already started");
+                }
+                System.out.println("📝 Exam " + session);
+            }
+            case "EXTEND" -> {
+                if (words.length < 4) {
+                    throw new IllegalArgumentException("Usage: EXTEND <code> <username> <seconds>");
+                }
+                int extra = session(words).extendTime(words[2], Integer.parseInt(words[3]));
+                System.out.println("⏳ " + words[2] + " has " + extra + " s of extra time in exam " + words[1].toUpperCase());
+            }
+            case "CLOSE" -> {
+                ExamSession session = session(words);
+                session.close();
+                System.out.println("📁 Exam " + session.getCode() + " closed");
+            }
+            case "SESSIONS" -> {
+                for (ExamSession session : ExamSession.all()) {
+                    System.out.println("• " + session);
+                }
+            }
+            default -> { }
         }
     }
 
-    static class ClientHandler implements Runnable {
-        private Socket socket;
-        private ObjectOutputStream out;
-        private ObjectInputStream in;
-        private String username;
-        private boolean readyToStart = false;
-
-        public ClientHandler(Socket socket) { 
-            this.socket = socket; 
+    /**
+     * Load an exam's questions from the bank and encode them for the wire,
+     * once, so START doesn't have to serialize anything per student
+     * @param numbers Bank question numbers; empty for the first DEFAULT_EXAM_LENGTH
+     */
+    private static QuestionPayloads loadQuestions(String numbers) throws IOException {
+        if (bank == null) {
+            if (!numbers.isEmpty()) {
+                throw new IllegalArgumentException("No question bank (" + ServerConfig.QUESTION_BANK + ") to pick from");
+            }
+            return sampleQuestions;
         }
-
-        public synchronized void startExam() {
-            readyToStart = true;
-            notify();
+        if (numbers.isEmpty()) {
+            if (bank.size() == 0) {
+                return new QuestionPayloads(Collections.emptyList());
+            }
+            numbers = "1-" + Math.min(bank.size(), DEFAULT_EXAM_LENGTH);
         }
+        return new QuestionPayloads(bank.select(numbers));
+    }
 
-        public void run() {
-            try {
-                out = new ObjectOutputStream(socket.getOutputStream());
-                in = new ObjectInputStream(socket.getInputStream());
-
-                // Authenticate with UserManager
-                out.writeObject("Enter username:");
-                username = (String) in.readObject();
-                out.writeObject("Enter password:");
-                String password = (String) in.readObject();
-                
-                // Validate credentials
-                if (!UserManager.authenticate(username, password)) {
-                    out.writeObject("Authentication failed! Invalid username or password.");
-                    socket.close();
-                    return;
-                }
-                
-                out.writeObject("Authentication successful!");
-                
-                // Add to waiting list and send waiting status
-                waitingClients.add(this);
-                out.writeObject("WAITING"); // Signal client to show waiting screen
-                out.flush();
-                
-                System.out.println("👤 " + username + " connected and waiting for exam to start...");
-                
-                // Wait until exam starts
-                synchronized (this) {
-                    while (!readyToStart && !examStarted) {
-                        try {
-                            wait();
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-                
-                // Send START signal
-                out.writeObject("START");
-                out.flush();
-                System.out.println("📝 Sending questions to " + username);
-
-                // Send questions
-                for (Question q : questions) {
-                    out.writeObject(q);
-                    int answer = in.readInt();
-                    ResultManager.submitAnswer(username, q, answer);
-                }
-
-                out.writeObject("Exam completed! Thank you.");
-                ResultManager.printAllResults();
-                socket.close();
-            } catch (EOFException | SocketException e) {
-                // Client disconnected (possibly due to time expiry) - this is normal
-                System.out.println("⏰ " + username + " disconnected (exam time may have expired)");
-            } catch (Exception e) {
-                System.err.println("Error handling client " + username + ": " + e.getMessage());
-                e.printStackTrace();
-            }
+    // The session a console command names, or the default one
+    private static ExamSession session(String[] words) {
+        String code = words.length > 1 ? words[1] : ServerConfig.DEFAULT_EXAM;
+        ExamSession session = ExamSession.find(code);
+        if (session == null) {
+            throw new IllegalArgumentException("No exam with code " + code);
         }
+        return session;
     }
 }
@@ -0,0 +1,332 @@
+package server;
+
+import broadcaster.TimerChannel;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * One exam, run independently of any others on the same server: its own
+ * question set, waiting room, timer channel and result shard. Students pick
+ * a session by code when they log in.
+ *
+ * Sessions share nothing on the student path; each has its own lock, store
+ * and journal, so one class starting or answering never waits for another.
+ * An idle session is only a few objects: the journal (with its flush thread
+ * and buffers) is opened when the exam starts, or when the session is created
+ * if a crash left answers in it to recover, and a scheduled start is one task
+ * on a shared timer thread.
+ *
+ * Each student's time runs from START for the exam's length plus any extra
+ * time they have (the accommodations file, or EXTEND on the console); their
+ * handler submits for them when it is up.
+ */
+final class ExamSession {
+    // Codes end up in journal directory names, so keep them plain
+    private static final Pattern CODE = Pattern.compile("[A-Z0-9_-]{1,32}");
+    private static final int BROADCASTER_PORT = 9877;
+
+    private static final ConcurrentHashMap<String, ExamSession> sessions = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "exam-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final SecureRandom random = new SecureRandom();
+    private static final Map<String, Integer> accommodations = loadAccommodations();
+
+    static {
+        // Flush every open journal on a normal shutdown (Ctrl+C)
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (ExamSession session : sessions.values()) {
+                if (session.results.closeJournal()) {
+                    System.out.println("📁 Answers for exam " + session.code + " journaled; to carry on with them,"
+                            + " restart with -Dtestsync.recover=" + session.code);
+                }
+            }
+        }));
+    }
+
+    private final String code;
+    // This exam's timer multicast group, announced to students at login
+    private final TimerChannel timerChannel = TimerChannel.forExam(random.nextInt() | 1);
+    private final ResultManager results;
+    // Seeds every student's question and option order; null when shuffling is off
+    private final Long shuffleSeed;
+    private volatile QuestionPayloads questions;
+    // The questions sealed for waiting students to download; null if they aren't
+    private volatile ExamBundle bundle;
+    // System.nanoTime() of START, once started
+    private volatile long startedAt;
+    // Extra seconds by username, starting from the accommodations file
+    private final ConcurrentHashMap<String, Integer> extraSeconds = new ConcurrentHashMap<>(accommodations);
+    // Students in the exam now, so extra time reaches them
+    private final ConcurrentHashMap<String, ClientHandler> running = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private boolean started = false;
+    private final List<ClientHandler> waitingClients = new ArrayList<>();
+    private ScheduledFuture<?> scheduledStart;
+
+    private ExamSession(String code, QuestionPayloads questions) {
+        this.code = code;
+        this.questions = questions;
+        this.bundle = sealIfEnabled(questions);
+        this.results = new ResultManager(code, questions);
+        if (!ServerConfig.SHUFFLE) {
+            shuffleSeed = null;
+        } else if (ServerConfig.SHUFFLE_SEED != null) {
+            // Reproducible, but still different for each exam
+            shuffleSeed = ServerConfig.SHUFFLE_SEED ^ code.hashCode();
+        } else {
+            shuffleSeed = random.nextLong();
+        }
+    }
+
+    /**
+     * Create a session
+     * @param code The code students log in with (case doesn't matter)
+     * @param questions The exam's questions, already encoded
+     * @throws IllegalArgumentException if the code is malformed or already in use
+     */
+    static ExamSession open(String code, QuestionPayloads questions) {
+        String key = normalize(code);
+        if (!CODE.matcher(key).matches()) {
+            throw new IllegalArgumentException("Exam codes are 1-32 letters, digits, '-' or '_'");
+        }
+        ExamSession session = new ExamSession(key, questions);
+        if (sessions.putIfAbsent(key, session) != null) {
+            throw new IllegalArgumentException("Exam " + key + " is already open");
+        }
+        // Only once the code is ours: the journal directory is named after it
+        session.results.recoverJournal();
+        return session;
+    }
+
+    /**
+     * @return the session with this code, or null if there isn't one
+     */
+    static ExamSession find(String code) {
+        return sessions.get(normalize(code));
+    }
+
+    static Collection<ExamSession> all() {
+        return sessions.values();
+    }
+
+    private static Map<String, Integer> loadAccommodations() {
+        Path file = Paths.get(ServerConfig.ACCOMMODATIONS_FILE);
+        Map<String, Integer> extra = new HashMap<>();
+        if (!Files.exists(file)) {
+            return extra;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2 || !fields[1].matches("-?\\d{1,6}")) {
+                    throw new IllegalStateException("Bad line in " + file + " (expected \"username seconds\"): " + line);
+                }
+                extra.put(fields[0], Integer.parseInt(fields[1]));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not load accommodations " + file + ": " + e.getMessage(), e);
+        }
+        System.out.println("⏳ " + extra.size() + " student(s) with extra time, from " + file);
+        return extra;
+    }
+
+    private static ExamBundle sealIfEnabled(QuestionPayloads questions) {
+        return ServerConfig.BUNDLE ? ExamBundle.seal(questions) : null;
+    }
+
+    private static String normalize(String code) {
+        return code.trim().toUpperCase(Locale.ROOT);
+    }
+
+    String getCode() {
+        return code;
+    }
+
+    TimerChannel getTimerChannel() {
+        return timerChannel;
+    }
+
+    QuestionPayloads getQuestions() {
+        return questions;
+    }
+
+    ResultManager getResults() {
+        return results;
+    }
+
+    Long getShuffleSeed() {
+        return shuffleSeed;
+    }
+
+    /**
+     * @return the sealed questions to send a waiting student, or null to send them at START
+     */
+    ExamBundle getBundle() {
+        return bundle;
+    }
+
+    /**
+     * Replace the question set; only before the exam starts
+     * @return false if it has already started
+     */
+    synchronized boolean setQuestions(QuestionPayloads questionSet) {
+        if (started) {
+            return false;
+        }
+        results.useQuestions(questionSet);
+        results.recoverJournal();
+        questions = questionSet;
+        // Students already waiting hold the old bundle, and are sent the new questions in full at START
+        bundle = sealIfEnabled(questionSet);
+        return true;
+    }
+
+    /**
+     * Put an authenticated student in the waiting room
+     * @param client The student's handler
+     * @return false if the exam has already started and the student should begin right away
+     */
+    synchronized boolean joinWaitingRoom(ClientHandler client) {
+        if (started) {
+            return false;
+        }
+        waitingClients.add(client);
+        return true;
+    }
+
+    synchronized void leaveWaitingRoom(ClientHandler client) {
+        waitingClients.remove(client);
+    }
+
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    synchronized int waitingCount() {
+        return waitingClients.size();
+    }
+
+    /**
+     * Start the exam after a delay, on the shared timer thread
+     */
+    synchronized void scheduleStart(long delaySeconds) {
+        if (scheduledStart != null) {
+            scheduledStart.cancel(false);
+        }
+        scheduledStart = scheduler.schedule(this::start, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Release the waiting room and start the exam's timer
+     * @return false if it had already started
+     */
+    boolean start() {
+        List<ClientHandler> released;
+        synchronized (this) {
+            if (started) {
+                return false;
+            }
+            started = true;
+            startedAt = System.nanoTime();
+            if (scheduledStart != null) {
+                scheduledStart.cancel(false);
+                scheduledStart = null;
+            }
+            released = new ArrayList<>(waitingClients);
+            waitingClients.clear();
+            // Recover anything already journaled before the first answer comes in
+            results.beginExam();
+        }
+        System.out.println("\n🚀 EXAM " + code + " STARTED! Notifying " + released.size() + " connected student(s)...\n");
+
+        // Notify all waiting clients, in parallel on their own connection threads
+        StartFanOut.release(released);
+
+        // Broadcast START signal to TimerBroadcaster via UDP
+        try (DatagramSocket udpSocket = new DatagramSocket()) {
+            byte[] buffer = timerChannel.startMessage(ServerConfig.EXAM_SECONDS).getBytes(StandardCharsets.UTF_8);
+            udpSocket.send(new DatagramPacket(buffer, buffer.length, InetAddress.getByName("localhost"), BROADCASTER_PORT));
+            System.out.println("📡 START signal for exam " + code + " sent to TimerBroadcaster");
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning: Could not send START signal to broadcaster: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * @return System.nanoTime() when this student's time is up, or 0 if the
+     *         exam has no time limit or hasn't started
+     */
+    long timeUpAt(String username) {
+        if (ServerConfig.EXAM_SECONDS <= 0 || startedAt == 0) {
+            return 0;
+        }
+        return startedAt + TimeUnit.SECONDS.toNanos(ServerConfig.EXAM_SECONDS + extraSeconds(username));
+    }
+
+    int extraSeconds(String username) {
+        return extraSeconds.getOrDefault(username, 0);
+    }
+
+    /**
+     * Give a student more time (or, if negative, less), now or before they start
+     * @return the student's extra time in total, in seconds
+     */
+    int extendTime(String username, int seconds) {
+        int extra = extraSeconds.merge(username, seconds, Integer::sum);
+        ClientHandler client = running.get(username);
+        if (client != null) {
+            client.getConnection().execute(client::onTimeChanged);
+        }
+        return extra;
+    }
+
+    void enterExam(ClientHandler client) {
+        running.put(client.getUsername(), client);
+    }
+
+    void leaveExam(ClientHandler client) {
+        running.remove(client.getUsername(), client);
+    }
+
+    /**
+     * Remove the session: new logins can't find it, and its journal is
+     * flushed and closed, for good: the next exam with this code starts
+     * with an empty one. Students already in it keep going, though their
+     * answers are no longer journaled.
+     */
+    void close() {
+        synchronized (this) {
+            if (scheduledStart != null) {
+                scheduledStart.cancel(false);
+            }
+        }
+        sessions.remove(code, this);
+        results.closeJournal();
+    }
+
+    @Override
+    public String toString() {
+        return code + " (" + (isStarted() ? "started" : waitingCount() + " waiting") + ", "
+                + questions.size() + " questions, timer " + timerChannel + ")";
+    }
+}
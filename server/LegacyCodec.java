@@ -0,0 +1,158 @@
+package server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Encoder/decoder for the original ObjectOutputStream based protocol, usable
+ * from non-blocking code. The server never holds an ObjectOutputStream per
+ * client: every message is written as TC_RESET followed by the object, so
+ * each encoded message is independent of what was sent before it.
+ */
+final class LegacyCodec {
+    static final byte[] STREAM_HEADER = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+
+    private static final byte TC_NULL = 0x70;
+    private static final byte TC_REFERENCE = 0x71;
+    private static final byte TC_STRING = 0x74;
+    private static final byte TC_BLOCKDATA = 0x77;
+    private static final byte TC_RESET = 0x79;
+    private static final byte TC_BLOCKDATALONG = 0x7A;
+    private static final int BASE_WIRE_HANDLE = 0x7E0000;
+
+    private LegacyCodec() {}
+
+    static ByteBuffer streamHeader() {
+        return ByteBuffer.wrap(STREAM_HEADER).asReadOnlyBuffer();
+    }
+
+    /**
+     * Serialize a single object as a self-contained message (without the stream header)
+     * @param obj The object to encode
+     * @return a read-only buffer holding TC_RESET followed by the object
+     */
+    static ByteBuffer encode(Object obj) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.reset();
+            oos.writeObject(obj);
+        }
+        byte[] bytes = bos.toByteArray();
+        return ByteBuffer.wrap(bytes, STREAM_HEADER.length, bytes.length - STREAM_HEADER.length)
+                .slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Incremental decoder for what the client writes: a stream header, Strings
+     * (username/password) and ints (answers, sent as block data).
+     */
+    static final class Decoder {
+        private boolean headerRead = false;
+        private List<String> handles;
+        private int blockRemaining = 0;
+        private int partialInt = 0;
+        private int partialBytes = 0;
+
+        /**
+         * Decode every complete value in the buffer. Incomplete trailing bytes are
+         * left in the buffer (position points at them) for the next call.
+         * @param buf Bytes received from the client, ready for reading
+         * @param sink Receives each decoded String or Integer
+         */
+        void decode(ByteBuffer buf, Consumer<Object> sink) throws IOException {
+            if (!headerRead) {
+                if (buf.remaining() < STREAM_HEADER.length) {
+                    return;
+                }
+                for (byte b : STREAM_HEADER) {
+                    if (buf.get() != b) {
+                        throw new StreamCorruptedException("invalid stream header");
+                    }
+                }
+                headerRead = true;
+            }
+
+            while (buf.hasRemaining()) {
+                // Inside a block: ints may arrive split across reads
+                if (blockRemaining > 0) {
+                    partialInt = (partialInt << 8) | (buf.get() & 0xFF);
+                    blockRemaining--;
+                    if (++partialBytes == 4) {
+                        sink.accept(partialInt);
+                        partialInt = 0;
+                        partialBytes = 0;
+                    }
+                    continue;
+                }
+
+                int start = buf.position();
+                byte tc = buf.get();
+                switch (tc) {
+                    case TC_BLOCKDATA:
+                        if (!buf.hasRemaining()) {
+                            buf.position(start);
+                            return;
+                        }
+                        blockRemaining = buf.get() & 0xFF;
+                        break;
+                    case TC_BLOCKDATALONG:
+                        if (buf.remaining() < 4) {
+                            buf.position(start);
+                            return;
+                        }
+                        blockRemaining = buf.getInt();
+                        if (blockRemaining < 0 || blockRemaining > WireProtocol.MAX_INBOUND_MESSAGE) {
+                            throw new StreamCorruptedException("bad block length " + blockRemaining);
+                        }
+                        break;
+                    case TC_STRING: {
+                        if (buf.remaining() < 2) {
+                            buf.position(start);
+                            return;
+                        }
+                        int len = buf.getShort() & 0xFFFF;
+                        if (len > WireProtocol.MAX_INBOUND_MESSAGE) {
+                            throw new StreamCorruptedException("string too long (" + len + " bytes)");
+                        }
+                        if (buf.remaining() < len) {
+                            buf.position(start);
+                            return;
+                        }
+                        byte[] utf = new byte[2 + len];
+                        buf.position(start + 1);
+                        buf.get(utf);
+                        String value = new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+                        if (handles == null) {
+                            handles = new ArrayList<>(4);
+                        }
+                        handles.add(value);
+                        sink.accept(value);
+                        break;
+                    }
+                    case TC_REFERENCE: {
+                        if (buf.remaining() < 4) {
+                            buf.position(start);
+                            return;
+                        }
+                        int handle = buf.getInt() - BASE_WIRE_HANDLE;
+                        if (handles == null || handle < 0 || handle >= handles.size()) {
+                            throw new StreamCorruptedException("invalid handle");
+                        }
+                        sink.accept(handles.get(handle));
+                        break;
+                    }
+                    case TC_RESET:
+                        handles = null;
+                        break;
+                    case TC_NULL:
+                        sink.accept(null);
+                        break;
+                    default:
+                        throw new StreamCorruptedException(String.format("unsupported type code %02X", tc));
+                }
+            }
+        }
+    }
+}
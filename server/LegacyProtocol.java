@@ -0,0 +1,155 @@
+package server;
+
+import broadcaster.TimerChannel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The original ObjectOutputStream protocol, kept for older StudentClients:
+ * String prompts, username and password as Strings, answers as ints.
+ */
+final class LegacyProtocol implements WireProtocol {
+    private static final ByteBuffer WAITING = encodeConstant("WAITING");
+    private static final ByteBuffer START = encodeConstant("START");
+
+    private final LegacyCodec.Decoder decoder = new LegacyCodec.Decoder();
+    private Connection connection;
+    private String username;
+    private int questionIndex;
+
+    @Override
+    public void onOpen(Connection connection) throws IOException {
+        this.connection = connection;
+        connection.send(LegacyCodec.streamHeader());
+        connection.send(LegacyCodec.encode("Enter username:"));
+    }
+
+    @Override
+    public void decode(ByteBuffer buf, ClientHandler handler) throws IOException {
+        try {
+            decoder.decode(buf, message -> {
+                try {
+                    onValue(message, handler);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void onValue(Object message, ClientHandler handler) throws IOException {
+        if (message instanceof Integer answer) {
+            // Answers carry no index in this protocol; they always refer to the last question sent
+            handler.onAnswer(questionIndex, answer);
+        } else if (username == null) {
+            username = (String) message;
+            connection.send(LegacyCodec.encode("Enter password:"));
+        } else {
+            // Usernames can't contain ':', so "CODE:username" picks an exam session
+            int colon = username.indexOf(':');
+            if (colon < 0) {
+                handler.onLogin(username, (String) message, null);
+            } else {
+                handler.onLogin(username.substring(colon + 1), (String) message, username.substring(0, colon));
+            }
+        }
+    }
+
+    @Override
+    public void sendWaiting(Connection connection, TimerChannel timer) throws IOException {
+        // Older clients only look for "failed" in this message, so the timer can ride along
+        connection.send(LegacyCodec.encode("Authentication successful! [timer " + timer + "]"));
+        connection.send(WAITING); // Signal client to show waiting screen
+    }
+
+    @Override
+    public void sendAuthFailed(Connection connection, String message) throws IOException {
+        connection.send(LegacyCodec.encode(message));
+    }
+
+    @Override
+    public void sendBusy(Connection connection, long retryAfterMillis) throws IOException {
+        connection.send(LegacyCodec.encode(WireProtocol.busyMessage(retryAfterMillis)));
+    }
+
+    @Override
+    public void sendStart(Connection connection, QuestionPayloads questions, QuestionOrder order, int position) {
+        questionIndex = position;
+        if (position >= questions.size()) {
+            connection.send(START);
+        } else {
+            connection.send(START, questions.legacyMessage(order.question(position)));
+        }
+    }
+
+    @Override
+    public void sendQuestion(Connection connection, QuestionPayloads questions, QuestionOrder order, int position) {
+        questionIndex = position;
+        connection.send(questions.legacyMessage(order.question(position)));
+    }
+
+    @Override
+    public void sendBundle(Connection connection, ExamBundle bundle) {
+        // Questions are only sent after START
+    }
+
+    @Override
+    public int questionsInFlight() {
+        // Answers carry no index, so they must answer the last question sent
+        return 1;
+    }
+
+    @Override
+    public void sendAck(Connection connection, int position) {
+        // Not part of this protocol
+    }
+
+    @Override
+    public boolean canResume() {
+        // An object stream can't be picked up part way through on a new connection
+        return false;
+    }
+
+    @Override
+    public void sendSession(Connection connection, ResumeTable.Token token) {
+        // Never called: canResume is false
+    }
+
+    @Override
+    public void sendResumed(Connection connection, int position) {
+        // Never called: canResume is false
+    }
+
+    @Override
+    public void sendDeadline(Connection connection, long remainingMillis) {
+        // Not part of this protocol: the student's countdown ends with the exam's, though the server allows them longer
+    }
+
+    @Override
+    public boolean canReorderOptions() {
+        // Questions go out as serialized Question objects, shared by every student
+        return false;
+    }
+
+    @Override
+    public void sendFinished(Connection connection, String message) throws IOException {
+        connection.send(LegacyCodec.encode(message));
+    }
+
+    @Override
+    public void sendResult(Connection connection, int percent) throws IOException {
+        connection.send(LegacyCodec.encode("RESULT:" + percent));
+    }
+
+    private static ByteBuffer encodeConstant(String message) {
+        try {
+            return QuestionPayloads.direct(LegacyCodec.encode(message));
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
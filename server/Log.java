@@ -0,0 +1,266 @@
+package server;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log for the per-student messages (logins, answers,
+ * disconnects). A caller claims a slot in a fixed ring of preallocated
+ * entries with one CAS, stores the event's fields and returns; a single
+ * writer thread formats the entries and prints them in batches. Nothing is
+ * formatted or allocated on the caller's thread, events below the level
+ * (-Dtestsync.logLevel, default INFO) are rejected before claiming a slot,
+ * and if the writer falls a whole ring behind new events are dropped and
+ * counted rather than blocking the caller. The writer sleeps while the ring
+ * is empty; the first event after that wakes it.
+ */
+public final class Log implements AutoCloseable {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    /**
+     * What happened. Each event has a fixed level and message; the variable
+     * parts travel as fields (user, question index, value, latency, detail).
+     */
+    public enum Event {
+        LOGIN_OK(Level.INFO, (sb, e) -> sb.append("✅ Login successful: ").append(e.user)),
+        LOGIN_UNKNOWN_USER(Level.WARN, (sb, e) -> sb.append("❌ Login attempt failed: User '").append(e.user).append("' not registered")),
+        LOGIN_BAD_PASSWORD(Level.WARN, (sb, e) -> sb.append("❌ Login attempt failed: Invalid password for '").append(e.user).append('\'')),
+        WAITING(Level.INFO, (sb, e) -> sb.append("👤 ").append(e.user).append(" connected and waiting for exam to start...")),
+        EXAM_STARTED(Level.INFO, (sb, e) -> sb.append("📝 Sending questions to ").append(e.user)),
+        ANSWER(Level.INFO, (sb, e) -> sb.append("Answer received from ").append(e.user).append(": ").append(e.value)),
+        FINISHED(Level.INFO, (sb, e) -> sb.append("🏁 ").append(e.user).append(" finished with ").append(e.value).append('%')),
+        DISCONNECTED(Level.INFO, (sb, e) -> sb.append("⏰ ").append(e.user).append(" disconnected (exam time may have expired)")),
+        BUSY(Level.INFO, (sb, e) -> sb.append("🚦 Server busy, login from ").append(e.user).append(" turned away for ").append(e.value).append(" ms")),
+        LOGIN_TIMEOUT(Level.WARN, (sb, e) -> sb.append("⌛ No login from ").append(e.user).append(" in time, closing the connection")),
+        ANSWER_TIMEOUT(Level.WARN, (sb, e) -> sb.append("⌛ No answer from ").append(e.user).append(" for ").append(e.value).append(" s, closing the connection")),
+        WAITING_TIMEOUT(Level.WARN, (sb, e) -> sb.append("⌛ ").append(e.user).append(" waited ").append(e.value).append(" s with no START, closing the connection")),
+        AWAY(Level.INFO, (sb, e) -> sb.append("📶 ").append(e.user).append(" lost connection, keeping their place for ").append(e.value).append(" s")),
+        RESUMED(Level.INFO, (sb, e) -> {
+            sb.append("🔁 ").append(e.user).append(" reconnected");
+            if (e.value >= 0) {
+                sb.append(", resuming at question ").append(e.value + 1);
+            }
+        }),
+        TIME_UP(Level.INFO, (sb, e) -> sb.append("⏰ Time is up for ").append(e.user).append(", submitting ").append(e.value).append(" answer(s)")),
+        EXTRA_TIME(Level.INFO, (sb, e) -> sb.append("⏳ ").append(e.user).append(" now has ").append(e.value).append(" s of extra time")),
+        CLIENT_ERROR(Level.ERROR, (sb, e) -> sb.append("Error handling client ").append(e.user).append(": ").append(e.detail));
+
+        final Level level;
+        final Formatter formatter;
+
+        Event(Level level, Formatter formatter) {
+            this.level = level;
+            this.formatter = formatter;
+        }
+    }
+
+    interface Formatter {
+        void format(StringBuilder sb, Entry entry);
+    }
+
+    // One ring slot, reused; fields are written by the claiming thread before publishing
+    static final class Entry {
+        volatile long published = -1;
+        Event event;
+        String user;
+        int questionIndex;
+        long value;
+        long latencyNanos;
+        String detail;
+    }
+
+    private static final Log SERVER = new Log(System.out,
+            Integer.getInteger("testsync.logBuffer", 8192),
+            Level.valueOf(System.getProperty("testsync.logLevel", "INFO").toUpperCase()));
+
+    static {
+        // Print what is still queued on a normal shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> SERVER.drain(1000)));
+    }
+
+    private final PrintStream out;
+    private final Entry[] ring;
+    private final int mask;
+    private final int threshold;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    // Set by the writer just before it parks; a caller that publishes and sees it set unparks it
+    private volatile boolean writerIdle = false;
+    private volatile boolean closed = false;
+
+    /**
+     * @param out Where formatted lines go
+     * @param capacity Ring size, rounded up to a power of two
+     * @param threshold Lowest level that is logged
+     */
+    public Log(PrintStream out, int capacity, Level threshold) {
+        this.out = out;
+        int size = 1 << (32 - Integer.numberOfLeadingZeros(Math.max(2, capacity) - 1));
+        ring = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Entry();
+        }
+        mask = size - 1;
+        this.threshold = threshold.ordinal();
+        writer = new Thread(this::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    static void event(Event event, String user) {
+        SERVER.log(event, user, -1, 0, -1, null);
+    }
+
+    static void event(Event event, String user, long value) {
+        SERVER.log(event, user, -1, value, -1, null);
+    }
+
+    static void latency(Event event, String user, int questionIndex, long value, long latencyNanos) {
+        SERVER.log(event, user, questionIndex, value, latencyNanos, null);
+    }
+
+    static void error(Event event, String user, String detail) {
+        SERVER.log(event, user, -1, 0, -1, detail);
+    }
+
+    /**
+     * @return events the server log has dropped so far
+     */
+    static long serverDropped() {
+        return SERVER.droppedCount();
+    }
+
+    /**
+     * @return how many events were dropped because the ring was full
+     */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+
+    /**
+     * Queue an event
+     * @param questionIndex Question ordinal, or -1 if the event isn't about one
+     * @param value The event's number (an answer, a percentage)
+     * @param latencyNanos How long the step took, or -1
+     * @param detail Extra text (an error message), or null
+     */
+    public void log(Event event, String user, int questionIndex, long value, long latencyNanos, String detail) {
+        if (event.level.ordinal() < threshold) {
+            return;
+        }
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - consumed.get() >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        Entry entry = ring[(int) seq & mask];
+        entry.event = event;
+        entry.user = user;
+        entry.questionIndex = questionIndex;
+        entry.value = value;
+        entry.latencyNanos = latencyNanos;
+        entry.detail = detail;
+        entry.published = seq;
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Wait for everything queued so far to be printed
+     * @return false if it didn't finish within the timeout
+     */
+    public boolean drain(long timeoutMillis) {
+        long target = head.get();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (consumed.get() < target) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    /**
+     * Print what is queued and stop the writer thread. Events logged after
+     * this aren't printed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder sb = new StringBuilder(4096);
+        long next = 0;
+        long reportedDrops = 0;
+        while (true) {
+            Entry entry = ring[(int) next & mask];
+            if (entry.published == next) {
+                format(sb, entry);
+                entry.user = null;
+                entry.detail = null;
+                next++;
+                if (sb.length() < 16_384) {
+                    continue; // keep batching while events are waiting
+                }
+            }
+            long drops = dropped.sum();
+            if (drops != reportedDrops) {
+                sb.append("⚠️ ").append(drops - reportedDrops).append(" log message(s) dropped\n");
+                reportedDrops = drops;
+            }
+            if (sb.length() > 0) {
+                out.print(sb);
+                out.flush();
+                sb.setLength(0);
+                consumed.lazySet(next); // slots are reused only once their lines are out
+            } else if (closed) {
+                return;
+            } else {
+                writerIdle = true;
+                // Checked again after announcing it, so an event published meanwhile isn't left waiting
+                if (ring[(int) next & mask].published != next && !closed) {
+                    LockSupport.park(this);
+                }
+                writerIdle = false;
+            }
+        }
+    }
+
+    private static void format(StringBuilder sb, Entry entry) {
+        entry.event.formatter.format(sb, entry);
+        if (entry.questionIndex >= 0 || entry.latencyNanos >= 0) {
+            sb.append(" [");
+            if (entry.questionIndex >= 0) {
+                sb.append("question=").append(entry.questionIndex);
+            }
+            if (entry.latencyNanos >= 0) {
+                if (entry.questionIndex >= 0) {
+                    sb.append(' ');
+                }
+                sb.append("latency=").append(entry.latencyNanos / 1000).append("µs");
+            }
+            sb.append(']');
+        }
+        sb.append('\n');
+    }
+}
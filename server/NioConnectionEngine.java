@@ -0,0 +1,315 @@
+package server;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Selector based engine: a small, fixed number of I/O loops serve every
+ * connection. A student who is waiting or thinking costs a ClientHandler and
+ * a registered key, not a thread.
+ */
+final class NioConnectionEngine implements ConnectionEngine {
+    // Room for several of the largest client messages; full with none of them complete is an error
+    private static final int READ_BUFFER_SIZE = 4 * WireProtocol.MAX_INBOUND_MESSAGE;
+    private static final int MIN_CARRY_SIZE = 256;
+
+    private final IoLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private int nextLoop = 0;
+
+    NioConnectionEngine(int ioThreads) {
+        loops = new IoLoop[Math.max(1, ioThreads)];
+    }
+
+    @Override
+    public void open(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop(i);
+            loops[i].start();
+        }
+    }
+
+    @Override
+    public void serve() throws IOException {
+        while (true) {
+            SocketChannel channel = serverChannel.accept();
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                // A peer that vanished (network gone, laptop shut) is found and closed by the OS, not only by a deadline
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            } catch (IOException e) {
+                channel.close();
+                continue;
+            }
+            IoLoop loop = loops[nextLoop];
+            nextLoop = (nextLoop + 1) % loops.length;
+            loop.execute(() -> loop.register(channel));
+        }
+    }
+
+    @Override
+    public String name() {
+        return "nio x" + loops.length;
+    }
+
+    /**
+     * One selector thread. Everything touching a connection's key or channel
+     * runs on this thread; other threads hand work over with execute().
+     */
+    static final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        IoLoop(int id) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "io-loop-" + id);
+            thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (!inLoop()) {
+                selector.wakeup();
+            }
+        }
+
+        void register(SocketChannel channel) {
+            NioConnection connection = new NioConnection(this, channel);
+            try {
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (Exception e) {
+                connection.fail(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    if (tasks.isEmpty()) {
+                        selector.select();
+                    } else {
+                        selector.selectNow();
+                    }
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isWritable()) {
+                            connection.flush();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read(readBuffer);
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println("I/O loop error: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    static final class NioConnection implements Connection {
+        private final IoLoop loop;
+        private final SocketChannel channel;
+        private final ClientHandler handler;
+        private SelectionKey key;
+
+        // Bytes of an incomplete message left over from the previous read, ready for reading;
+        // allocated on the first such read and kept, so a slow client doesn't allocate on every one
+        private ByteBuffer carry;
+
+        // Guarded by itself; only the loop thread writes to the channel
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>(4);
+        private boolean flushScheduled = false;
+        private boolean closeRequested = false;
+        private boolean closed = false;
+
+        NioConnection(IoLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            this.handler = new ClientHandler(this);
+        }
+
+        @Override
+        public void send(ByteBuffer... messages) {
+            synchronized (outbound) {
+                if (closeRequested) {
+                    return;
+                }
+                for (ByteBuffer message : messages) {
+                    outbound.add(message.duplicate());
+                }
+                if (flushScheduled) {
+                    return;
+                }
+                flushScheduled = true;
+            }
+            // Runs after the current event when called from the loop, so replies batch into one write
+            loop.execute(this::flush);
+        }
+
+        @Override
+        public void close() {
+            synchronized (outbound) {
+                if (closeRequested) {
+                    return;
+                }
+                closeRequested = true;
+                if (flushScheduled) {
+                    return; // flush() closes once the queue drains
+                }
+                flushScheduled = true;
+            }
+            loop.execute(this::flush);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            // On this connection's loop, so it is ordered with reads and sends
+            loop.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            });
+        }
+
+        @Override
+        public String remoteAddress() {
+            try {
+                return String.valueOf(channel.getRemoteAddress());
+            } catch (IOException e) {
+                return "?";
+            }
+        }
+
+        void read(ByteBuffer buf) {
+            try {
+                buf.clear();
+                if (carry != null) {
+                    buf.put(carry);
+                }
+                int n = channel.read(buf);
+                buf.flip();
+                if (buf.hasRemaining()) {
+                    boolean full = buf.limit() == buf.capacity();
+                    handler.onInput(buf);
+                    if (buf.hasRemaining() && !closed) {
+                        if (full && buf.position() == 0) {
+                            // Can't complete: reading on would only spin on this connection
+                            throw new StreamCorruptedException("message too large");
+                        }
+                        carry(buf);
+                    }
+                }
+                if (n < 0) {
+                    shutdown();
+                }
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private void carry(ByteBuffer buf) {
+            if (carry == null || carry.capacity() < buf.remaining()) {
+                carry = ByteBuffer.allocate(Math.max(buf.remaining(), MIN_CARRY_SIZE));
+            }
+            carry.clear();
+            carry.put(buf).flip();
+        }
+
+        void flush() {
+            if (closed) {
+                return;
+            }
+            try {
+                ByteBuffer[] batch;
+                synchronized (outbound) {
+                    batch = outbound.toArray(new ByteBuffer[0]);
+                }
+                if (batch.length > 0) {
+                    channel.write(batch);
+                }
+                int sent = 0;
+                while (sent < batch.length && !batch[sent].hasRemaining()) {
+                    sent++;
+                }
+                boolean closeAfter;
+                synchronized (outbound) {
+                    for (int i = 0; i < sent; i++) {
+                        outbound.poll();
+                    }
+                    if (!outbound.isEmpty()) {
+                        // Socket buffer full: let the selector tell us when to continue
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    flushScheduled = false;
+                    closeAfter = closeRequested;
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (closeAfter) {
+                    shutdown();
+                }
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        void fail(Exception e) {
+            if (!(e instanceof IOException) || e instanceof StreamCorruptedException) {
+                Log.error(Log.Event.CLIENT_ERROR, handler.getUsername(), e.getMessage());
+            }
+            shutdown();
+        }
+
+        private void shutdown() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (outbound) {
+                closeRequested = true;
+                outbound.clear();
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            handler.onDisconnect();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A question bank file, read on demand. The bank is never loaded whole:
+ * opening it streams through the file once to record where each question
+ * starts, in an index file next to it (bank.csv.idx), which is memory-mapped
+ * rather than read onto the heap. Later opens reuse the index if the bank
+ * hasn't changed, so startup doesn't grow with the bank. Questions are
+ * parsed when an exam asks for them and kept in a bounded LRU cache.
+ *
+ * Bank format, one question per line, CSV (a field may be quoted with "...",
+ * with "" for a quote inside it):
+ *
+ *   question text,correct option (1-based),option 1,option 2,...  (2 to 255 options)
+ *
+ * Blank lines and lines starting with '#' are skipped. Questions are
+ * numbered from 1 in file order.
+ *
+ *   java server.QuestionBank bank.csv                   (index it, print the size)
+ *   java server.QuestionBank --generate 500000 bank.csv (a synthetic bank, for load tests)
+ */
+public final class QuestionBank implements Closeable {
+    private static final int INDEX_MAGIC = 0x54535131; // "TSQ1"
+    private static final int INDEX_HEADER_LENGTH = 4 + 8 + 8 + 4;
+    // Per question: long offset, int length
+    private static final int ENTRY_LENGTH = 8 + 4;
+    private static final int SCAN_BUFFER = 1 << 20;
+    private static final int MAX_LINE = 1 << 20;
+
+    private final Path path;
+    private final FileChannel bank;
+    private final MappedByteBuffer index;
+    private final int size;
+    private final Map<Integer, Question> cache;
+
+    private QuestionBank(Path path, FileChannel bank, MappedByteBuffer index, int cacheSize) {
+        this.path = path;
+        this.bank = bank;
+        this.index = index;
+        this.size = index.getInt(4 + 8 + 8);
+        // Access order, so the least recently used question is evicted first
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Question> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Open a bank, building its index if it is missing or out of date
+     * @param cacheSize Parsed questions to keep in memory
+     */
+    public static QuestionBank open(Path path, int cacheSize) throws IOException {
+        FileChannel bank = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long start = System.nanoTime();
+            long bankSize = bank.size();
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            Path indexPath = path.resolveSibling(path.getFileName() + ".idx");
+            MappedByteBuffer index = mapIndex(indexPath, bankSize, modified);
+            if (index == null) {
+                indexPath = buildIndex(bank, indexPath, bankSize, modified);
+                index = mapIndex(indexPath, bankSize, modified);
+                if (index == null) {
+                    throw new IOException("Index " + indexPath + " is unreadable");
+                }
+                System.out.printf("📚 Indexed %d question(s) in %s in %d ms%n",
+                        index.getInt(4 + 8 + 8), path, (System.nanoTime() - start) / 1_000_000);
+            }
+            return new QuestionBank(path, bank, index, cacheSize);
+        } catch (IOException | RuntimeException e) {
+            bank.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of questions in the bank
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param number Question number, from 1
+     */
+    public Question get(int number) throws IOException {
+        if (number < 1 || number > size) {
+            throw new IllegalArgumentException("No question " + number + " (the bank has " + size + ")");
+        }
+        synchronized (cache) {
+            Question cached = cache.get(number);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Read outside the lock: positional reads don't disturb each other
+        Question question = read(number);
+        synchronized (cache) {
+            cache.put(number, question);
+        }
+        return question;
+    }
+
+    /**
+     * Load the questions an exam uses
+     * @param numbers Question numbers and ranges, e.g. "1-40,97,120-125"
+     * @return the questions, in the order given
+     * @throws IllegalArgumentException if the list is malformed or names a question that doesn't exist
+     */
+    public List<Question> select(String numbers) throws IOException {
+        List<Question> questions = new ArrayList<>();
+        for (String part : numbers.split(",")) {
+            String range = part.trim();
+            int dash = range.indexOf('-', 1);
+            int first;
+            int last;
+            try {
+                first = Integer.parseInt(dash < 0 ? range : range.substring(0, dash).trim());
+                last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad question range " + range);
+            }
+            if (last < first) {
+                throw new IllegalArgumentException("Bad question range " + range);
+            }
+            for (int number = first; number <= last; number++) {
+                questions.add(get(number));
+            }
+        }
+        return questions;
+    }
+
+    /**
+     * @return how many parsed questions are held in memory now
+     */
+    int cachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        bank.close();
+    }
+
+    private Question read(int number) throws IOException {
+        int entry = INDEX_HEADER_LENGTH + (number - 1) * ENTRY_LENGTH;
+        long offset = index.getLong(entry);
+        int length = index.getInt(entry + 8);
+        ByteBuffer line = ByteBuffer.allocate(length);
+        while (line.hasRemaining()) {
+            if (bank.read(line, offset + line.position()) < 0) {
+                throw new EOFException(path + " is shorter than its index");
+            }
+        }
+        try {
+            return parse(new String(line.array(), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + " question " + number + ": " + e.getMessage());
+        }
+    }
+
+    // --- INDEX ---
+
+    // The index if it exists and was built from this exact bank file, otherwise null
+    private static MappedByteBuffer mapIndex(Path indexPath, long bankSize, long modified) throws IOException {
+        if (!Files.isRegularFile(indexPath)) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            if (ch.size() < INDEX_HEADER_LENGTH) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            index.order(ByteOrder.BIG_ENDIAN);
+            int count = index.getInt(4 + 8 + 8);
+            if (index.getInt(0) != INDEX_MAGIC || index.getLong(4) != bankSize || index.getLong(12) != modified
+                    || count < 0 || ch.size() != INDEX_HEADER_LENGTH + (long) count * ENTRY_LENGTH) {
+                return null;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Stream through the bank once, recording where each question line
+     * starts and how long it is. Only the scan buffer is held in memory.
+     * Written beside the bank if possible, otherwise to a temporary file.
+     */
+    private static Path buildIndex(FileChannel bank, Path indexPath, long bankSize, long modified) throws IOException {
+        Path tmp;
+        try {
+            tmp = Files.createTempFile(indexPath.toAbsolutePath().getParent(), indexPath.getFileName().toString(), ".tmp");
+        } catch (IOException e) {
+            tmp = Files.createTempFile("testsync-bank", ".idx");
+            tmp.toFile().deleteOnExit();
+            indexPath = tmp;
+        }
+        int count = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer entries = ByteBuffer.allocate(SCAN_BUFFER / 4);
+            out.position(INDEX_HEADER_LENGTH);
+
+            ByteBuffer buf = ByteBuffer.allocateDirect(SCAN_BUFFER);
+            long lineStart = 0;
+            long position = 0;
+            // Whether the current line has anything but whitespace, and its first such byte
+            byte first = 0;
+            while (position < bankSize) {
+                buf.clear();
+                int n = bank.read(buf, position);
+                if (n < 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    byte b = buf.get(i);
+                    if (b == '\n') {
+                        count += addEntry(out, entries, lineStart, position + i, first);
+                        lineStart = position + i + 1;
+                        first = 0;
+                    } else if (first == 0 && b != ' ' && b != '\t' && b != '\r') {
+                        first = b;
+                    }
+                }
+                position += n;
+            }
+            count += addEntry(out, entries, lineStart, bankSize, first);
+            entries.flip();
+            while (entries.hasRemaining()) {
+                out.write(entries);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_LENGTH);
+            header.putInt(INDEX_MAGIC).putLong(bankSize).putLong(modified).putInt(count).flip();
+            out.write(header, 0);
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        if (!tmp.equals(indexPath)) {
+            Files.move(tmp, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return indexPath;
+    }
+
+    // Record one line if it holds a question; entries are written out whenever the buffer fills
+    private static int addEntry(FileChannel out, ByteBuffer entries, long start, long end, byte first) throws IOException {
+        if (first == 0 || first == '#') {
+            return 0;
+        }
+        if (end - start > MAX_LINE) {
+            throw new IOException("Question at byte " + start + " is longer than " + MAX_LINE + " bytes");
+        }
+        if (entries.remaining() < ENTRY_LENGTH) {
+            entries.flip();
+            while (entries.hasRemaining()) {
+                out.write(entries);
+            }
+            entries.clear();
+        }
+        entries.putLong(start).putInt((int) (end - start));
+        return 1;
+    }
+
+    // --- CSV ---
+
+    /**
+     * Parse one bank line
+     * @throws IllegalArgumentException if it isn't a valid question
+     */
+    static Question parse(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        // Where quoted text starts and ends in field; whitespace is trimmed only outside it
+        int quoteStart = -1;
+        int quoteEnd = -1;
+        int end = line.endsWith("\r") ? line.length() - 1 : line.length();
+        for (int i = 0; i < end; i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < end && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                    quoteEnd = field.length();
+                }
+            } else if (c == '"') {
+                quoted = true;
+                if (quoteStart < 0) {
+                    quoteStart = field.length();
+                }
+            } else if (c == ',') {
+                fields.add(trim(field, quoteStart, quoteEnd));
+                field.setLength(0);
+                quoteStart = -1;
+                quoteEnd = -1;
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(trim(field, quoteStart, quoteEnd));
+
+        if (fields.size() < 4) {
+            throw new IllegalArgumentException("expected text, correct option and at least two options");
+        }
+        String[] options = fields.subList(2, fields.size()).toArray(new String[0]);
+        if (options.length > ExamProtocol.MAX_OPTIONS) {
+            throw new IllegalArgumentException(options.length + " options, more than the " + ExamProtocol.MAX_OPTIONS
+                    + " an exam can carry");
+        }
+        int correct;
+        try {
+            correct = Integer.parseInt(fields.get(1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("correct option '" + fields.get(1) + "' is not a number");
+        }
+        if (correct < 1 || correct > options.length) {
+            throw new IllegalArgumentException("correct option " + correct + " is not one of the " + options.length);
+        }
+        return new Question(fields.get(0), options, correct);
+    }
+
+    // Drop whitespace around a field, but not inside its quotes
+    private static String trim(StringBuilder field, int quoteStart, int quoteEnd) {
+        int from = 0;
+        int to = field.length();
+        int keepFrom = quoteStart < 0 ? to : quoteStart;
+        int keepTo = quoteStart < 0 ? 0 : quoteEnd;
+        while (from < keepFrom && Character.isWhitespace(field.charAt(from))) {
+            from++;
+        }
+        while (to > Math.max(from, keepTo) && Character.isWhitespace(field.charAt(to - 1))) {
+            to--;
+        }
+        return field.substring(from, to);
+    }
+
+    static String toCsv(Question question) {
+        StringBuilder line = new StringBuilder(quote(question.getQuestionText()));
+        line.append(',').append(question.getCorrectOption());
+        for (String option : question.getOptions()) {
+            line.append(',').append(quote(option));
+        }
+        return line.toString();
+    }
+
+    private static String quote(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.equals(field.trim())) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * A synthetic question for --generate: the sum of two numbers, with the
+     * right answer among three wrong ones at a position drawn from the
+     * seeded random source, so answering option 1 isn't always right
+     */
+    static Question generated(int number, Random random) {
+        int a = random.nextInt(100);
+        int b = random.nextInt(100);
+        String[] options = {String.valueOf(a + b), String.valueOf(a + b + 1), String.valueOf(a + b - 1), String.valueOf(a * b + 200)};
+        int correct = random.nextInt(options.length);
+        options[0] = options[correct];
+        options[correct] = String.valueOf(a + b);
+        return new Question("Question " + number + ": what is " + a + " + " + b + "? (\"sum\", in digits)",
+                options, correct + 1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("--generate")) {
+            int count = Integer.parseInt(args[1]);
+            try (Writer out = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+                out.write("# text,correct option,options...\n");
+                Random random = new Random(count);
+                for (int i = 1; i <= count; i++) {
+                    out.write(toCsv(generated(i, random)));
+                    out.write('\n');
+                }
+            }
+            System.out.println("✅ Wrote " + count + " question(s) to " + args[2]);
+        } else if (args.length == 1) {
+            long start = System.nanoTime();
+            try (QuestionBank bank = open(Paths.get(args[0]), ServerConfig.QUESTION_CACHE)) {
+                System.out.printf("✅ %s has %d question(s), opened in %d ms%n", args[0], bank.size(),
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        } else {
+            System.err.println("Usage: QuestionBank <bank.csv>");
+            System.err.println("       QuestionBank --generate <count> <bank.csv>");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package server;
+
+import java.util.SplittableRandom;
+
+/**
+ * One student's order for an exam: which question they see at each
+ * position, and in what order the options of each are shown. Everything is
+ * derived from a seed (the exam's, mixed with the username), so the same
+ * student always gets the same order, and two students sitting side by side
+ * almost never do. Answers are mapped back to the canonical question and
+ * option before they reach ResultManager.
+ *
+ * Only primitive arrays are kept: the question order, and the option order
+ * of the question in hand, recomputed as each question is sent. Questions
+ * and their encoded bytes stay shared (see QuestionPayloads).
+ */
+final class QuestionOrder {
+    private final long seed;
+    // Position -> question ordinal; null = exam order
+    private final int[] questions;
+    private final boolean shuffleOptions;
+
+    // The question whose option order is in options
+    private int optionsFor = -1;
+    // Shown option -> canonical option, both 0-based
+    private byte[] options = new byte[0];
+
+    /**
+     * @param examSeed The exam's seed; null to keep exam order for everything
+     * @param username The student
+     * @param questionCount Questions in the exam
+     * @param shuffleOptions Whether options may be reordered too (the client has to be able to show them)
+     */
+    QuestionOrder(Long examSeed, String username, int questionCount, boolean shuffleOptions) {
+        this.seed = examSeed == null ? 0 : mix(examSeed ^ mix(username.hashCode()));
+        this.shuffleOptions = examSeed != null && shuffleOptions;
+        if (examSeed == null) {
+            questions = null;
+        } else {
+            questions = new int[questionCount];
+            for (int i = 0; i < questionCount; i++) {
+                questions[i] = i;
+            }
+            // Fisher-Yates
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = questionCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = questions[i];
+                questions[i] = questions[j];
+                questions[j] = t;
+            }
+        }
+    }
+
+    /**
+     * @return the ordinal of the question shown at a position
+     */
+    int question(int position) {
+        return questions == null ? position : questions[position];
+    }
+
+    /**
+     * @return whether options are shown in exam order
+     */
+    boolean keepsOptionOrder() {
+        return !shuffleOptions;
+    }
+
+    /**
+     * The option order of the question at a position; the array is reused for the next question
+     * @param optionCount The question's number of options
+     * @return the canonical option (0-based) shown first, second, ...
+     */
+    byte[] optionOrder(int position, int optionCount) {
+        if (optionsFor != position) {
+            if (options.length < optionCount) {
+                options = new byte[optionCount];
+            }
+            for (int i = 0; i < optionCount; i++) {
+                options[i] = (byte) i;
+            }
+            if (shuffleOptions) {
+                // Its own stream per question, so the order doesn't depend on what was sent before
+                SplittableRandom random = new SplittableRandom(mix(seed + question(position) + 1));
+                for (int i = optionCount - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    byte t = options[i];
+                    options[i] = options[j];
+                    options[j] = t;
+                }
+            }
+            optionsFor = position;
+        }
+        return options;
+    }
+
+    /**
+     * Map the option a student picked to the option as written in the question
+     * @param position The question's position for this student
+     * @param shown The option picked, 1-based, as the student saw them
+     * @param optionCount The question's number of options
+     * @return the canonical option, 1-based; out of range choices (which callers reject) are passed on unchanged
+     */
+    int canonicalOption(int position, int shown, int optionCount) {
+        if (!shuffleOptions || shown < 1 || shown > optionCount) {
+            return shown;
+        }
+        return (optionOrder(position, optionCount)[shown - 1] & 0xFF) + 1;
+    }
+
+    // SplitMix64 finalizer: spreads nearby seeds (exam seed + ordinal) far apart
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,163 @@
+package server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * An exam's question set together with its questions already encoded for the
+ * wire. Built once when the question set is installed and never modified, so
+ * every ClientHandler can write the same bytes to its socket: sends use
+ * duplicate() views of these buffers, which share the content.
+ *
+ * A student with their own question and option order gets the same bytes
+ * too: the text and each option are slices of the shared frame, gathered
+ * behind a few header bytes of the student's own.
+ */
+final class QuestionPayloads {
+    private final Question[] questions;
+    private final ByteBuffer[] binaryFrames;
+    // Slices of binaryFrames: text and option count, then each option
+    private final ByteBuffer[] binaryBodies;
+    private final ByteBuffer[][] binaryOptions;
+    private final int[] binaryLengths;
+    private volatile ByteBuffer[] legacyMessages;
+    private final long fingerprint;
+
+    QuestionPayloads(List<Question> questions) {
+        this.questions = questions.toArray(new Question[0]);
+        binaryFrames = new ByteBuffer[this.questions.length];
+        binaryBodies = new ByteBuffer[this.questions.length];
+        binaryOptions = new ByteBuffer[this.questions.length][];
+        binaryLengths = new int[this.questions.length];
+        for (int i = 0; i < this.questions.length; i++) {
+            ByteBuffer frame = direct(ExamProtocol.question(i, this.questions[i]));
+            binaryFrames[i] = frame;
+            // Skip length, type and index; then u16-prefixed text, u8 count, u16-prefixed options
+            int position = 0;
+            while ((frame.get(position++) & 0x80) != 0) {
+                // varint length
+            }
+            int headerEnd = position;
+            position += 1 + 2;
+            int bodyLength = 2 + (frame.getShort(position) & 0xFFFF) + 1;
+            binaryBodies[i] = frame.slice(position, bodyLength);
+            position += bodyLength;
+            ByteBuffer[] options = new ByteBuffer[this.questions[i].getOptions().length];
+            for (int o = 0; o < options.length; o++) {
+                int optionLength = 2 + (frame.getShort(position) & 0xFFFF);
+                options[o] = frame.slice(position, optionLength);
+                position += optionLength;
+            }
+            binaryOptions[i] = options;
+            binaryLengths[i] = position - headerEnd;
+        }
+        fingerprint = computeFingerprint(this.questions);
+    }
+
+    /**
+     * @return a 64-bit hash of the questions, options and answers, identifying this set on disk
+     */
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    int size() {
+        return questions.length;
+    }
+
+    Question question(int index) {
+        return questions[index];
+    }
+
+    /**
+     * @return the correct option of each question, in exam order
+     */
+    int[] answerKey() {
+        int[] key = new int[questions.length];
+        for (int i = 0; i < questions.length; i++) {
+            key[i] = questions[i].getCorrectOption();
+        }
+        return key;
+    }
+
+    /**
+     * @return a fresh view of the QUESTION frame, safe to hand to Connection.send
+     */
+    ByteBuffer binaryFrame(int index) {
+        return binaryFrames[index].duplicate();
+    }
+
+    /**
+     * The QUESTION frame for one student's order, as buffers to send together
+     * @param position Where the student sees the question, sent as its index
+     * @param ordinal The question, by its place in the exam
+     * @param optionOrder Canonical option (0-based) for each option shown, in order
+     */
+    ByteBuffer[] binaryFrame(int position, int ordinal, byte[] optionOrder) {
+        ByteBuffer[] options = binaryOptions[ordinal];
+        ByteBuffer[] parts = new ByteBuffer[2 + options.length];
+        // Same contents as the canonical frame, only reordered, so the same length
+        parts[0] = ExamProtocol.questionHeader(position, binaryLengths[ordinal]);
+        parts[1] = binaryBodies[ordinal].duplicate();
+        for (int i = 0; i < options.length; i++) {
+            parts[2 + i] = options[optionOrder[i] & 0xFF].duplicate();
+        }
+        return parts;
+    }
+
+    /**
+     * @return a fresh view of the object stream message; encoded on first use,
+     *         since most exams never see a legacy client
+     */
+    ByteBuffer legacyMessage(int index) {
+        ByteBuffer[] messages = legacyMessages;
+        if (messages == null) {
+            synchronized (this) {
+                messages = legacyMessages;
+                if (messages == null) {
+                    messages = new ByteBuffer[questions.length];
+                    try {
+                        for (int i = 0; i < questions.length; i++) {
+                            messages[i] = direct(LegacyCodec.encode(questions[i]));
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    legacyMessages = messages;
+                }
+            }
+        }
+        return messages[index].duplicate();
+    }
+
+    /**
+     * Copy into native memory, so socket writes don't copy through a temporary buffer
+     */
+    static ByteBuffer direct(ByteBuffer src) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(src.remaining());
+        copy.put(src.duplicate()).flip();
+        return copy.asReadOnlyBuffer();
+    }
+
+    // FNV-1a over every field, so any edit to the set changes the fingerprint
+    private static long computeFingerprint(Question[] questions) {
+        long hash = 0xcbf29ce484222325L;
+        for (Question q : questions) {
+            hash = fnv(hash, q.getQuestionText());
+            for (String option : q.getOptions()) {
+                hash = fnv(hash, option);
+            }
+            hash = (hash ^ q.getCorrectOption()) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ 0xFF) * 0x100000001b3L; // separator, so "ab"+"c" differs from "a"+"bc"
+    }
+}
@@ -1,23 +1,205 @@
 package server;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
+/**
+ * One exam session's results: its answer store, scoreboard and journal.
+ * Reports for every session are written by one shared reporter thread.
+ */
 public class ResultManager {
-    private static Map<String, Map<Question, Integer>> results = new HashMap<>();
+    private static final ResultReporter reporter =
+            ResultReporter.start(ServerConfig.REPORT_FILE, ServerConfig.REPORT_INTERVAL_MS);
 
-    public static synchronized void submitAnswer(String username, Question question, int answer) {
-        results.putIfAbsent(username, new HashMap<>());
-        results.get(username).put(question, answer);
-        System.out.println("Answer received from " + username + ": " + answer);
+    static {
+        // Write the last report on a normal shutdown (Ctrl+C)
+        Runtime.getRuntime().addShutdownHook(new Thread(reporter::close));
     }
 
-    public static void printAllResults() {
-        System.out.println("\n----- All Exam Results -----");
-        for (String user : results.keySet()) {
-            System.out.println("Results for " + user + ":");
-            results.get(user).forEach((q, ans) ->
-                System.out.println(q.getQuestionText() + " - Answer: " + ans)
-            );
+    private final String examCode;
+    private volatile QuestionPayloads questions;
+    private volatile ResultStore results;
+    private volatile AnswerJournal journal;
+    // Students with answers recovered from the journal, who carry on where they were
+    private volatile Set<String> recovered = Set.of();
+
+    ResultManager(String examCode, QuestionPayloads questionSet) {
+        this.examCode = examCode;
+        useQuestions(questionSet);
+    }
+
+    /**
+     * Start collecting results for a new question set; results for the old
+     * set are discarded, and a journal recovered for it closed. Only before
+     * the exam starts.
+     * @param questionSet The questions answers will refer to, by ordinal
+     */
+    synchronized void useQuestions(QuestionPayloads questionSet) {
+        closeJournal();
+        results = new ResultStore(questionSet.answerKey());
+        questions = questionSet;
+        recovered = Set.of();
+    }
+
+    /**
+     * Open the session's journal now, before the exam starts, if a crash left
+     * answers in it for this question set (or testsync.recover names this
+     * exam), so the leaderboard has them and their students carry on from
+     * where they were. Otherwise it is left for beginExam.
+     */
+    synchronized void recoverJournal() {
+        if (journal != null || !ServerConfig.journalEnabled()) {
+            return;
+        }
+        try {
+            if (AnswerJournal.unfinished(journalDir(), questions.fingerprint(), ServerConfig.recoverJournal(examCode))) {
+                beginExam();
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not read answer journal for exam " + examCode + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open the session's journal as the exam starts. Answers a crash left in
+     * it for this same question set are recovered; a journal for any other
+     * set, or one an earlier exam with this code closed normally, is moved
+     * aside (unless testsync.recover names this exam).
+     */
+    synchronized void beginExam() {
+        if (journal != null || !ServerConfig.journalEnabled()) {
+            return;
+        }
+        try {
+            journal = AnswerJournal.open(journalDir(), questions.fingerprint(), results, ServerConfig.recoverJournal(examCode));
+            recovered = Set.copyOf(results.snapshot().keySet());
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not open answer journal for exam " + examCode + ", answers won't survive a crash: "
+                    + e.getMessage());
+        }
+    }
+
+    private Path journalDir() {
+        return Paths.get(ServerConfig.JOURNAL_DIR, examCode);
+    }
+
+    /**
+     * Close the journal: the exam is over, and its answers won't be replayed by the next exam with this code
+     * @return false if there was no journal open
+     */
+    synchronized boolean closeJournal() {
+        if (journal == null) {
+            return false;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not close answer journal: " + e.getMessage());
+        }
+        journal = null;
+        return true;
+    }
+
+    public void submitAnswer(String username, int questionIndex, int answer) {
+        results.record(username, questionIndex, answer);
+        ServerMetrics.ANSWERS.increment();
+        AnswerJournal current = journal;
+        if (current != null) {
+            current.append(username, questionIndex, answer);
+        }
+    }
+
+    /**
+     * @return where a student starting the exam begins: the first question, in
+     *         their order, they have no recovered answer for (the number of
+     *         questions if they answered them all); 0 if they weren't recovered
+     */
+    int firstUnanswered(String username, QuestionOrder order) {
+        if (!recovered.contains(username)) {
+            return 0;
+        }
+        int[] answers = results.answersOf(username);
+        if (answers == null) {
+            return 0;
+        }
+        int position = 0;
+        while (position < answers.length && answers[order.question(position)] != ResultStore.NO_ANSWER) {
+            position++;
         }
+        return position;
+    }
+
+    /**
+     * @return the student's score so far as a percentage of the whole exam
+     */
+    int scorePercent(String username) {
+        ResultStore store = results;
+        return store.getScoreboard().percent(store.scoreOf(username));
+    }
+
+    /**
+     * Print the top of the live leaderboard; safe to call mid-exam
+     * @param limit Number of students to show
+     */
+    public void printLeaderboard(int limit) {
+        Scoreboard scoreboard = results.getScoreboard();
+        System.out.println("\n----- Leaderboard: " + examCode + " -----");
+        int rank = 0;
+        for (Scoreboard.Standing standing : scoreboard.top(limit)) {
+            System.out.println(++rank + ". " + standing.username() + " - " + standing.score()
+                    + "/" + scoreboard.getQuestionCount() + " (" + scoreboard.percent(standing.score()) + "%)");
+        }
+    }
+
+    /**
+     * Print how many students got each question right and wrong so far
+     */
+    public void printQuestionStats() {
+        QuestionPayloads questionSet = questions;
+        Scoreboard scoreboard = results.getScoreboard();
+        System.out.println("\n----- Question Statistics: " + examCode + " -----");
+        for (int i = 0; i < scoreboard.getQuestionCount(); i++) {
+            System.out.println(questionSet.question(i).getQuestionText() + " - Correct: "
+                    + scoreboard.correctCount(i) + ", Incorrect: " + scoreboard.incorrectCount(i));
+        }
+    }
+
+    String getExamCode() {
+        return examCode;
+    }
+
+    QuestionPayloads currentQuestions() {
+        return questions;
+    }
+
+    ResultStore currentResults() {
+        return results;
+    }
+
+    // Exam progress, reported by ClientHandler; only queues an event for the reporter
+
+    void examStarted(String username) {
+        ServerMetrics.EXAMS_STARTED.increment();
+        reporter.started(this, username);
+    }
+
+    void examFinished(String username, int percent) {
+        ServerMetrics.EXAMS_FINISHED.increment();
+        reporter.finished(this, username, percent);
+    }
+
+    void examLeft(String username) {
+        ServerMetrics.EXAMS_LEFT.increment();
+        reporter.left(this, username);
+    }
+
+    /**
+     * Ask the reporter thread for a full report of every student's answers.
+     * It is also written by itself once every student who started has ended.
+     */
+    public void printAllResults() {
+        reporter.requestFullReport(this);
     }
 }
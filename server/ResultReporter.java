@@ -0,0 +1,217 @@
+package server;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes exam reports on its own thread. Handlers only queue an event when
+ * a student starts, finishes or drops out; the writer batches those events,
+ * prints a progress summary covering just the students who finished since
+ * the last one, and prints the full report at the first summary after
+ * every student who started has ended (or when asked, or at shutdown).
+ * Each student's answers are therefore printed once as they finish and
+ * once in the full report, rather than everyone's on every completion.
+ * One writer serves every exam session, keeping a tally for each.
+ */
+final class ResultReporter {
+    private enum Kind { STARTED, FINISHED, LEFT, FULL_REPORT, SHUTDOWN }
+
+    private record Event(Kind kind, ResultManager exam, String username, int percent) { }
+
+    // Progress of one exam session, as seen by the writer
+    private static final class Tally {
+        final List<Event> newlyFinished = new ArrayList<>();
+        int inExam;
+        int finished;
+        int left;
+        boolean changedSinceFullReport;
+    }
+
+    private final LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+    private final PrintStream out;
+    private final long intervalNanos;
+    private final Thread writer;
+
+    // Writer thread only; a tally for each session that has had any event
+    private final Map<ResultManager, Tally> tallies = new LinkedHashMap<>();
+
+    /**
+     * @param out Where reports go
+     * @param intervalMillis How often to print a progress summary, if anyone has finished
+     */
+    ResultReporter(PrintStream out, long intervalMillis) {
+        this.out = out;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        writer = new Thread(this::run, "result-reporter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param file Report file, appended to; empty for standard output
+     */
+    static ResultReporter start(String file, long intervalMillis) {
+        PrintStream out = System.out;
+        if (!file.isEmpty()) {
+            try {
+                out = new PrintStream(new FileOutputStream(file, true), false, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not open report file " + file + ", reporting to stdout: " + e.getMessage());
+            }
+        }
+        return new ResultReporter(out, intervalMillis);
+    }
+
+    void started(ResultManager exam, String username) {
+        queue.add(new Event(Kind.STARTED, exam, username, 0));
+    }
+
+    void finished(ResultManager exam, String username, int percent) {
+        queue.add(new Event(Kind.FINISHED, exam, username, percent));
+    }
+
+    void left(ResultManager exam, String username) {
+        queue.add(new Event(Kind.LEFT, exam, username, 0));
+    }
+
+    void requestFullReport(ResultManager exam) {
+        queue.add(new Event(Kind.FULL_REPORT, exam, null, 0));
+    }
+
+    /**
+     * Write whatever is outstanding, including a full report, and stop
+     */
+    void close() {
+        queue.add(new Event(Kind.SHUTDOWN, null, null, 0));
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>();
+        long nextSummary = System.nanoTime() + intervalNanos;
+        while (true) {
+            try {
+                Event first = queue.poll(Math.max(0, nextSummary - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            Set<ResultManager> fullReports = new HashSet<>();
+            boolean shutdown = false;
+            for (Event event : batch) {
+                Tally tally = event.exam() == null ? null : tallies.computeIfAbsent(event.exam(), e -> new Tally());
+                switch (event.kind()) {
+                    case STARTED -> tally.inExam++;
+                    case FINISHED -> {
+                        tally.inExam--;
+                        tally.finished++;
+                        tally.newlyFinished.add(event);
+                        tally.changedSinceFullReport = true;
+                    }
+                    case LEFT -> {
+                        tally.inExam--;
+                        tally.left++;
+                        tally.changedSinceFullReport = true;
+                    }
+                    case FULL_REPORT -> fullReports.add(event.exam());
+                    case SHUTDOWN -> shutdown = true;
+                }
+            }
+            batch.clear();
+
+            try {
+                long now = System.nanoTime();
+                boolean due = now - nextSummary >= 0;
+                for (Map.Entry<ResultManager, Tally> entry : tallies.entrySet()) {
+                    ResultManager exam = entry.getKey();
+                    Tally tally = entry.getValue();
+                    boolean fullReport = fullReports.contains(exam);
+                    // Checked only when a summary is due, so students trickling in and out one by one
+                    // can't cause a full report each
+                    boolean examOver = due && tally.inExam == 0 && tally.changedSinceFullReport;
+                    if (due || fullReport || shutdown) {
+                        writeSummary(exam, tally);
+                    }
+                    if (fullReport || examOver || (shutdown && tally.changedSinceFullReport)) {
+                        writeFullReport(exam);
+                        tally.changedSinceFullReport = false;
+                    }
+                }
+                if (due || shutdown) {
+                    nextSummary = now + intervalNanos;
+                }
+                out.flush();
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Could not write exam report: " + e);
+            }
+            if (shutdown) {
+                return;
+            }
+        }
+    }
+
+    // Only the students who finished since the last summary
+    private void writeSummary(ResultManager exam, Tally tally) {
+        List<Event> newlyFinished = tally.newlyFinished;
+        if (newlyFinished.isEmpty()) {
+            return;
+        }
+        QuestionPayloads questionSet = exam.currentQuestions();
+        ResultStore store = exam.currentResults();
+        int total = 0;
+        for (Event event : newlyFinished) {
+            total += event.percent();
+        }
+        out.println("\n📊 Exam " + exam.getExamCode() + ": " + newlyFinished.size() + " more student(s) finished, average "
+                + total / newlyFinished.size() + "% (" + tally.finished + " finished, " + tally.left + " left early, "
+                + tally.inExam + " still in the exam)");
+        for (Event event : newlyFinished) {
+            out.println("Results for " + event.username() + ": " + event.percent() + "%");
+            writeAnswers(questionSet, store.answersOf(event.username()));
+        }
+        newlyFinished.clear();
+    }
+
+    private void writeFullReport(ResultManager exam) {
+        QuestionPayloads questionSet = exam.currentQuestions();
+        ResultStore store = exam.currentResults();
+        Scoreboard scoreboard = store.getScoreboard();
+        SortedMap<String, int[]> snapshot = store.snapshot();
+        out.println("\n----- All Exam Results: " + exam.getExamCode() + " -----");
+        for (Map.Entry<String, int[]> entry : snapshot.entrySet()) {
+            out.println("Results for " + entry.getKey() + ":");
+            writeAnswers(questionSet, entry.getValue());
+            int score = store.scoreOf(entry.getKey());
+            out.println("Score: " + score + "/" + scoreboard.getQuestionCount()
+                    + " (" + scoreboard.percent(score) + "%)");
+        }
+        out.println("\n----- Question Statistics -----");
+        for (int i = 0; i < scoreboard.getQuestionCount(); i++) {
+            out.println(questionSet.question(i).getQuestionText() + " - Correct: "
+                    + scoreboard.correctCount(i) + ", Incorrect: " + scoreboard.incorrectCount(i));
+        }
+    }
+
+    private void writeAnswers(QuestionPayloads questionSet, int[] answers) {
+        if (answers == null) {
+            return;
+        }
+        for (int i = 0; i < answers.length && i < questionSet.size(); i++) {
+            if (answers[i] != ResultStore.NO_ANSWER) {
+                out.println(questionSet.question(i).getQuestionText() + " - Answer: " + answers[i]);
+            }
+        }
+    }
+}
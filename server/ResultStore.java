@@ -0,0 +1,150 @@
+package server;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent answer storage for one question set. Each student gets a slot
+ * holding an int per question (indexed by question ordinal, 0 = unanswered),
+ * so recording an answer allocates nothing and students never contend with
+ * each other: the only lock is the student's own. Answers are graded as they
+ * are recorded, into the store's Scoreboard.
+ */
+public final class ResultStore {
+    public static final int NO_ANSWER = 0;
+
+    private final int questionCount;
+    private final ConcurrentHashMap<String, StudentSlot> slots = new ConcurrentHashMap<>();
+    private final Scoreboard scoreboard;
+
+    /**
+     * @param answerKey The correct option of each question, 1-based
+     */
+    public ResultStore(int[] answerKey) {
+        this.questionCount = answerKey.length;
+        this.scoreboard = new Scoreboard(answerKey);
+    }
+
+    public Scoreboard getScoreboard() {
+        return scoreboard;
+    }
+
+    public int getQuestionCount() {
+        return questionCount;
+    }
+
+    /**
+     * Record (or overwrite) a student's answer
+     * @param username The student
+     * @param questionIndex Question ordinal in the exam
+     * @param answer The chosen option, 1-based
+     * @throws IllegalArgumentException if there is no such question, or the option can't be one
+     */
+    public void record(String username, int questionIndex, int answer) {
+        if (questionIndex < 0 || questionIndex >= questionCount) {
+            throw new IllegalArgumentException("No question " + questionIndex + " in a set of " + questionCount);
+        }
+        if (answer < 1 || answer > ExamProtocol.MAX_OPTIONS) {
+            // The journal keeps an option in a byte, where 0 means unanswered
+            throw new IllegalArgumentException("Option " + answer + " is out of range (1-" + ExamProtocol.MAX_OPTIONS + ")");
+        }
+        StudentSlot slot = slots.get(username);
+        if (slot == null) {
+            slot = slots.computeIfAbsent(username, u -> {
+                scoreboard.enter(u);
+                return new StudentSlot(u, questionCount);
+            });
+        }
+        slot.set(questionIndex, answer, scoreboard);
+    }
+
+    /**
+     * @return the number of questions the student currently has right
+     */
+    public int scoreOf(String username) {
+        StudentSlot slot = slots.get(username);
+        return slot == null ? 0 : slot.score();
+    }
+
+    /**
+     * @return a consistent copy of one student's answers, or null if they haven't answered anything
+     */
+    public int[] answersOf(String username) {
+        StudentSlot slot = slots.get(username);
+        return slot == null ? null : slot.snapshot();
+    }
+
+    /**
+     * Copy every student's answers. Each student's row is internally
+     * consistent; rows are taken one after another without stopping writers.
+     * @return username -> answers, sorted by username
+     */
+    public SortedMap<String, int[]> snapshot() {
+        SortedMap<String, int[]> copy = new TreeMap<>();
+        for (StudentSlot slot : slots.values()) {
+            copy.put(slot.username, slot.snapshot());
+        }
+        return copy;
+    }
+
+    public int studentCount() {
+        return slots.size();
+    }
+
+    static final class StudentSlot {
+        private final String username;
+        private final int[] answers;
+        private final StampedLock lock = new StampedLock();
+        private int score;
+
+        StudentSlot(String username, int questionCount) {
+            this.username = username;
+            this.answers = new int[questionCount];
+        }
+
+        void set(int questionIndex, int answer, Scoreboard scoreboard) {
+            long stamp = lock.writeLock();
+            try {
+                int previous = answers[questionIndex];
+                answers[questionIndex] = answer;
+                int delta = scoreboard.onAnswer(questionIndex, previous, answer);
+                if (delta != 0) {
+                    scoreboard.move(username, score, score + delta);
+                    score += delta;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int score() {
+            long stamp = lock.tryOptimisticRead();
+            int current = score;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    current = score;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return current;
+        }
+
+        int[] snapshot() {
+            // Optimistic read: no lock taken unless a write raced with the copy
+            long stamp = lock.tryOptimisticRead();
+            int[] copy = answers.clone();
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    copy = answers.clone();
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return copy;
+        }
+    }
+}
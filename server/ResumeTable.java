@@ -0,0 +1,163 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every logged-in student's seat, by the session token they were given at
+ * login, so a student whose connection drops can carry on over a new one
+ * without logging in again. A seat is a few fields: who, which exam, and
+ * where they are in it (their answers are already in the exam's results),
+ * plus the handler holding it now; none while the student is away. A seat
+ * left empty for RESUME_WINDOW_MS is given up, and a student who was in the
+ * exam counted as having left it.
+ */
+final class ResumeTable {
+    record Token(long high, long low) {
+        static Token read(ByteBuffer buf) {
+            return new Token(buf.getLong(), buf.getLong());
+        }
+
+        byte[] bytes() {
+            return ByteBuffer.allocate(ExamProtocol.SESSION_TOKEN_LENGTH).putLong(high).putLong(low).array();
+        }
+    }
+
+    /**
+     * A student's place, guarded by its own lock
+     */
+    static final class Seat {
+        final Token token;
+        final String username;
+        final ExamSession session;
+        private ClientHandler holder;
+        private final TimingWheel.Timeout expiry = Deadlines.newTimeout(() -> expire(this));
+        private boolean gone = false;
+        // Where the student was when their handler let go; questions is null before START
+        private QuestionPayloads questions;
+        private int questionIndex;
+        private int questionsSent;
+
+        private Seat(Token token, String username, ExamSession session, ClientHandler holder) {
+            this.token = token;
+            this.username = username;
+            this.session = session;
+            this.holder = holder;
+        }
+
+        /**
+         * Record where the student is; by the holding handler, as it lets go
+         */
+        synchronized void save(QuestionPayloads questions, int questionIndex, int questionsSent) {
+            this.questions = questions;
+            this.questionIndex = questionIndex;
+            this.questionsSent = questionsSent;
+        }
+
+        synchronized QuestionPayloads questions() {
+            return questions;
+        }
+
+        synchronized int questionIndex() {
+            return questionIndex;
+        }
+
+        synchronized int questionsSent() {
+            return questionsSent;
+        }
+    }
+
+    /**
+     * @param previous The handler that held the seat until now, which must hand over first
+     *                 (see ClientHandler.handOver); null if the seat was empty
+     */
+    record Claim(Seat seat, ClientHandler previous) { }
+
+    private static final ConcurrentHashMap<Token, Seat> seats = new ConcurrentHashMap<>();
+    private static final SecureRandom random = new SecureRandom();
+
+    private ResumeTable() {}
+
+    /**
+     * Give a student who has just logged in a seat and a token for it
+     */
+    static Seat issue(String username, ExamSession session, ClientHandler holder) {
+        while (true) {
+            Token token = new Token(random.nextLong(), random.nextLong());
+            Seat seat = new Seat(token, username, session, holder);
+            if (seats.putIfAbsent(token, seat) == null) {
+                return seat;
+            }
+        }
+    }
+
+    /**
+     * The holder's connection is gone: keep the seat for RESUME_WINDOW_MS,
+     * unless another connection has taken it already
+     */
+    static void park(Seat seat, ClientHandler holder) {
+        synchronized (seat) {
+            if (seat.holder != holder || seat.gone) {
+                return;
+            }
+            seat.holder = null;
+            seat.expiry.schedule(ServerConfig.RESUME_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+        Log.event(Log.Event.AWAY, seat.username, ServerConfig.RESUME_WINDOW_MS / 1000);
+    }
+
+    /**
+     * Move a seat to a new connection's handler
+     * @return null if the token is unknown or its seat given up
+     */
+    static Claim claim(Token token, ClientHandler claimant) {
+        Seat seat = seats.get(token);
+        if (seat == null) {
+            return null;
+        }
+        synchronized (seat) {
+            if (seat.gone) {
+                return null;
+            }
+            seat.expiry.cancel();
+            ClientHandler previous = seat.holder;
+            seat.holder = claimant;
+            return new Claim(seat, previous);
+        }
+    }
+
+    /**
+     * The student is done (finished, timed out or refused); the token no longer works
+     */
+    static void release(Seat seat) {
+        synchronized (seat) {
+            seat.gone = true;
+            seat.holder = null;
+            seat.expiry.cancel();
+        }
+        seats.remove(seat.token, seat);
+    }
+
+    static int size() {
+        return seats.size();
+    }
+
+    // On the wheel's thread: the student didn't come back in time
+    private static void expire(Seat seat) {
+        boolean inExam;
+        synchronized (seat) {
+            if (seat.holder != null || seat.gone) {
+                return; // claimed just as it expired
+            }
+            seat.gone = true;
+            inExam = seat.questions != null;
+        }
+        seats.remove(seat.token, seat);
+        if (inExam) {
+            seat.session.getResults().examLeft(seat.username);
+        }
+        Log.event(Log.Event.DISCONNECTED, seat.username);
+    }
+}
@@ -0,0 +1,87 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Builds roster files for UserDirectory. Hashing is spread over all cores.
+ *
+ *   java server.RosterTool students.csv students.roster [iterations]
+ *       (students.csv has one "username,password" per line)
+ *   java server.RosterTool --generate 10000 pass123 students.roster [iterations]
+ *       (student1 .. student10000, all with the same password; for load tests)
+ */
+public class RosterTool {
+    private static final int CHUNK = 256;
+
+    public static void main(String[] args) throws IOException {
+        List<String> usernames = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        Path output;
+        int iterations;
+        if (args.length >= 4 && args[0].equals("--generate")) {
+            int count = Integer.parseInt(args[1]);
+            for (int i = 1; i <= count; i++) {
+                usernames.add("student" + i);
+                passwords.add(args[2]);
+            }
+            output = Paths.get(args[3]);
+            iterations = args.length > 4 ? Integer.parseInt(args[4]) : ServerConfig.HASH_ITERATIONS;
+        } else if (args.length >= 2) {
+            try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int comma = line.indexOf(',');
+                    if (line.isBlank() || comma < 0) {
+                        continue;
+                    }
+                    usernames.add(line.substring(0, comma).trim());
+                    passwords.add(line.substring(comma + 1));
+                }
+            }
+            output = Paths.get(args[1]);
+            iterations = args.length > 2 ? Integer.parseInt(args[2]) : ServerConfig.HASH_ITERATIONS;
+        } else {
+            System.err.println("Usage: RosterTool <students.csv> <out.roster> [iterations]");
+            System.err.println("       RosterTool --generate <count> <password> <out.roster> [iterations]");
+            System.exit(1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        String[] names = usernames.toArray(new String[0]);
+        String[] secrets = passwords.toArray(new String[0]);
+        // Hash chunks in parallel, then write them in order
+        String[] chunks = IntStream.range(0, (names.length + CHUNK - 1) / CHUNK).parallel().mapToObj(c -> {
+            int from = c * CHUNK;
+            int to = Math.min(names.length, from + CHUNK);
+            StringWriter text = new StringWriter();
+            try {
+                UserDirectory.writeRoster(text, Arrays.copyOfRange(names, from, to),
+                        Arrays.copyOfRange(secrets, from, to), iterations);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return text.toString();
+        }).toArray(String[]::new);
+        try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            out.write("# username:iterations:salt:hash (" + UserDirectory.ALGORITHM + ")\n");
+            for (String chunk : chunks) {
+                out.write(chunk);
+            }
+        }
+        System.out.printf("✅ Wrote %d student(s) to %s in %d ms%n", names.length, output,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,121 @@
+package server;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live grading for one question set. ResultStore reports every change to a
+ * student's answer here, so scores and per-question counters are always
+ * current and nothing has to be recomputed from the answers. Students are
+ * kept in one bucket per possible score, which makes a score change O(1)
+ * and lets the leaderboard be read from the top without visiting everyone.
+ */
+public final class Scoreboard {
+    /**
+     * One leaderboard row
+     */
+    public record Standing(String username, int score) { }
+
+    private final int[] answerKey;
+    private final LongAdder[] correct;
+    private final LongAdder[] incorrect;
+    private final Set<String>[] byScore;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Scoreboard(int[] answerKey) {
+        this.answerKey = answerKey.clone();
+        correct = new LongAdder[answerKey.length];
+        incorrect = new LongAdder[answerKey.length];
+        for (int i = 0; i < answerKey.length; i++) {
+            correct[i] = new LongAdder();
+            incorrect[i] = new LongAdder();
+        }
+        byScore = new Set[answerKey.length + 1];
+        for (int s = 0; s < byScore.length; s++) {
+            byScore[s] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    public int getQuestionCount() {
+        return answerKey.length;
+    }
+
+    /**
+     * A student has been seen for the first time; they start on zero
+     */
+    void enter(String username) {
+        byScore[0].add(username);
+    }
+
+    /**
+     * Account for one answer changing. Called under the student's own lock,
+     * so a student's changes arrive here one at a time and in order.
+     * @param previous The answer being replaced, or NO_ANSWER
+     * @param answer The new answer
+     * @return the change in the student's score: -1, 0 or +1
+     */
+    int onAnswer(int questionIndex, int previous, int answer) {
+        int key = answerKey[questionIndex];
+        if (previous != ResultStore.NO_ANSWER) {
+            (previous == key ? correct : incorrect)[questionIndex].decrement();
+        }
+        (answer == key ? correct : incorrect)[questionIndex].increment();
+        return (answer == key ? 1 : 0) - (previous == key ? 1 : 0);
+    }
+
+    /**
+     * Move a student between score buckets; also called under the student's lock
+     */
+    void move(String username, int from, int to) {
+        byScore[from].remove(username);
+        byScore[to].add(username);
+    }
+
+    /**
+     * @return how many students currently have this question right
+     */
+    public long correctCount(int questionIndex) {
+        return correct[questionIndex].sum();
+    }
+
+    /**
+     * @return how many students have answered this question wrongly
+     */
+    public long incorrectCount(int questionIndex) {
+        return incorrect[questionIndex].sum();
+    }
+
+    /**
+     * The best students so far, highest score first and by name within a
+     * score. Walks the buckets from the top and stops once enough students
+     * are found. Taken while answers arrive, so a student whose score is
+     * changing at that instant may be left out, or shown at the score they
+     * had (never twice: one who dropped to a bucket not yet walked is skipped).
+     * @param limit Maximum number of rows
+     */
+    public List<Standing> top(int limit) {
+        List<Standing> standings = new ArrayList<>(Math.min(limit, 64));
+        Set<String> listed = new HashSet<>();
+        for (int s = byScore.length - 1; s >= 0 && standings.size() < limit; s--) {
+            if (byScore[s].isEmpty()) {
+                continue;
+            }
+            String[] names = byScore[s].toArray(new String[0]);
+            Arrays.sort(names);
+            for (int i = 0; i < names.length && standings.size() < limit; i++) {
+                if (listed.add(names[i])) {
+                    standings.add(new Standing(names[i], s));
+                }
+            }
+        }
+        return standings;
+    }
+
+    /**
+     * @return a score as a whole percentage of the questions
+     */
+    public int percent(int score) {
+        return answerKey.length == 0 ? 0 : Math.round(score * 100f / answerKey.length);
+    }
+}
@@ -0,0 +1,133 @@
+package server;
+
+/**
+ * Server settings, read once from system properties (e.g. -Dtestsync.engine=virtual)
+ */
+final class ServerConfig {
+    static final int PORT = Integer.getInteger("testsync.port", 12345);
+
+    // "nio" = selector loops, "virtual" = one virtual thread per connection
+    static final String ENGINE = System.getProperty("testsync.engine", "nio");
+
+    // Number of selector loops for the nio engine
+    static final int IO_THREADS = Integer.getInteger("testsync.ioThreads",
+            Runtime.getRuntime().availableProcessors());
+
+    // Directory for the crash-safe answer journal; "off" disables it
+    static final String JOURNAL_DIR = System.getProperty("testsync.journal", "journal");
+
+    // Exams whose journal is replayed at START even though it was closed normally, e.g. "DEFAULT,MATHS1";
+    // without this only a journal left open by a crash is, and a closed one is moved aside
+    static final String RECOVER_EXAMS = System.getProperty("testsync.recover", "");
+
+    // File the exam reports are appended to; empty = standard output
+    static final String REPORT_FILE = System.getProperty("testsync.report", "");
+
+    // How often a progress summary is written while students are finishing
+    static final long REPORT_INTERVAL_MS = Long.getLong("testsync.reportInterval", 5000);
+
+    // Roster of students and password hashes (see UserDirectory); the 20 demo students if missing
+    static final String ROSTER_FILE = System.getProperty("testsync.roster", "students.roster");
+
+    // PBKDF2 iterations for passwords hashed by this server (roster entries carry their own)
+    static final int HASH_ITERATIONS = Integer.getInteger("testsync.hashIterations", 100_000);
+
+    // Password checks run on their own pool, so slow hashing never holds up connection threads
+    static final int AUTH_THREADS = Integer.getInteger("testsync.authThreads",
+            Runtime.getRuntime().availableProcessors());
+
+    // Logins allowed to wait for a verifier; beyond this, logins are refused as busy
+    static final int AUTH_QUEUE = Integer.getInteger("testsync.authQueue", 1024);
+
+    // New connections allowed per second (token bucket, bursts of up to acceptBurst); 0 = no limit
+    static final int ACCEPT_RATE = Integer.getInteger("testsync.acceptRate", 500);
+    static final int ACCEPT_BURST = Math.max(1, Integer.getInteger("testsync.acceptBurst", ACCEPT_RATE));
+
+    // Connections that may be logging in at once (connected, not yet waiting or refused);
+    // beyond either limit a login is answered "busy, retry later" without checking the password
+    static final int MAX_HANDSHAKES = Integer.getInteger("testsync.maxHandshakes", 256);
+
+    // Shortest retry delay suggested to a busy client; longer when the login backlog takes longer to clear
+    static final long BUSY_RETRY_MS = Long.getLong("testsync.busyRetry", 1000);
+
+    // Time a new connection has to send its login before it is closed
+    static final long LOGIN_TIMEOUT_MS = Long.getLong("testsync.loginTimeout", 10_000);
+
+    // Exam session students join when they give no exam code at login
+    static final String DEFAULT_EXAM = System.getProperty("testsync.exam", "DEFAULT");
+
+    // Question bank (see QuestionBank); the three sample questions if missing
+    static final String QUESTION_BANK = System.getProperty("testsync.bank", "questions.csv");
+
+    // Bank questions kept parsed in memory, across all exams
+    static final int QUESTION_CACHE = Integer.getInteger("testsync.questionCache", 4096);
+
+    // Bank questions a newly opened exam uses, e.g. "1-40,97"; empty = the first 20
+    static final String EXAM_QUESTIONS = System.getProperty("testsync.examQuestions", "");
+
+    // Give each student their own question order, and (binary clients) option order
+    static final boolean SHUFFLE = !"false".equalsIgnoreCase(System.getProperty("testsync.shuffle"));
+
+    // Fixed seed for those orders, e.g. to reproduce a student's exam; random per exam if unset
+    static final Long SHUFFLE_SEED = Long.getLong("testsync.shuffleSeed");
+
+    // Questions a pipelining (binary v2) client is sent ahead, counting the current one;
+    // 1 = lock-step, one round trip per question
+    static final int QUESTIONS_IN_FLIGHT = Math.max(1, Integer.getInteger("testsync.prefetch", 3));
+
+    // Send waiting binary (v3) clients the exam's questions encrypted, so START only carries the key
+    static final boolean BUNDLE = !"false".equalsIgnoreCase(System.getProperty("testsync.bundle"));
+
+    // Exam length, passed to TimerBroadcaster with START
+    static final int EXAM_SECONDS = Integer.getInteger("testsync.examSeconds", 60);
+
+    // Time a student in the exam may go without answering before the connection is closed; 0 = no limit
+    static final long ANSWER_TIMEOUT_MS = Long.getLong("testsync.answerTimeout", (EXAM_SECONDS + 60) * 1000L);
+
+    // Time an authenticated student may wait for START before the connection is closed; 0 = no limit
+    static final long WAITING_TIMEOUT_MS = Long.getLong("testsync.waitingTimeout", 4 * 60 * 60 * 1000L);
+
+    // How long after their time is up (exam length plus any extra) a student's answers are submitted for them
+    static final long DEADLINE_GRACE_MS = Long.getLong("testsync.deadlineGrace", 2000);
+
+    // Students with extra time, one "username seconds" per line; none if missing
+    static final String ACCOMMODATIONS_FILE = System.getProperty("testsync.accommodations", "accommodations.txt");
+
+    // How long a student's place is kept after their connection drops, for them to resume it; 0 = no resuming
+    static final long RESUME_WINDOW_MS = Long.getLong("testsync.resumeWindow", 120_000);
+
+    // Resolution of the connection deadlines (see TimingWheel): they fire up to this much late
+    static final long TIMER_TICK_MS = Long.getLong("testsync.timerTick", 50);
+
+    // Port for GET /metrics (see ServerMetrics); 0 = no HTTP endpoint, JMX only
+    static final int METRICS_PORT = Integer.getInteger("testsync.metricsPort", 9090);
+
+    // Address the metrics endpoint listens on; local only unless a scraper elsewhere needs it
+    static final String METRICS_HOST = System.getProperty("testsync.metricsHost", "127.0.0.1");
+
+    private ServerConfig() {}
+
+    static boolean journalEnabled() {
+        return !"off".equalsIgnoreCase(JOURNAL_DIR);
+    }
+
+    static boolean recoverJournal(String examCode) {
+        for (String code : RECOVER_EXAMS.split(",")) {
+            if (code.trim().equalsIgnoreCase(examCode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static ConnectionEngine createEngine() {
+        switch (ENGINE.toLowerCase()) {
+            case "nio":
+                return new NioConnectionEngine(IO_THREADS);
+            case "virtual":
+                return new VirtualThreadConnectionEngine();
+            default:
+                throw new IllegalArgumentException("Unknown engine '" + ENGINE + "' (expected nio or virtual)");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package server;
+
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * The exam server's metrics, recorded where things happen and published by
+ * ExamServer at startup (see Metrics). Latencies are measured on the server:
+ * answer service time is from an answer arriving to its acknowledgement or
+ * next question being handed to the connection, not including the network;
+ * LoadGenerator measures the round trip as students see it.
+ */
+final class ServerMetrics {
+    static final Metrics REGISTRY = new Metrics("testsync");
+
+    static final Counter CONNECTIONS_ACCEPTED = REGISTRY.counter("connections_accepted", "Client connections accepted");
+    static final Counter CONNECTIONS_CLOSED = REGISTRY.counter("connections_closed", "Client connections closed");
+    static final Counter LOGINS_OK = REGISTRY.counter("logins_ok", "Logins that reached a waiting room or exam");
+    static final Counter LOGINS_FAILED = REGISTRY.counter("logins_failed", "Logins refused: unknown exam, user or password");
+    static final Counter LOGINS_BUSY = REGISTRY.counter("logins_busy",
+            "Logins turned away as busy: over the accept rate or handshake cap, or the verifier queue full");
+    static final Counter LOGIN_TIMEOUTS = REGISTRY.counter("login_timeouts", "Connections closed for sending no login in time");
+    static final Counter ANSWER_TIMEOUTS = REGISTRY.counter("answer_timeouts", "Exams closed for going too long without an answer");
+    static final Counter WAITING_TIMEOUTS = REGISTRY.counter("waiting_timeouts", "Waiting students closed for waiting too long for START");
+    static final Counter EXAMS_EXPIRED = REGISTRY.counter("exams_expired",
+            "Exams submitted by the server when the student's time ran out");
+    static final Counter RESUMES = REGISTRY.counter("resumes", "Students back on a new connection with their session token");
+    static final Counter RESUMES_REFUSED = REGISTRY.counter("resumes_refused",
+            "Resumes refused: token unknown, expired, or the student already done");
+    static final Counter PASSWORDS_CHECKED = REGISTRY.counter("passwords_checked", "Password checks run by UserManager");
+    static final Counter EXAMS_STARTED = REGISTRY.counter("exams_started", "Students who started an exam");
+    static final Counter EXAMS_FINISHED = REGISTRY.counter("exams_finished", "Students who answered every question, or whose time ran out");
+    static final Counter EXAMS_LEFT = REGISTRY.counter("exams_left", "Students who disconnected mid-exam");
+    static final Counter ANSWERS = REGISTRY.counter("answers", "Answers recorded by ResultManager");
+
+    static final LatencyHistogram LOGIN_TIME = REGISTRY.histogram("login",
+            "Login received to WAITING sent, including the wait for a verifier");
+    static final LatencyHistogram PASSWORD_CHECK_TIME = REGISTRY.histogram("password_check",
+            "Hashing time of one password check on a verifier thread");
+    static final LatencyHistogram ANSWER_SERVICE_TIME = REGISTRY.histogram("answer_service",
+            "Answer received to its acknowledgement and next question handed to the connection");
+    static final LatencyHistogram QUESTION_TIME = REGISTRY.histogram("question",
+            "Time students spent on a question: previous answer (or START) to this answer");
+
+    static {
+        REGISTRY.gauge("connections_open", "Client connections open now",
+                () -> CONNECTIONS_ACCEPTED.get() - CONNECTIONS_CLOSED.get());
+        REGISTRY.gauge("sessions", "Exam sessions open", () -> ExamSession.all().size());
+        REGISTRY.gauge("waiting_students", "Students in a waiting room, over all sessions", () -> {
+            int waiting = 0;
+            for (ExamSession session : ExamSession.all()) {
+                waiting += session.waitingCount();
+            }
+            return waiting;
+        });
+        REGISTRY.gauge("deadlines_pending", "Connection deadlines on the timing wheel", Deadlines::pending);
+        REGISTRY.gauge("resumable_seats", "Students holding a session token, connected or away", ResumeTable::size);
+        REGISTRY.gauge("handshakes", "Admitted connections still logging in",
+                () -> Admission.SERVER.handshakesInFlight());
+        REGISTRY.gauge("auth_threads_busy", "Verifier threads checking a password now", UserManager::activeVerifiers);
+        REGISTRY.gauge("auth_queue_length", "Logins waiting for a verifier thread", UserManager::queuedVerifications);
+        REGISTRY.gauge("auth_queue_capacity", "Logins allowed to wait before more are refused as busy",
+                () -> ServerConfig.AUTH_QUEUE);
+        REGISTRY.gauge("log_events_dropped", "Log events dropped because the log ring was full", Log::serverDropped);
+        REGISTRY.gauge("last_start_students", "Students released by the most recent START", () -> {
+            StartFanOut.Stats stats = StartFanOut.lastStart();
+            return stats == null ? 0 : stats.students();
+        });
+        REGISTRY.gauge("last_start_first_seconds", "Most recent START: release to the first student's dispatch",
+                () -> startSeconds(StartFanOut.Stats::firstNanos));
+        REGISTRY.gauge("last_start_median_seconds", "Most recent START: release to the median student's dispatch",
+                () -> startSeconds(StartFanOut.Stats::medianNanos));
+        REGISTRY.gauge("last_start_last_seconds", "Most recent START: release to the last student's dispatch",
+                () -> startSeconds(StartFanOut.Stats::lastNanos));
+    }
+
+    private ServerMetrics() {}
+
+    /**
+     * Register the MBean and start the /metrics endpoint, if enabled
+     */
+    static void publish() {
+        REGISTRY.publish("server", ServerConfig.METRICS_HOST, ServerConfig.METRICS_PORT);
+    }
+
+    private static double startSeconds(ToLongFunction<StartFanOut.Stats> time) {
+        StartFanOut.Stats stats = StartFanOut.lastStart();
+        return stats == null ? 0 : time.applyAsLong(stats) / 1e9;
+    }
+}
@@ -0,0 +1,83 @@
+package server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Releases the waiting room when the teacher types START. Every student's
+ * startExam is posted to their own connection's thread at once (with the nio
+ * engine, each selector loop starts its share of the room in parallel), and
+ * the time each one handed START and the first question to its connection
+ * is recorded. When the last one is done the first-to-last spread is
+ * printed and kept for metrics, so fairness can be checked on big rooms.
+ */
+final class StartFanOut {
+    /**
+     * How one START went
+     * @param students Students released
+     * @param firstNanos Release to the first student's dispatch
+     * @param medianNanos Release to the median student's dispatch
+     * @param lastNanos Release to the last student's dispatch
+     */
+    record Stats(int students, long firstNanos, long medianNanos, long lastNanos) {
+        long spreadNanos() {
+            return lastNanos - firstNanos;
+        }
+    }
+
+    private static volatile Stats last;
+
+    private final long releasedAt;
+    private final long[] dispatchedAt;
+    private final AtomicInteger remaining;
+
+    private StartFanOut(int students) {
+        dispatchedAt = new long[students];
+        remaining = new AtomicInteger(students);
+        releasedAt = System.nanoTime();
+    }
+
+    /**
+     * Start the exam for every student in the list, in parallel
+     */
+    static void release(List<ClientHandler> students) {
+        if (students.isEmpty()) {
+            return;
+        }
+        StartFanOut fanOut = new StartFanOut(students.size());
+        for (int i = 0; i < students.size(); i++) {
+            ClientHandler student = students.get(i);
+            int slot = i;
+            student.getConnection().execute(() -> {
+                try {
+                    student.startExam();
+                } finally {
+                    fanOut.dispatched(slot);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the most recent START, or null if there hasn't been one
+     */
+    static Stats lastStart() {
+        return last;
+    }
+
+    private void dispatched(int slot) {
+        // Each slot is written once; the decrement publishes it to whoever finishes last
+        dispatchedAt[slot] = System.nanoTime();
+        if (remaining.decrementAndGet() == 0) {
+            long[] times = dispatchedAt.clone();
+            Arrays.sort(times);
+            Stats stats = new Stats(times.length, times[0] - releasedAt,
+                    times[times.length / 2] - releasedAt, times[times.length - 1] - releasedAt);
+            last = stats;
+            System.out.printf("⏱️ START reached %d student(s): first after %.2f ms, median %.2f ms, last %.2f ms (spread %.2f ms)%n",
+                    stats.students(), stats.firstNanos() / 1e6, stats.medianNanos() / 1e6,
+                    stats.lastNanos() / 1e6, stats.spreadNanos() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Hierarchical timing wheel (Varghese and Lauck; the classic Linux timer
+ * scheme): thousands of deadlines on one thread, with scheduling, moving and
+ * cancelling a timeout each O(1), however many are pending. Time advances in
+ * ticks; each of LEVELS wheels has WHEEL_SIZE slots, the first one tick
+ * wide, each next level WHEEL_SIZE times wider. A timeout sits in the
+ * slot of the lowest level whose span reaches it, and is moved down a level
+ * ("cascaded") when the level below wraps round to it, so it fires on its
+ * tick: never early, at most a tick late.
+ *
+ * A Timeout is made once and scheduled again and again (e.g. one per
+ * student, moved on every answer), so keeping a deadline allocates nothing.
+ * Tasks run on the wheel's thread and must be quick; hand real work to
+ * another thread.
+ */
+final class TimingWheel {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    // Furthest a timeout can be placed, in ticks; later ones wait in the top level and are placed again as it turns
+    private static final long MAX_SPAN = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    /**
+     * A task to run at a deadline; schedule it any number of times
+     */
+    final class Timeout {
+        private final Runnable task;
+        private long expiresTick;
+        // Place in a slot's list; slot is -1 while not scheduled
+        private int slot = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Run the task at this System.nanoTime() (the wheel's clock), or as soon as possible if
+         * that has passed; replaces any earlier schedule
+         */
+        void scheduleAt(long deadlineNanos) {
+            synchronized (TimingWheel.this) {
+                if (slot >= 0) {
+                    unlink(this);
+                } else if (size++ == 0) {
+                    // The wheel was empty, so the ticks missed while it idled had nothing to do
+                    currentTick = Math.max(currentTick, tickOf(clock.getAsLong()));
+                    TimingWheel.this.notify();
+                }
+                // Rounded up, so it never fires early
+                expiresTick = Math.floorDiv(deadlineNanos - startNanos + tickNanos - 1, tickNanos);
+                place(this, currentTick + 1);
+            }
+        }
+
+        void schedule(long delay, TimeUnit unit) {
+            scheduleAt(clock.getAsLong() + unit.toNanos(delay));
+        }
+
+        /**
+         * @return false if it wasn't scheduled, or is already firing
+         */
+        boolean cancel() {
+            synchronized (TimingWheel.this) {
+                if (slot < 0) {
+                    return false;
+                }
+                unlink(this);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final LongSupplier clock;
+    private final long startNanos;
+    // Guarded by this: the head of each slot's list, the last tick processed, and the number scheduled
+    private final Timeout[] slots = new Timeout[LEVELS * WHEEL_SIZE];
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * @param name Name of the wheel's thread
+     * @param tickMillis Resolution: timeouts fire up to this much after their deadline
+     */
+    TimingWheel(String name, long tickMillis) {
+        this(tickMillis, System::nanoTime);
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * A wheel with no thread of its own, on the given clock; whoever owns it calls fireDue()
+     */
+    TimingWheel(long tickMillis, LongSupplier clock) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+    }
+
+    /**
+     * @param task Run on the wheel's thread each time the timeout expires
+     */
+    Timeout newTimeout(Runnable task) {
+        return new Timeout(task);
+    }
+
+    /**
+     * @return timeouts scheduled and not yet fired or cancelled
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private long tickOf(long nanos) {
+        return Math.floorDiv(nanos - startNanos, tickNanos);
+    }
+
+    // Put a timeout in the slot for its tick, counted from currentTick; never before earliestTick
+    private void place(Timeout timeout, long earliestTick) {
+        long placeAt = Math.max(timeout.expiresTick, earliestTick);
+        long delta = Math.min(placeAt - currentTick, MAX_SPAN);
+        placeAt = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = level * WHEEL_SIZE + (int) (placeAt >>> (WHEEL_BITS * level) & WHEEL_MASK);
+        Timeout head = slots[slot];
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        slots[slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.slot = -1;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    // Take a slot's whole list, for cascading or firing
+    private Timeout detach(int slot) {
+        Timeout head = slots[slot];
+        slots[slot] = null;
+        return head;
+    }
+
+    // Advance one tick: cascade the levels that wrap round here, then collect the timeouts due
+    private void advance(List<Timeout> due) {
+        long tick = ++currentTick;
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick >>> (WHEEL_BITS * (level - 1)) & WHEEL_MASK) != 0) {
+                break;
+            }
+            Timeout timeout = detach(level * WHEEL_SIZE + (int) (tick >>> (WHEEL_BITS * level) & WHEEL_MASK));
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                place(timeout, tick); // may land in this tick's slot, collected below
+                timeout = next;
+            }
+        }
+        Timeout timeout = detach((int) (tick & WHEEL_MASK));
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.slot = -1;
+            timeout.prev = null;
+            timeout.next = null;
+            if (timeout.expiresTick > tick) {
+                place(timeout, tick + 1); // parked beyond the wheel's span; not due yet
+            } else {
+                size--;
+                due.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void run() {
+        List<Timeout> due = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                while (size == 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            long nextTickAt = fire(due);
+            LockSupport.parkNanos(nextTickAt - clock.getAsLong());
+        }
+    }
+
+    /**
+     * Run every timeout due by the clock's time, on the calling thread
+     */
+    void fireDue() {
+        fire(new ArrayList<>());
+    }
+
+    // Returns the clock time the next tick is due
+    private long fire(List<Timeout> due) {
+        long nextTickAt;
+        synchronized (this) {
+            long nowTick = tickOf(clock.getAsLong());
+            while (currentTick < nowTick) {
+                advance(due);
+            }
+            nextTickAt = startNanos + (currentTick + 1) * tickNanos;
+        }
+        for (Timeout timeout : due) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Timeout task failed: " + e);
+            }
+        }
+        due.clear();
+        return nextTickAt;
+    }
+}
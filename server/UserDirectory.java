@@ -0,0 +1,267 @@
+package server;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * The students allowed to log in, with salted PBKDF2 password hashes.
+ *
+ * Users are numbered; names, iteration counts and salt+hash records live in
+ * flat arrays indexed by that number, and an open-addressing table maps a
+ * name's hash to the number. Tens of thousands of students therefore cost
+ * a few arrays rather than an object graph per student. The whole index is
+ * immutable and replaced on registration, so lookups take no lock.
+ *
+ * Roster files have one student per line:
+ *   username:iterations:base64(salt):base64(hash)
+ * Blank lines and lines starting with # are ignored. RosterTool writes them.
+ */
+public final class UserDirectory {
+    public enum Outcome { OK, UNKNOWN_USER, BAD_PASSWORD }
+
+    static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    static final int SALT_BYTES = 16;
+    static final int HASH_BYTES = 32;
+    private static final int RECORD_BYTES = SALT_BYTES + HASH_BYTES;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<SecretKeyFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    });
+
+    private volatile Index index;
+    private final int defaultIterations;
+    // Hashed against when the user doesn't exist, so unknown names take as long as wrong passwords
+    private final byte[] decoySalt = new byte[SALT_BYTES];
+
+    private UserDirectory(Index index, int defaultIterations) {
+        this.index = index;
+        this.defaultIterations = defaultIterations;
+        RANDOM.nextBytes(decoySalt);
+    }
+
+    /**
+     * @param defaultIterations PBKDF2 iterations for users registered later
+     * @return an empty directory
+     */
+    public static UserDirectory empty(int defaultIterations) {
+        return new UserDirectory(new Builder(16).build(), defaultIterations);
+    }
+
+    /**
+     * Bulk-load a roster file
+     * @param defaultIterations PBKDF2 iterations for users registered later
+     */
+    public static UserDirectory load(Path roster, int defaultIterations) throws IOException {
+        // Roughly 90 bytes a line; only a sizing hint
+        Builder builder = new Builder((int) Math.min(Integer.MAX_VALUE / RECORD_BYTES, Files.size(roster) / 90 + 16));
+        Base64.Decoder base64 = Base64.getDecoder();
+        try (BufferedReader in = Files.newBufferedReader(roster, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.trim().split(":");
+                byte[] salt;
+                byte[] hash;
+                int iterations;
+                try {
+                    if (fields.length != 4) {
+                        throw new IllegalArgumentException("expected 4 fields");
+                    }
+                    iterations = Integer.parseInt(fields[1]);
+                    salt = base64.decode(fields[2]);
+                    hash = base64.decode(fields[3]);
+                    if (salt.length != SALT_BYTES || hash.length != HASH_BYTES || iterations <= 0) {
+                        throw new IllegalArgumentException("bad salt, hash or iteration count");
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(roster + " line " + lineNumber + ": " + e.getMessage());
+                }
+                builder.add(fields[0], iterations, salt, hash);
+            }
+        }
+        try {
+            return new UserDirectory(builder.build(), defaultIterations);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(roster + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write roster lines for the given users, with a fresh salt each
+     * @param usernames The users, in the order to write them
+     * @param passwords Their plain passwords, same order
+     */
+    static void writeRoster(Writer out, String[] usernames, String[] passwords, int iterations) throws IOException {
+        Base64.Encoder base64 = Base64.getEncoder();
+        for (int i = 0; i < usernames.length; i++) {
+            byte[] salt = newSalt();
+            byte[] hash = hash(passwords[i], salt, iterations);
+            out.write(usernames[i] + ":" + iterations + ":" + base64.encodeToString(salt) + ":" + base64.encodeToString(hash) + "\n");
+        }
+    }
+
+    public int size() {
+        return index.count;
+    }
+
+    public boolean contains(String username) {
+        return index.find(username) >= 0;
+    }
+
+    /**
+     * Check a password. Deliberately slow: run it off the I/O threads.
+     */
+    public Outcome verify(String username, String password) {
+        Index current = index;
+        int user = current.find(username);
+        if (user < 0) {
+            hash(password, decoySalt, defaultIterations);
+            return Outcome.UNKNOWN_USER;
+        }
+        int offset = user * RECORD_BYTES;
+        byte[] salt = Arrays.copyOfRange(current.credentials, offset, offset + SALT_BYTES);
+        byte[] expected = Arrays.copyOfRange(current.credentials, offset + SALT_BYTES, offset + RECORD_BYTES);
+        byte[] actual = hash(password, salt, current.iterations[user]);
+        return MessageDigest.isEqual(expected, actual) ? Outcome.OK : Outcome.BAD_PASSWORD;
+    }
+
+    /**
+     * Add one user. Copies the index, so it suits the occasional
+     * registration; use a roster file for bulk loads.
+     * @return false if the user already exists
+     */
+    public synchronized boolean register(String username, String password) {
+        Index current = index;
+        if (current.find(username) >= 0) {
+            return false;
+        }
+        byte[] salt = newSalt();
+        byte[] hash = hash(password, salt, defaultIterations);
+        Builder builder = new Builder(current.count + 1);
+        for (int i = 0; i < current.count; i++) {
+            int offset = i * RECORD_BYTES;
+            builder.add(current.names[i], current.iterations[i],
+                    Arrays.copyOfRange(current.credentials, offset, offset + SALT_BYTES),
+                    Arrays.copyOfRange(current.credentials, offset + SALT_BYTES, offset + RECORD_BYTES));
+        }
+        builder.add(username, defaultIterations, salt, hash);
+        index = builder.build();
+        return true;
+    }
+
+    private static byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return salt;
+    }
+
+    static byte[] hash(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BYTES * 8);
+        try {
+            return FACTORY.get().generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static int spread(String username) {
+        int h = username.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Index {
+        final String[] names;
+        final int[] iterations;
+        final byte[] credentials; // salt then hash, RECORD_BYTES per user
+        final int[] table;        // user number + 1, 0 = empty
+        final int count;
+
+        Index(String[] names, int[] iterations, byte[] credentials, int count) {
+            this.names = names;
+            this.iterations = iterations;
+            this.credentials = credentials;
+            this.count = count;
+            // At most half full, so probe runs stay short
+            int size = Integer.highestOneBit(Math.max(4, count * 2 - 1)) << 1;
+            table = new int[size];
+            for (int user = 0; user < count; user++) {
+                int slot = spread(names[user]) & (size - 1);
+                while (table[slot] != 0) {
+                    if (names[table[slot] - 1].equals(names[user])) {
+                        throw new IllegalArgumentException("duplicate user " + names[user]);
+                    }
+                    slot = (slot + 1) & (size - 1);
+                }
+                table[slot] = user + 1;
+            }
+        }
+
+        int find(String username) {
+            if (username == null) {
+                return -1;
+            }
+            int mask = table.length - 1;
+            for (int slot = spread(username) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int user = table[slot] - 1;
+                if (names[user].equals(username)) {
+                    return user;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Builder {
+        private String[] names;
+        private int[] iterations;
+        private byte[] credentials;
+        private int count;
+
+        Builder(int expected) {
+            names = new String[Math.max(1, expected)];
+            iterations = new int[names.length];
+            credentials = new byte[names.length * RECORD_BYTES];
+        }
+
+        void add(String username, int iterationCount, byte[] salt, byte[] hash) {
+            if (count == names.length) {
+                int capacity = names.length * 2;
+                names = Arrays.copyOf(names, capacity);
+                iterations = Arrays.copyOf(iterations, capacity);
+                credentials = Arrays.copyOf(credentials, capacity * RECORD_BYTES);
+            }
+            names[count] = username;
+            iterations[count] = iterationCount;
+            System.arraycopy(salt, 0, credentials, count * RECORD_BYTES, SALT_BYTES);
+            System.arraycopy(hash, 0, credentials, count * RECORD_BYTES + SALT_BYTES, HASH_BYTES);
+            count++;
+        }
+
+        Index build() {
+            return new Index(Arrays.copyOf(names, count), Arrays.copyOf(iterations, count),
+                    Arrays.copyOf(credentials, count * RECORD_BYTES), count);
+        }
+    }
+}
@@ -1,38 +1,53 @@
 package server;
 
-import java.util.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class UserManager {
-    private static Map<String, String> registeredUsers = new HashMap<>();
-    
-    // Static block to pre-register 20 students
-    static {
-        registeredUsers.put("student1", "pass123");
-        registeredUsers.put("student2", "pass123");
-        registeredUsers.put("student3", "pass123");
-        registeredUsers.put("student4", "pass123");
-        registeredUsers.put("student5", "pass123");
-        registeredUsers.put("student6", "pass123");
-        registeredUsers.put("student7", "pass123");
-        registeredUsers.put("student8", "pass123");
-        registeredUsers.put("student9", "pass123");
-        registeredUsers.put("student10", "pass123");
-        registeredUsers.put("student11", "pass123");
-        registeredUsers.put("student12", "pass123");
-        registeredUsers.put("student13", "pass123");
-        registeredUsers.put("student14", "pass123");
-        registeredUsers.put("student15", "pass123");
-        registeredUsers.put("student16", "pass123");
-        registeredUsers.put("student17", "pass123");
-        registeredUsers.put("student18", "pass123");
-        registeredUsers.put("student19", "pass123");
-        registeredUsers.put("student20", "pass123");
-        
+    private static final UserDirectory directory = loadDirectory();
+
+    // Bounded pool for the deliberately slow password hashing, apart from the connection threads
+    private static final ThreadPoolExecutor verifiers = new ThreadPoolExecutor(
+            ServerConfig.AUTH_THREADS, ServerConfig.AUTH_THREADS, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(ServerConfig.AUTH_QUEUE), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "auth-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Load the roster file, or pre-register the 20 demo students
+    private static UserDirectory loadDirectory() {
+        Path roster = Paths.get(ServerConfig.ROSTER_FILE);
+        long start = System.nanoTime();
+        if (Files.exists(roster)) {
+            try {
+                UserDirectory loaded = UserDirectory.load(roster, ServerConfig.HASH_ITERATIONS);
+                System.out.printf("✅ %d students loaded from %s in %d ms%n", loaded.size(), roster,
+                        (System.nanoTime() - start) / 1_000_000);
+                return loaded;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load roster " + roster + ": " + e.getMessage(), e);
+            }
+        }
+        UserDirectory demo = UserDirectory.empty(ServerConfig.HASH_ITERATIONS);
+        for (int i = 1; i <= 20; i++) {
+            demo.register("student" + i, "pass123");
+        }
         System.out.println("✅ 20 students registered in the system");
+        return demo;
     }
-    
+
     /**
-     * Authenticate a user with username and password
+     * Authenticate a user with username and password, on the calling thread
      * @param username The username to check
      * @param password The password to verify
      * @return true if credentials are valid, false otherwise
@@ -41,22 +56,52 @@ public class UserManager {
         if (username == null || password == null) {
             return false;
         }
-        
-        String storedPassword = registeredUsers.get(username);
-        if (storedPassword == null) {
-            System.out.println("❌ Login attempt failed: User '" + username + "' not registered");
-            return false;
+
+        long start = System.nanoTime();
+        UserDirectory.Outcome result = directory.verify(username, password);
+        ServerMetrics.PASSWORD_CHECK_TIME.record(System.nanoTime() - start);
+        ServerMetrics.PASSWORDS_CHECKED.increment();
+        switch (result) {
+            case OK:
+                Log.event(Log.Event.LOGIN_OK, username);
+                return true;
+            case UNKNOWN_USER:
+                Log.event(Log.Event.LOGIN_UNKNOWN_USER, username);
+                return false;
+            default:
+                Log.event(Log.Event.LOGIN_BAD_PASSWORD, username);
+                return false;
         }
-        
-        if (storedPassword.equals(password)) {
-            System.out.println("✅ Login successful: " + username);
-            return true;
-        } else {
-            System.out.println("❌ Login attempt failed: Invalid password for '" + username + "'");
-            return false;
+    }
+
+    /**
+     * Authenticate on the verifier pool
+     * @return completes with the result of authenticate, or exceptionally with
+     *         RejectedExecutionException if too many logins are already waiting
+     */
+    static CompletableFuture<Boolean> authenticateAsync(String username, String password) {
+        return authenticateAsync(username, password, verifiers);
+    }
+
+    // The same on a given pool
+    static CompletableFuture<Boolean> authenticateAsync(String username, String password, Executor pool) {
+        try {
+            return CompletableFuture.supplyAsync(() -> authenticate(username, password), pool);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
         }
     }
-    
+
+    // Verifier pool saturation, for ServerMetrics
+
+    static int activeVerifiers() {
+        return verifiers.getActiveCount();
+    }
+
+    static int queuedVerifications() {
+        return verifiers.getQueue().size();
+    }
+
     /**
      * Register a new user (optional - for future use)
      * @param username The username to register
@@ -64,27 +109,23 @@ public class UserManager {
      * @return true if registration successful, false if user already exists
      */
     public static boolean registerUser(String username, String password) {
-        if (registeredUsers.containsKey(username)) {
-            return false;
-        }
-        registeredUsers.put(username, password);
-        return true;
+        return directory.register(username, password);
     }
-    
+
     /**
      * Check if a user is registered
      * @param username The username to check
      * @return true if user exists, false otherwise
      */
     public static boolean isUserRegistered(String username) {
-        return registeredUsers.containsKey(username);
+        return directory.contains(username);
     }
-    
+
     /**
      * Get total number of registered users
      * @return count of registered users
      */
     public static int getRegisteredUserCount() {
-        return registeredUsers.size();
+        return directory.size();
     }
 }
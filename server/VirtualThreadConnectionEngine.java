@@ -0,0 +1,203 @@
+package server;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Blocking engine with one virtual thread per connection. A parked virtual
+ * thread is only a small heap object, so waiting students still don't pin a
+ * platform thread. Sends and tasks are queued and run in order on a second,
+ * short-lived virtual thread, so a slow reader never blocks while a
+ * ClientHandler lock (a monitor, which would pin its carrier) is held.
+ */
+final class VirtualThreadConnectionEngine implements ConnectionEngine {
+    private static final int INITIAL_READ_BUFFER = 1024;
+    private static final int MAX_READ_BUFFER = 2 * WireProtocol.MAX_INBOUND_MESSAGE;
+
+    private ServerSocketChannel serverChannel;
+
+    @Override
+    public void open(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+    }
+
+    @Override
+    public void serve() throws IOException {
+        Thread.Builder builder = Thread.ofVirtual().name("client-", 0);
+        while (true) {
+            SocketChannel channel = serverChannel.accept();
+            builder.start(new BlockingConnection(channel));
+        }
+    }
+
+    @Override
+    public String name() {
+        return "virtual threads";
+    }
+
+    static final class BlockingConnection implements Connection, Runnable {
+        private final SocketChannel channel;
+        private final ClientHandler handler;
+
+        // Tasks and writes, run one at a time in the order posted on a virtual thread started
+        // when there is work: the same order the NIO engine's loop gives them. Writes happen
+        // only here, so nobody blocks on a full socket while holding a ClientHandler lock.
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        // Guarded by itself
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>(4);
+        private boolean flushScheduled = false;
+        private boolean closeRequested = false;
+
+        BlockingConnection(SocketChannel channel) {
+            this.channel = channel;
+            this.handler = new ClientHandler(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                // A peer that vanished (network gone, laptop shut) is found and closed by the OS, not only by a deadline
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                ByteBuffer buf = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+                while (channel.read(buf) >= 0) {
+                    buf.flip();
+                    handler.onInput(buf);
+                    buf.compact();
+                    if (!buf.hasRemaining()) {
+                        // A single message bigger than the buffer (long username etc.)
+                        if (buf.capacity() >= MAX_READ_BUFFER) {
+                            throw new StreamCorruptedException("message too large");
+                        }
+                        buf = ByteBuffer.allocate(buf.capacity() * 2).put(buf.flip());
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                // closed by close() or the peer
+            } catch (StreamCorruptedException | RuntimeException e) {
+                Log.error(Log.Event.CLIENT_ERROR, handler.getUsername(), e.getMessage());
+            } catch (IOException e) {
+                // connection reset etc.
+            } finally {
+                closeQuietly();
+                handler.onDisconnect();
+            }
+        }
+
+        @Override
+        public void send(ByteBuffer... messages) {
+            synchronized (outbound) {
+                if (closeRequested) {
+                    return;
+                }
+                for (ByteBuffer message : messages) {
+                    outbound.add(message.duplicate());
+                }
+                if (flushScheduled) {
+                    return;
+                }
+                flushScheduled = true;
+            }
+            submit(this::flush);
+        }
+
+        @Override
+        public void close() {
+            synchronized (outbound) {
+                if (closeRequested) {
+                    return;
+                }
+                closeRequested = true;
+                if (flushScheduled) {
+                    return; // flush() closes once the queue drains
+                }
+                flushScheduled = true;
+            }
+            submit(this::flush);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            // The connection's own thread is blocked in read; ClientHandler's lock orders tasks with it
+            submit(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.error(Log.Event.CLIENT_ERROR, handler.getUsername(), e.getMessage());
+                    close();
+                }
+            });
+        }
+
+        private void submit(Runnable task) {
+            tasks.add(task);
+            if (running.compareAndSet(false, true)) {
+                Thread.ofVirtual().start(this::runTasks);
+            }
+        }
+
+        private void runTasks() {
+            do {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                running.set(false);
+                // A task added after the poll above but before running was cleared found it set
+            } while (!tasks.isEmpty() && running.compareAndSet(false, true));
+        }
+
+        // On the task thread: write out everything queued, blocking while the socket buffer is full
+        private void flush() {
+            ByteBuffer[] batch;
+            boolean closeAfter;
+            synchronized (outbound) {
+                batch = outbound.toArray(new ByteBuffer[0]);
+                outbound.clear();
+                flushScheduled = false;
+                closeAfter = closeRequested;
+            }
+            long remaining = 0;
+            for (ByteBuffer message : batch) {
+                remaining += message.remaining();
+            }
+            try {
+                while (remaining > 0) {
+                    remaining -= channel.write(batch);
+                }
+            } catch (IOException e) {
+                closeAfter = true;
+            }
+            if (closeAfter) {
+                closeQuietly(); // the reading thread sees the channel closed and ends the session
+            }
+        }
+
+        @Override
+        public String remoteAddress() {
+            try {
+                return String.valueOf(channel.getRemoteAddress());
+            } catch (IOException e) {
+                return "?";
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
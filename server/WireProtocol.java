@@ -0,0 +1,134 @@
+package server;
+
+import broadcaster.TimerChannel;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * One client's wire format. The ClientHandler works in terms of logins,
+ * answers and exam events; the protocol turns those into bytes and back.
+ */
+interface WireProtocol {
+    // Largest message a client may send in either protocol; logins, resumes and answers are all small
+    int MAX_INBOUND_MESSAGE = 16 * 1024;
+
+    /**
+     * Called once the protocol has been chosen; sends any greeting
+     */
+    void onOpen(Connection connection) throws IOException;
+
+    /**
+     * Decode every complete message in the buffer and pass it to the handler.
+     * Incomplete trailing bytes are left in the buffer for the next call.
+     */
+    void decode(ByteBuffer buf, ClientHandler handler) throws IOException;
+
+    /**
+     * Confirm the login, and tell the client where the exam's timer is
+     */
+    void sendWaiting(Connection connection, TimerChannel timer) throws IOException;
+
+    void sendAuthFailed(Connection connection, String message) throws IOException;
+
+    /**
+     * Turn a login away because the server is overloaded; the connection is closed after it
+     * @param retryAfterMillis How long the client should wait before trying again
+     */
+    void sendBusy(Connection connection, long retryAfterMillis) throws IOException;
+
+    /**
+     * Send a waiting student the exam's sealed questions, if the protocol can
+     * take them; START then releases the key, when the bundle is still the
+     * exam's question set
+     */
+    void sendBundle(Connection connection, ExamBundle bundle);
+
+    /**
+     * Send START and the student's first question together
+     * @param position Place, in the student's order, of the first question: 0
+     *                 unless the student's earlier answers were recovered; the
+     *                 number of questions if they have none left
+     */
+    void sendStart(Connection connection, QuestionPayloads questions, QuestionOrder order, int position) throws IOException;
+
+    /**
+     * @param position The question's place in the student's order
+     */
+    void sendQuestion(Connection connection, QuestionPayloads questions, QuestionOrder order, int position) throws IOException;
+
+    /**
+     * @return how many questions may be sent ahead of the student's answers,
+     *         counting the one they're on; 1 = lock-step
+     */
+    int questionsInFlight();
+
+    /**
+     * Tell the client an answer has been recorded, if the protocol does that
+     * @param position The answered question's place in the student's order
+     */
+    void sendAck(Connection connection, int position);
+
+    /**
+     * @return whether a student's options can be shown in their own order,
+     *         rather than as written in the question
+     */
+    boolean canReorderOptions();
+
+    void sendFinished(Connection connection, String message) throws IOException;
+
+    /**
+     * @return whether the client can pick its session up on a new connection (see ResumeTable)
+     */
+    boolean canResume();
+
+    /**
+     * Give the client the token to resume its session with; only if canResume
+     */
+    void sendSession(Connection connection, ResumeTable.Token token);
+
+    /**
+     * Answer a resume into the exam; questions from the first one the client lacks follow
+     * @param position Place, in the student's order, of the next answer expected
+     */
+    void sendResumed(Connection connection, int position);
+
+    /**
+     * Tell the client how long this student has left, if the protocol can;
+     * otherwise the client only knows the exam's broadcast time
+     */
+    void sendDeadline(Connection connection, long remainingMillis);
+
+    /**
+     * Send the student's final score, which ends the exam on their side
+     * @param percent Score as a percentage, 0-100
+     */
+    void sendResult(Connection connection, int percent) throws IOException;
+
+    /**
+     * @return the busy message for clients that can only show text; "failed"
+     *         marks it as a refused login for object stream clients
+     */
+    static String busyMessage(long retryAfterMillis) {
+        return "Login failed: server busy, please try again in " + retryAfterMillis + " ms.";
+    }
+
+    /**
+     * Pick the protocol from the first bytes a client sends
+     * @param buf Bytes received so far
+     * @return the protocol, or null if more bytes are needed to decide
+     */
+    static WireProtocol negotiate(ByteBuffer buf) throws IOException {
+        if (buf.remaining() < LegacyCodec.STREAM_HEADER.length) {
+            return null;
+        }
+        if (ExamProtocol.isHello(buf)) {
+            return new BinaryProtocol();
+        }
+        if (buf.get(buf.position()) == LegacyCodec.STREAM_HEADER[0]) {
+            return new LegacyProtocol();
+        }
+        throw new StreamCorruptedException("unknown protocol");
+    }
+}